@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.micro;
+
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The node and relationship primitives the mixed load workers exercise, one
+ * transaction per write as in CreateWorker. Scores are in operations per
+ * millisecond, like the Stats of the mixed load.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 10, time = 2 )
+@Fork( 1 )
+public class GraphBenchmarks
+{
+    @Benchmark
+    public long createNode( GraphState graph )
+    {
+        Transaction tx = graph.graphDb.beginTx();
+        try
+        {
+            long result = graph.graphDb.createNode().getId();
+            tx.success();
+            return result;
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @Benchmark
+    public long createRelationshipTo( GraphState graph, RandomState random )
+    {
+        Transaction tx = graph.graphDb.beginTx();
+        try
+        {
+            Node from = graph.graphDb.getNodeById( graph.randomNodeId( random.r ) );
+            Node to = graph.graphDb.getNodeById( graph.randomNodeId( random.r ) );
+            long result = from.createRelationshipTo( to,
+                    GraphState.RelType.TYPE_MICRO ).getId();
+            tx.success();
+            return result;
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @Benchmark
+    public Node getNodeById( GraphState graph, RandomState random )
+    {
+        return graph.graphDb.getNodeById( graph.randomNodeId( random.r ) );
+    }
+
+    @Benchmark
+    public void getRelationshipsBoth( GraphState graph, RandomState random,
+            Blackhole blackhole )
+    {
+        Node node = graph.graphDb.getNodeById( graph.randomNodeId( random.r ) );
+        for ( Relationship rel : node.getRelationships( Direction.BOTH ) )
+        {
+            blackhole.consume( rel.getId() );
+        }
+    }
+
+    /**
+     * A whole sweep per invocation, so the score is sweeps per second.
+     */
+    @Benchmark
+    @OutputTimeUnit( TimeUnit.SECONDS )
+    public void getAllNodes( GraphState graph, Blackhole blackhole )
+    {
+        for ( Node node : graph.graphDb.getAllNodes() )
+        {
+            blackhole.consume( node.getId() );
+        }
+    }
+}
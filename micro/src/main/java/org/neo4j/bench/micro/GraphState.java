@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.micro;
+
+import java.io.File;
+import java.util.Random;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A database populated with nodeCount nodes, each with about relsPerNode
+ * outgoing relationships to random other nodes, shared by all benchmark
+ * threads of a trial.
+ */
+@State( Scope.Benchmark )
+public class GraphState
+{
+    enum RelType implements RelationshipType
+    {
+        TYPE_MICRO
+    }
+
+    // Nodes created per transaction while populating
+    private static final int BATCH_SIZE = 10000;
+
+    @Param( { "1000", "100000" } )
+    public int nodeCount;
+
+    @Param( { "1", "10" } )
+    public int relsPerNode;
+
+    public GraphDatabaseService graphDb;
+    public long[] nodeIds;
+    private File storeDir;
+
+    @Setup( Level.Trial )
+    public void populate() throws Exception
+    {
+        storeDir = File.createTempFile( "micro", "db" );
+        storeDir.delete();
+        graphDb = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        nodeIds = new long[nodeCount];
+        Random r = new Random( 42 );
+        for ( int i = 0; i < nodeCount; i += BATCH_SIZE )
+        {
+            Transaction tx = graphDb.beginTx();
+            try
+            {
+                for ( int j = i; j < Math.min( i + BATCH_SIZE, nodeCount ); j++ )
+                {
+                    nodeIds[j] = graphDb.createNode().getId();
+                }
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+        for ( int i = 0; i < nodeCount; i += BATCH_SIZE )
+        {
+            Transaction tx = graphDb.beginTx();
+            try
+            {
+                for ( int j = i; j < Math.min( i + BATCH_SIZE, nodeCount ); j++ )
+                {
+                    Node from = graphDb.getNodeById( nodeIds[j] );
+                    for ( int k = 0; k < relsPerNode; k++ )
+                    {
+                        from.createRelationshipTo(
+                                graphDb.getNodeById( nodeIds[r.nextInt( nodeCount )] ),
+                                RelType.TYPE_MICRO );
+                    }
+                }
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void shutdown()
+    {
+        graphDb.shutdown();
+        delete( storeDir );
+    }
+
+    public long randomNodeId( Random r )
+    {
+        return nodeIds[r.nextInt( nodeIds.length )];
+    }
+
+    private static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.micro;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.neo4j.bench.cases.mixedload.ResultRecord;
+import org.neo4j.bench.cases.mixedload.ResultsStore;
+import org.neo4j.bench.cases.mixedload.Stats;
+import org.neo4j.bench.chart.GenerateOpsPerSecChart;
+import org.neo4j.helpers.Args;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the micro benchmarks and appends every score to the results store of
+ * its benchmark and parameters, so each of them gets its own history, chart
+ * and degradation check just like the mixed load.
+ */
+public class Main
+{
+    // The benchmarks whose score goes in the reads column, the rest are writes
+    private static final Set<String> READS = new HashSet<String>( Arrays.asList(
+            "getNodeById", "getRelationshipsBoth", "getAllNodes" ) );
+
+    public static void main( String[] args ) throws Exception
+    {
+        Args argz = new Args( args );
+        Options options = new OptionsBuilder().include(
+                argz.get( "benchmarks", ".*" ) ).build();
+        Collection<RunResult> results = new Runner( options ).run();
+
+        File resultsDir = new File( argz.get( "micro-results-dir",
+                "micro-results" ) );
+        resultsDir.mkdirs();
+        double threshold = Double.parseDouble( argz.get( "threshold", "0.05" ) );
+        Date start = new Date();
+        String runName = ResultRecord.runName( start );
+        String version = argz.get( "neo-version", "" );
+        String commit = argz.get( "commit", "" );
+        for ( RunResult result : results )
+        {
+            BenchmarkParams params = result.getParams();
+            String method = params.getBenchmark().substring(
+                    params.getBenchmark().lastIndexOf( '.' ) + 1 );
+            double score = result.getPrimaryResult().getScore();
+            Stats stats = new Stats( runName );
+            if ( READS.contains( method ) )
+            {
+                stats.setAvgReadsPerSec( score );
+            }
+            else
+            {
+                stats.setAvgWritePerSec( score );
+            }
+
+            String label = label( params );
+            File statsFile = new File( resultsDir, label );
+            ResultsStore store = new ResultsStore( statsFile );
+            store.importLegacy( statsFile );
+            store.append( new ResultRecord( start.getTime(),
+                    version == null ? "" : version, commit == null ? ""
+                            : commit, hostName(), stats ) );
+            boolean alarm = new GenerateOpsPerSecChart(
+                    store.lastStats( GenerateOpsPerSecChart.TESTS_TO_DRAW ),
+                    new File( resultsDir, label + ".png" ).getPath(), threshold ).process();
+            System.out.println( label + ": " + score + " "
+                                + result.getPrimaryResult().getScoreUnit()
+                                + ( alarm ? " DEGRADED" : "" ) );
+        }
+    }
+
+    private static String hostName()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch ( UnknownHostException e )
+        {
+            return "unknown";
+        }
+    }
+
+    /**
+     * @return Like GraphBenchmarks.createNode-nodeCount=1000-relsPerNode=1
+     */
+    private static String label( BenchmarkParams params )
+    {
+        String benchmark = params.getBenchmark();
+        StringBuilder result = new StringBuilder( benchmark.substring(
+                benchmark.lastIndexOf( '.', benchmark.lastIndexOf( '.' ) - 1 ) + 1 ) );
+        for ( String key : params.getParamsKeys() )
+        {
+            result.append( '-' ).append( key ).append( '=' ).append(
+                    params.getParam( key ) );
+        }
+        return result.toString();
+    }
+}
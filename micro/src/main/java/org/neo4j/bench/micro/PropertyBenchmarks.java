@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.micro;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * setProperty on a random node for every value type PropertyAddWorker
+ * generates, one transaction per write.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 10, time = 2 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class PropertyBenchmarks
+{
+    public enum ValueType
+    {
+        INT,
+        LONG,
+        BOOLEAN,
+        STRING,
+        STRING_ARRAY
+    }
+
+    private static final char[] SYMBOLS = ( "1234567890"
+                                            + "abcdefghijklmnopqrstuvwxyz"
+                                            + "ABCDEFGHIJKLMNOPQRSTUVWXYZ" ).toCharArray();
+    // Values are generated up front, not to time the generator
+    private static final int VALUES = 1024;
+
+    @Param
+    public ValueType valueType;
+
+    private final Random r = new Random();
+    private Object[] values;
+    private int next;
+
+    @Setup( Level.Trial )
+    public void generateValues()
+    {
+        values = new Object[VALUES];
+        for ( int i = 0; i < VALUES; i++ )
+        {
+            switch ( valueType )
+            {
+            case INT:
+                values[i] = r.nextInt();
+                break;
+            case LONG:
+                values[i] = r.nextLong();
+                break;
+            case BOOLEAN:
+                values[i] = r.nextBoolean();
+                break;
+            case STRING:
+                values[i] = randomString( r.nextInt( 50 ) );
+                break;
+            default:
+                values[i] = new String[] { randomString( r.nextInt( 20 ) ), "",
+                        randomString( r.nextInt( 20 ) ) };
+            }
+        }
+    }
+
+    @Benchmark
+    public void setProperty( GraphState graph )
+    {
+        Transaction tx = graph.graphDb.beginTx();
+        try
+        {
+            graph.graphDb.getNodeById( graph.randomNodeId( r ) ).setProperty(
+                    "micro", values[next++ & ( VALUES - 1 )] );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private String randomString( int length )
+    {
+        char[] result = new char[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            result[i] = SYMBOLS[r.nextInt( SYMBOLS.length )];
+        }
+        return new String( result );
+    }
+}
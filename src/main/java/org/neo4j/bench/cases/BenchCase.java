@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases;
+
+import java.io.File;
+import java.util.Map;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+
+/**
+ * A performance scenario the suite runner can run. Implementations need a
+ * public no argument constructor and a line in
+ * META-INF/services/org.neo4j.bench.cases.BenchCase to be found by the
+ * {@link BenchCaseRegistry}. Every case gets a database of its own and
+ * reads its settings from the command line arguments.
+ */
+public interface BenchCase
+{
+    /**
+     * @return The name the case is selected by and its metrics are kept under
+     */
+    String getName();
+
+    /**
+     * Reads the settings and prepares the database, e.g. populates it.
+     *
+     * @param storeDir Where the database keeps its files
+     */
+    void setUp( GraphDatabaseService graphDb, File storeDir, Args args )
+            throws Exception;
+
+    /**
+     * Runs the case unmeasured, until the results of measure() will be
+     * representative.
+     */
+    void warmUp() throws Exception;
+
+    /**
+     * @return What was measured, by metric name
+     */
+    Map<String, Double> measure() throws Exception;
+
+    /**
+     * Releases what setUp() took, the database is shut down after this.
+     */
+    void tearDown() throws Exception;
+}
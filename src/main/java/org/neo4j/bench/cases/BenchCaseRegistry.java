@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds the {@link BenchCase}s on the class path, through the service
+ * loader, and hands out new instances of them by name.
+ */
+public class BenchCaseRegistry
+{
+    private final Map<String, Class<? extends BenchCase>> cases = new TreeMap<String, Class<? extends BenchCase>>();
+
+    public BenchCaseRegistry()
+    {
+        for ( BenchCase benchCase : ServiceLoader.load( BenchCase.class ) )
+        {
+            cases.put( benchCase.getName(), benchCase.getClass() );
+        }
+    }
+
+    public Set<String> getNames()
+    {
+        return cases.keySet();
+    }
+
+    /**
+     * @return A new instance of the named case
+     * @throws IllegalArgumentException If there is no such case
+     */
+    public BenchCase create( String name )
+    {
+        Class<? extends BenchCase> type = cases.get( name );
+        if ( type == null )
+        {
+            throw new IllegalArgumentException( "Unknown bench case " + name
+                                                + ", known are " + getNames() );
+        }
+        try
+        {
+            return type.getDeclaredConstructor().newInstance();
+        }
+        catch ( InvocationTargetException e )
+        {
+            // Thrown by the constructor of the case, not by reflection
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException( cause );
+        }
+        catch ( NoSuchMethodException e )
+        {
+            throw new IllegalStateException( e );
+        }
+        catch ( InstantiationException e )
+        {
+            throw new IllegalStateException( e );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
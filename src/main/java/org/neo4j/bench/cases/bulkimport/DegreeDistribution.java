@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.bulkimport;
+
+import java.util.Random;
+
+/**
+ * How many relationships each generated node starts. Parsed from specs like
+ * "constant:4", "uniform:4" (0 to twice the mean) or "power-law:4:2.5"
+ * (Pareto distributed with the given exponent, which must be above 1).
+ */
+public abstract class DegreeDistribution
+{
+    private final String spec;
+
+    private DegreeDistribution( String spec )
+    {
+        this.spec = spec;
+    }
+
+    /**
+     * @return The out degree of the next node, never negative
+     */
+    public abstract int sample( Random r );
+
+    public static DegreeDistribution parse( String spec )
+    {
+        String[] parts = spec.trim().split( ":" );
+        final double mean = parts.length > 1 ? Double.parseDouble( parts[1] )
+                : 1;
+        if ( "constant".equals( parts[0] ) )
+        {
+            return new DegreeDistribution( spec )
+            {
+                @Override
+                public int sample( Random r )
+                {
+                    return (int) Math.round( mean );
+                }
+            };
+        }
+        if ( "uniform".equals( parts[0] ) )
+        {
+            final int max = (int) Math.round( mean * 2 );
+            return new DegreeDistribution( spec )
+            {
+                @Override
+                public int sample( Random r )
+                {
+                    return r.nextInt( max + 1 );
+                }
+            };
+        }
+        if ( "power-law".equals( parts[0] ) )
+        {
+            final double exponent = parts.length > 2 ? Double.parseDouble( parts[2] )
+                    : 2.5;
+            if ( exponent <= 1 )
+            {
+                throw new IllegalArgumentException(
+                        "A power law exponent must be above 1, not " + exponent );
+            }
+            // The scale that gives the asked for mean
+            final double scale = mean * ( exponent - 1 ) / exponent;
+            return new DegreeDistribution( spec )
+            {
+                @Override
+                public int sample( Random r )
+                {
+                    double degree = scale
+                                    * Math.pow( 1 - r.nextDouble(), -1 / exponent );
+                    return (int) Math.min( degree, Integer.MAX_VALUE );
+                }
+            };
+        }
+        throw new IllegalArgumentException( "Unknown degree distribution "
+                                            + spec );
+    }
+
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+}
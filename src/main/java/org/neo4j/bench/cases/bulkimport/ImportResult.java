@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.bulkimport;
+
+/**
+ * What a {@link ParallelImporter} run created and how fast.
+ */
+public class ImportResult
+{
+    private final long nodes;
+    private final long relationships;
+    private final long storeBytes;
+    private final long nodeNanos;
+    private final long relationshipNanos;
+    private final long retries;
+
+    public ImportResult( long nodes, long relationships, long storeBytes,
+            long nodeNanos, long relationshipNanos, long retries )
+    {
+        this.nodes = nodes;
+        this.relationships = relationships;
+        this.storeBytes = storeBytes;
+        this.nodeNanos = nodeNanos;
+        this.relationshipNanos = relationshipNanos;
+        this.retries = retries;
+    }
+
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    public long getRelationships()
+    {
+        return relationships;
+    }
+
+    /**
+     * @return How much the store directory grew, 0 if it was not measured
+     */
+    public long getStoreBytes()
+    {
+        return storeBytes;
+    }
+
+    /**
+     * @return Transactions retried after a deadlock
+     */
+    public long getRetries()
+    {
+        return retries;
+    }
+
+    public double getNodesPerSecond()
+    {
+        return nodes * 1000000000.0 / Math.max( nodeNanos, 1 );
+    }
+
+    public double getRelationshipsPerSecond()
+    {
+        return relationships * 1000000000.0 / Math.max( relationshipNanos, 1 );
+    }
+
+    public double getStoreBytesPerSecond()
+    {
+        return storeBytes * 1000000000.0
+               / Math.max( nodeNanos + relationshipNanos, 1 );
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+                "%d nodes at %.0f/sec, %d relationships at %.0f/sec, %.1f MB of store at %.2f MB/sec, %d retries",
+                nodes, getNodesPerSecond(), relationships,
+                getRelationshipsPerSecond(), storeBytes / ( 1024.0 * 1024.0 ),
+                getStoreBytesPerSecond() / ( 1024.0 * 1024.0 ), retries );
+    }
+}
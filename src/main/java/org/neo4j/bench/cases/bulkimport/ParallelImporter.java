@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.bulkimport;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.topology.Topology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
+
+/**
+ * Generates a large synthetic graph from a number of threads. Nodes are
+ * created first, the range of node indexes cut in chunks of one transaction
+ * each, so every thread fills its own part of the index to id table without
+ * contention. Relationships follow, from every node to the others its
+ * {@link Topology} picks, again one chunk of source nodes per transaction.
+ *
+ * At most twice as many chunks as threads are queued at any time, the
+ * generating thread blocks until one finishes, so memory use does not grow
+ * with the size of the graph beyond the id table.
+ */
+public class ParallelImporter
+{
+    // Attempts of a chunk that keeps running into deadlocks
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final GraphDatabaseService graphDb;
+    private final int threads;
+    private final int txSize;
+    private final Topology topology;
+    private final AtomicLong relationships = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    // Where the seeds of the chunks come from, only used by the generating
+    // thread
+    private Random seeds = new Random();
+
+    /**
+     * @param txSize The nodes, or source nodes of relationships, per
+     *            transaction
+     */
+    public ParallelImporter( GraphDatabaseService graphDb, int threads,
+            int txSize, Topology topology )
+    {
+        this.graphDb = graphDb;
+        this.threads = threads;
+        this.txSize = txSize;
+        this.topology = topology;
+    }
+
+    /**
+     * @param seed The seed the chunks get their own seeds from, for the same
+     *            graph on every run with it
+     */
+    public void setSeed( long seed )
+    {
+        this.seeds = new Random( seed );
+    }
+
+    /**
+     * @param nodeCount The number of nodes to create
+     * @param pool Where the ids of the created nodes go, may be null
+     * @param storeDir The store directory, to measure its growth, may be null
+     */
+    public ImportResult run( int nodeCount, NodePool pool, File storeDir )
+            throws Exception
+    {
+        final long[] nodeIds = new long[nodeCount];
+        relationships.set( 0 );
+        retries.set( 0 );
+        long storeBefore = storeDir == null ? 0 : sizeOf( storeDir );
+
+        long start = System.nanoTime();
+        runChunks( nodeCount, new ChunkTask()
+        {
+            @Override
+            public long run( int from, int to, Random r )
+            {
+                for ( int i = from; i < to; i++ )
+                {
+                    nodeIds[i] = graphDb.createNode().getId();
+                }
+                return 0;
+            }
+        } );
+        long nodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        runChunks( nodeCount, new ChunkTask()
+        {
+            @Override
+            public long run( int from, int to, Random r )
+            {
+                long created = 0;
+                for ( int i = from; i < to; i++ )
+                {
+                    int degree = topology.degree( i, r );
+                    for ( int j = 0; j < degree && nodeIds.length > 1; j++ )
+                    {
+                        int other = (int) topology.target( i, nodeIds.length, r );
+                        graphDb.getNodeById( nodeIds[i] ).createRelationshipTo(
+                                graphDb.getNodeById( nodeIds[other] ),
+                                topology.type( r ) );
+                        created++;
+                    }
+                }
+                return created;
+            }
+        } );
+        long relationshipNanos = System.nanoTime() - start;
+
+        if ( pool != null )
+        {
+            for ( long id : nodeIds )
+            {
+                pool.add( id );
+            }
+        }
+        long storeBytes = storeDir == null ? 0 : sizeOf( storeDir )
+                                                 - storeBefore;
+        return new ImportResult( nodeCount, relationships.get(), storeBytes,
+                nodeNanos, relationshipNanos, retries.get() );
+    }
+
+    /**
+     * Runs the task over [0, count) in chunks of txSize, each in its own
+     * transaction, and waits for all of them.
+     */
+    private void runChunks( int count, final ChunkTask task ) throws Exception
+    {
+        ExecutorService service = Executors.newFixedThreadPool( threads );
+        // The back pressure, released as each chunk finishes
+        final Semaphore slots = new Semaphore( threads * 2 );
+        try
+        {
+            for ( int from = 0; from < count && failure.get() == null; from += txSize )
+            {
+                final int chunkFrom = from;
+                final int chunkTo = (int) Math.min( (long) from + txSize, count );
+                final long seed = seeds.nextLong();
+                slots.acquire();
+                service.execute( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            runChunk( task, chunkFrom, chunkTo, seed );
+                        }
+                        catch ( Exception e )
+                        {
+                            failure.compareAndSet( null, e );
+                        }
+                        finally
+                        {
+                            slots.release();
+                        }
+                    }
+                } );
+            }
+            slots.acquire( threads * 2 );
+        }
+        finally
+        {
+            service.shutdown();
+        }
+        if ( failure.get() != null )
+        {
+            throw failure.get();
+        }
+    }
+
+    private void runChunk( ChunkTask task, int from, int to, long seed )
+    {
+        for ( int attempt = 1;; attempt++ )
+        {
+            // Same seed every attempt, a retry generates the same chunk
+            Random r = new Random( seed );
+            long created = 0;
+            boolean success = false;
+            Transaction tx = graphDb.beginTx();
+            try
+            {
+                created = task.run( from, to, r );
+                tx.success();
+                success = true;
+            }
+            catch ( DeadlockDetectedException e )
+            {
+                tx.failure();
+                if ( attempt == MAX_ATTEMPTS )
+                {
+                    throw e;
+                }
+                retries.incrementAndGet();
+            }
+            catch ( RuntimeException e )
+            {
+                tx.failure();
+                throw e;
+            }
+            finally
+            {
+                tx.finish();
+            }
+            if ( success )
+            {
+                relationships.addAndGet( created );
+                return;
+            }
+        }
+    }
+
+    private static long sizeOf( File file )
+    {
+        if ( file.isFile() )
+        {
+            return file.length();
+        }
+        long result = 0;
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                result += sizeOf( child );
+            }
+        }
+        return result;
+    }
+
+    private interface ChunkTask
+    {
+        /**
+         * @return The number of relationships created
+         */
+        long run( int from, int to, Random r );
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.contention;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
+
+/**
+ * Writers that share a small set of hot nodes. Every operation goes to a
+ * hot node as often as the contention ratio says and to one of many cold
+ * nodes otherwise, and either adds a relationship to a cold node or
+ * increments a counter property. Transactions hold several operations in
+ * random order, so they deadlock on the hot nodes; those are retried from
+ * the start, with the same operations, after a short random back off.
+ *
+ * The write lock of a node is taken on its own before the write, by
+ * removing a property it does not have, so that the time spent waiting for
+ * it can be told apart from the time of the write itself.
+ */
+public class ContentionBenchCase
+{
+    private static final RelationshipType CONTENDED = DynamicRelationshipType.withName( "CONTENDED" );
+    private static final String COUNTER = "counter";
+    private static final String LOCK = "__lock";
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final GraphDatabaseService graphDb;
+    private final int threads;
+    private final int txSize;
+    private long[] hot;
+    private long[] cold;
+
+    /**
+     * @param txSize Operations per transaction
+     */
+    public ContentionBenchCase( GraphDatabaseService graphDb, int threads,
+            int txSize )
+    {
+        this.graphDb = graphDb;
+        this.threads = threads;
+        this.txSize = Math.max( txSize, 1 );
+    }
+
+    /**
+     * Creates the nodes written to, hot and cold.
+     */
+    public void setUp( int hotNodes, int coldNodes )
+    {
+        hot = createNodes( hotNodes );
+        cold = createNodes( coldNodes );
+    }
+
+    /**
+     * Runs all writers for the given time at one contention ratio.
+     *
+     * @param ratio The share of operations on the hot nodes, 0 to 1
+     */
+    public ContentionResult run( final double ratio, final long millis )
+            throws InterruptedException, ExecutionException
+    {
+        ExecutorService service = Executors.newFixedThreadPool( threads );
+        List<Future<ContentionResult>> futures = new ArrayList<Future<ContentionResult>>();
+        final long end = System.currentTimeMillis() + millis;
+        long start = System.nanoTime();
+        try
+        {
+            for ( int i = 0; i < threads; i++ )
+            {
+                futures.add( service.submit( new Callable<ContentionResult>()
+                {
+                    @Override
+                    public ContentionResult call() throws Exception
+                    {
+                        return write( ratio, end );
+                    }
+                } ) );
+            }
+            ContentionResult result = new ContentionResult( ratio, threads );
+            for ( Future<ContentionResult> future : futures )
+            {
+                result.add( future.get() );
+            }
+            result.setElapsedNanos( System.nanoTime() - start );
+            return result;
+        }
+        finally
+        {
+            service.shutdown();
+        }
+    }
+
+    private ContentionResult write( double ratio, long end )
+            throws InterruptedException
+    {
+        ContentionResult result = new ContentionResult( ratio, 1 );
+        Random seeds = new Random();
+        while ( System.currentTimeMillis() < end )
+        {
+            long seed = seeds.nextLong();
+            for ( int attempt = 1;; attempt++ )
+            {
+                // Same seed every attempt, a retry does the same operations
+                Random r = new Random( seed );
+                boolean success = false;
+                Transaction tx = graphDb.beginTx();
+                try
+                {
+                    for ( int i = 0; i < txSize; i++ )
+                    {
+                        write( ratio, r, result );
+                    }
+                    tx.success();
+                    success = true;
+                }
+                catch ( DeadlockDetectedException e )
+                {
+                    tx.failure();
+                    result.deadlock();
+                }
+                catch ( RuntimeException e )
+                {
+                    tx.failure();
+                    throw e;
+                }
+                finally
+                {
+                    tx.finish();
+                }
+                if ( success )
+                {
+                    result.committed( txSize );
+                    break;
+                }
+                if ( attempt == MAX_ATTEMPTS )
+                {
+                    result.gaveUp();
+                    break;
+                }
+                Thread.sleep( seeds.nextInt( attempt * 2 ) );
+            }
+        }
+        return result;
+    }
+
+    private void write( double ratio, Random r, ContentionResult result )
+    {
+        long[] pickFrom = r.nextDouble() < ratio ? hot : cold;
+        Node node = graphDb.getNodeById( pickFrom[r.nextInt( pickFrom.length )] );
+        long start = System.nanoTime();
+        node.removeProperty( LOCK );
+        result.lockWait( System.nanoTime() - start );
+        if ( r.nextBoolean() )
+        {
+            node.setProperty( COUNTER, (Integer) node.getProperty( COUNTER, 0 ) + 1 );
+        }
+        else
+        {
+            Node other = graphDb.getNodeById( cold[r.nextInt( cold.length )] );
+            if ( other.getId() != node.getId() )
+            {
+                node.createRelationshipTo( other, CONTENDED );
+            }
+        }
+    }
+
+    private long[] createNodes( int count )
+    {
+        long[] result = new long[count];
+        Transaction tx = graphDb.beginTx();
+        try
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                result[i] = graphDb.createNode().getId();
+                if ( i % 10000 == 9999 )
+                {
+                    tx.success();
+                    tx.finish();
+                    tx = graphDb.beginTx();
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.contention;
+
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * What the writers of a {@link ContentionBenchCase} run did at one
+ * contention ratio.
+ */
+public class ContentionResult
+{
+    private final double ratio;
+    private final int threads;
+    private long commits;
+    private long operations;
+    private long deadlocks;
+    private long gaveUp;
+    private final Histogram lockWaits = new Histogram();
+    private long elapsedNanos;
+
+    ContentionResult( double ratio, int threads )
+    {
+        this.ratio = ratio;
+        this.threads = threads;
+    }
+
+    void committed( int operationCount )
+    {
+        commits++;
+        operations += operationCount;
+    }
+
+    void deadlock()
+    {
+        deadlocks++;
+    }
+
+    void gaveUp()
+    {
+        gaveUp++;
+    }
+
+    void lockWait( long nanos )
+    {
+        lockWaits.record( nanos );
+    }
+
+    void add( ContentionResult other )
+    {
+        commits += other.commits;
+        operations += other.operations;
+        deadlocks += other.deadlocks;
+        gaveUp += other.gaveUp;
+        lockWaits.add( other.lockWaits );
+    }
+
+    void setElapsedNanos( long elapsedNanos )
+    {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The share of the operations that went to the hot nodes
+     */
+    public double getRatio()
+    {
+        return ratio;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public long getCommits()
+    {
+        return commits;
+    }
+
+    public long getOperations()
+    {
+        return operations;
+    }
+
+    /**
+     * @return Transactions ended by a DeadlockDetectedException, every one
+     *         of them either retried or given up
+     */
+    public long getDeadlocks()
+    {
+        return deadlocks;
+    }
+
+    /**
+     * @return Deadlocks that were retried
+     */
+    public long getRetries()
+    {
+        return deadlocks - gaveUp;
+    }
+
+    /**
+     * @return Transactions dropped after deadlocking on every attempt
+     */
+    public long getGaveUp()
+    {
+        return gaveUp;
+    }
+
+    /**
+     * @return Time to take the write lock of a node, in nanoseconds
+     */
+    public Histogram getLockWaits()
+    {
+        return lockWaits;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    public double getCommitsPerSecond()
+    {
+        return perSecond( commits );
+    }
+
+    public double getOperationsPerSecond()
+    {
+        return perSecond( operations );
+    }
+
+    public double getDeadlocksPerSecond()
+    {
+        return perSecond( deadlocks );
+    }
+
+    public double getRetriesPerSecond()
+    {
+        return perSecond( getRetries() );
+    }
+
+    private double perSecond( long count )
+    {
+        return count * 1000000000.0 / Math.max( elapsedNanos, 1 );
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+                "ratio %.2f on %d threads: %.0f commits/sec, %.0f ops/sec, lock wait p50=%.1fus p99=%.1fus max=%.1fus, %.1f deadlocks/sec, %.1f retries/sec, %d gave up",
+                ratio, threads, getCommitsPerSecond(),
+                getOperationsPerSecond(),
+                lockWaits.getValueAtPercentile( 50 ) / 1000.0,
+                lockWaits.getValueAtPercentile( 99 ) / 1000.0,
+                lockWaits.getMax() / 1000.0, getDeadlocksPerSecond(),
+                getRetriesPerSecond(), gaveUp );
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * Commit throughput, commit latency and heap usage of the write workers
+ * measured at a series of transaction sizes, to choose batching from.
+ */
+public class BatchSizeSweep
+{
+    private final List<Integer> txSizes;
+    private final List<Double> commitsPerSecond;
+    private final List<Double> opsPerSecond;
+    private final List<Long> rollbacks;
+    private final List<Histogram> commitLatencies;
+    private final List<Long> peakHeapBytes;
+
+    public BatchSizeSweep()
+    {
+        txSizes = new ArrayList<Integer>();
+        commitsPerSecond = new ArrayList<Double>();
+        opsPerSecond = new ArrayList<Double>();
+        rollbacks = new ArrayList<Long>();
+        commitLatencies = new ArrayList<Histogram>();
+        peakHeapBytes = new ArrayList<Long>();
+    }
+
+    /**
+     * @return 1, 10, 100, ... up to and including max
+     */
+    public static int[] levels( int max )
+    {
+        List<Integer> result = new ArrayList<Integer>();
+        for ( long level = 1; level < max; level *= 10 )
+        {
+            result.add( (int) level );
+        }
+        result.add( max );
+        int[] levels = new int[result.size()];
+        for ( int i = 0; i < levels.length; i++ )
+        {
+            levels[i] = result.get( i );
+        }
+        return levels;
+    }
+
+    /**
+     * Starts tracking the peak heap usage anew, for the next level.
+     */
+    public static void resetPeakHeap()
+    {
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP )
+            {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return The sum of the peak usage of the heap pools since the last
+     *         reset, an upper bound of the peak heap usage
+     */
+    public static long getPeakHeap()
+    {
+        long result = 0;
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP )
+            {
+                result += pool.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param rollbacks Transactions rolled back, on conflicts between the
+     *            workers mostly
+     * @param commitLatencies Commit times in nanoseconds
+     */
+    public void add( int txSize, double commitsPerSecond, double opsPerSecond,
+            long rollbacks, Histogram commitLatencies, long peakHeapBytes )
+    {
+        this.txSizes.add( txSize );
+        this.commitsPerSecond.add( commitsPerSecond );
+        this.opsPerSecond.add( opsPerSecond );
+        this.rollbacks.add( rollbacks );
+        this.commitLatencies.add( commitLatencies );
+        this.peakHeapBytes.add( peakHeapBytes );
+    }
+
+    public void print( PrintStream out )
+    {
+        out.println( "Tx size\tCommits/sec\tOps/sec\tRollbacks\tCommit p50 (us)\tCommit p99 (us)\tPeak heap (MB)" );
+        for ( int i = 0; i < txSizes.size(); i++ )
+        {
+            Histogram latencies = commitLatencies.get( i );
+            out.println( String.format( "%d\t%.2f\t%.2f\t%d\t%.1f\t%.1f\t%.1f",
+                    txSizes.get( i ), commitsPerSecond.get( i ),
+                    opsPerSecond.get( i ), rollbacks.get( i ),
+                    latencies.getValueAtPercentile( 50 ) / 1000.0,
+                    latencies.getValueAtPercentile( 99 ) / 1000.0,
+                    peakHeapBytes.get( i ) / ( 1024.0 * 1024.0 ) ) );
+        }
+    }
+}
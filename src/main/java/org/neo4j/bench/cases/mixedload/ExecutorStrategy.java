@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * How the workers get their threads. The number of workers in flight is
+ * always bounded by the driver, this only decides what runs them.
+ *
+ * The work stealing and virtual thread strategies are looked up reflectively,
+ * they need a Java 7 and a Java 21 runtime respectively while the benchmark
+ * itself still builds for older ones.
+ */
+public enum ExecutorStrategy
+{
+    // A fixed pool with one platform thread per concurrent worker
+    FIXED
+    {
+        @Override
+        public ExecutorService create( int concurrency )
+        {
+            return Executors.newFixedThreadPool( concurrency );
+        }
+    },
+    // A fork join pool of concurrency parallelism, idle threads steal work
+    WORK_STEALING
+    {
+        @Override
+        public ExecutorService create( int concurrency )
+        {
+            try
+            {
+                return (ExecutorService) Class.forName(
+                        "java.util.concurrent.ForkJoinPool" ).getConstructor(
+                        int.class ).newInstance( concurrency );
+            }
+            catch ( Exception e )
+            {
+                throw new IllegalStateException(
+                        "Work stealing needs a Java 7 or later runtime", e );
+            }
+        }
+    },
+    // A new virtual thread for every worker, concurrency is not a limit here
+    VIRTUAL
+    {
+        @Override
+        public ExecutorService create( int concurrency )
+        {
+            try
+            {
+                return (ExecutorService) Executors.class.getMethod(
+                        "newVirtualThreadPerTaskExecutor" ).invoke( null );
+            }
+            catch ( Exception e )
+            {
+                throw new IllegalStateException(
+                        "Virtual threads need a Java 21 or later runtime", e );
+            }
+        }
+    };
+
+    /**
+     * @param concurrency The number of workers that will be in flight at most
+     */
+    public abstract ExecutorService create( int concurrency );
+
+    /**
+     * Parses names like "fixed" or "work-stealing".
+     */
+    public static ExecutorStrategy parse( String name )
+    {
+        return valueOf( name.trim().toUpperCase().replace( '-', '_' ) );
+    }
+}
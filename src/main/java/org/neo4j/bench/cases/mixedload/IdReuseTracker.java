@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.BitSet;
+
+/**
+ * Tells whether a newly created node or relationship got the id of one
+ * deleted earlier in the run. Deleted ids are kept in bit sets, an eighth of
+ * a byte per id of the store, and cleared again as they are handed out, so
+ * every reuse is counted once. Like the {@link NodePool}, ids are spread
+ * over independently locked stripes, here by their lowest bits, so that
+ * concurrent workers seldom contend on the same lock.
+ *
+ * Only deletes and creates that were committed are to be reported, the ids
+ * of rolled back ones were never free or never handed out.
+ */
+public class IdReuseTracker
+{
+    /**
+     * Tracks nothing, for runs without churn.
+     */
+    public static final IdReuseTracker DISABLED = new IdReuseTracker( 0 );
+
+    private final BitSet[] deletedNodes;
+    private final BitSet[] deletedRelationships;
+    private final int stripeBits;
+    private final int stripeMask;
+
+    public IdReuseTracker()
+    {
+        this( Runtime.getRuntime().availableProcessors() * 4 );
+    }
+
+    /**
+     * @param concurrency The expected number of concurrent users, rounded up
+     *            to the next power of two to get the number of stripes, 0 to
+     *            track nothing
+     */
+    public IdReuseTracker( int concurrency )
+    {
+        int bits = 0;
+        while ( concurrency > 0 && ( 1 << bits ) < concurrency )
+        {
+            bits++;
+        }
+        int stripeCount = concurrency > 0 ? 1 << bits : 0;
+        deletedNodes = new BitSet[stripeCount];
+        deletedRelationships = new BitSet[stripeCount];
+        for ( int i = 0; i < stripeCount; i++ )
+        {
+            deletedNodes[i] = new BitSet();
+            deletedRelationships[i] = new BitSet();
+        }
+        stripeBits = bits;
+        stripeMask = ( 1 << bits ) - 1;
+    }
+
+    /**
+     * @return False for {@link #DISABLED}, so that workers can skip
+     *         collecting ids
+     */
+    public boolean isEnabled()
+    {
+        return deletedNodes.length > 0;
+    }
+
+    /**
+     * To be called once the delete is committed, as only then is the id
+     * free for reuse.
+     */
+    public void nodeDeleted( long id )
+    {
+        mark( deletedNodes, id );
+    }
+
+    public void relationshipDeleted( long id )
+    {
+        mark( deletedRelationships, id );
+    }
+
+    /**
+     * To be called once the create is committed.
+     *
+     * @return True if the id belonged to a node deleted before
+     */
+    public boolean nodeCreated( long id )
+    {
+        return take( deletedNodes, id );
+    }
+
+    /**
+     * @return True if the id belonged to a relationship deleted before
+     */
+    public boolean relationshipCreated( long id )
+    {
+        return take( deletedRelationships, id );
+    }
+
+    private void mark( BitSet[] ids, long id )
+    {
+        if ( ids.length == 0 || id < 0 || ( id >>> stripeBits ) > Integer.MAX_VALUE )
+        {
+            return;
+        }
+        BitSet stripe = ids[(int) ( id & stripeMask )];
+        synchronized ( stripe )
+        {
+            stripe.set( (int) ( id >>> stripeBits ) );
+        }
+    }
+
+    private boolean take( BitSet[] ids, long id )
+    {
+        if ( ids.length == 0 || id < 0 || ( id >>> stripeBits ) > Integer.MAX_VALUE )
+        {
+            return false;
+        }
+        BitSet stripe = ids[(int) ( id & stripeMask )];
+        int index = (int) ( id >>> stripeBits );
+        synchronized ( stripe )
+        {
+            boolean result = stripe.get( index );
+            stripe.clear( index );
+            return result;
+        }
+    }
+}
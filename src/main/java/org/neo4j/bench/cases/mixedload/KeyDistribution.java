@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.Random;
+
+/**
+ * Which nodes reads go to, as indexes into the node id space. Parsed from
+ * specs like
+ *
+ * <pre>
+ * uniform               every id as likely
+ * zipfian:&lt;skew&gt;        the lowest ids, the oldest nodes, the hottest
+ * latest:&lt;skew&gt;         zipfian, but the highest ids, the newest nodes, the hottest
+ * hotset:&lt;ids&gt;:&lt;ops&gt;    a share of ops to the lowest share of ids, uniformly
+ * </pre>
+ *
+ * Hot keys are not scrambled over the id space, so that they stay the same
+ * nodes while the graph grows.
+ */
+public abstract class KeyDistribution
+{
+    private final String spec;
+
+    private KeyDistribution( String spec )
+    {
+        this.spec = spec;
+    }
+
+    /**
+     * @param count The size of the id space, at least 1
+     * @return An index in [0, count)
+     */
+    public abstract long next( long count, Random r );
+
+    public static KeyDistribution parse( String spec )
+    {
+        String[] parts = spec.trim().split( ":" );
+        if ( "uniform".equals( parts[0] ) )
+        {
+            return new KeyDistribution( spec )
+            {
+                @Override
+                public long next( long count, Random r )
+                {
+                    return (long) ( r.nextDouble() * count );
+                }
+            };
+        }
+        if ( "zipfian".equals( parts[0] ) || "latest".equals( parts[0] ) )
+        {
+            final double skew = parts.length > 1 ? Double.parseDouble( parts[1] )
+                    : 0.99;
+            final boolean latest = "latest".equals( parts[0] );
+            return new KeyDistribution( spec )
+            {
+                @Override
+                public long next( long count, Random r )
+                {
+                    long rank = zipf( count, skew, r ) - 1;
+                    return latest ? count - 1 - rank : rank;
+                }
+            };
+        }
+        if ( "hotset".equals( parts[0] ) )
+        {
+            final double hotIds = parts.length > 1 ? Double.parseDouble( parts[1] )
+                    : 0.2;
+            final double hotOps = parts.length > 2 ? Double.parseDouble( parts[2] )
+                    : 0.8;
+            return new KeyDistribution( spec )
+            {
+                @Override
+                public long next( long count, Random r )
+                {
+                    long hot = Math.max( 1, (long) ( count * hotIds ) );
+                    if ( r.nextDouble() < hotOps || hot >= count )
+                    {
+                        return (long) ( r.nextDouble() * hot );
+                    }
+                    return hot + (long) ( r.nextDouble() * ( count - hot ) );
+                }
+            };
+        }
+        throw new IllegalArgumentException( "Unknown key distribution " + spec );
+    }
+
+    public String getName()
+    {
+        return spec.replaceAll( "[^A-Za-z0-9.-]", "_" );
+    }
+
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+
+    /**
+     * Zipf distributed ranks in [1, n] by rejection inversion, after
+     * Hormann and Derflinger. It needs no table of the harmonic numbers, so
+     * n may change from one call to the next.
+     */
+    static long zipf( long n, double skew, Random r )
+    {
+        double hIntegralX1 = hIntegral( 1.5, skew ) - 1;
+        double hIntegralN = hIntegral( n + 0.5, skew );
+        double s = 2 - hIntegralInverse( hIntegral( 2.5, skew ) - h( 2, skew ),
+                skew );
+        while ( true )
+        {
+            double u = hIntegralN + r.nextDouble() * ( hIntegralX1 - hIntegralN );
+            double x = hIntegralInverse( u, skew );
+            long k = (long) ( x + 0.5 );
+            if ( k < 1 )
+            {
+                k = 1;
+            }
+            else if ( k > n )
+            {
+                k = n;
+            }
+            if ( k - x <= s || u >= hIntegral( k + 0.5, skew ) - h( k, skew ) )
+            {
+                return k;
+            }
+        }
+    }
+
+    private static double h( double x, double skew )
+    {
+        return Math.exp( -skew * Math.log( x ) );
+    }
+
+    private static double hIntegral( double x, double skew )
+    {
+        double logX = Math.log( x );
+        return helper2( ( 1 - skew ) * logX ) * logX;
+    }
+
+    private static double hIntegralInverse( double x, double skew )
+    {
+        double t = Math.max( x * ( 1 - skew ), -1 );
+        return Math.exp( helper1( t ) * x );
+    }
+
+    // log1p( x ) / x, also near 0
+    private static double helper1( double x )
+    {
+        if ( Math.abs( x ) > 1e-8 )
+        {
+            return Math.log1p( x ) / x;
+        }
+        return 1 - x * ( 0.5 - x * ( 1 / 3.0 - 0.25 * x ) );
+    }
+
+    // expm1( x ) / x, also near 0
+    private static double helper2( double x )
+    {
+        if ( Math.abs( x ) > 1e-8 )
+        {
+            return Math.expm1( x ) / x;
+        }
+        return 1 + x * 0.5 * ( 1 + x / 3.0 * ( 1 + 0.25 * x ) );
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.neo4j.bench.metrics.ConcurrentHistogram;
+import org.neo4j.bench.metrics.Histogram;
+import org.neo4j.bench.metrics.StripedCounter;
+
+/**
+ * Running totals and latencies that workers publish to as they go, not only
+ * when they finish, so that throughput can be sampled and watched while
+ * long workers are still running.
+ */
+public class LiveCounters
+{
+    public enum Counter
+    {
+        READS,
+        WRITES,
+        COMMITS,
+        ROLLBACKS,
+        FAILURES,
+        // Property values as stored, not counting keys or records
+        BYTES_WRITTEN,
+        // Created with the id of one deleted earlier in the run
+        NODE_IDS_REUSED,
+        RELATIONSHIP_IDS_REUSED
+    }
+
+    private final StripedCounter[] counters;
+    private final ConcurrentHistogram[] latencies;
+    // Latencies of workers between publishing, reused so that the many
+    // short workers of an open loop do not allocate histograms of their own
+    private final Queue<Histogram[]> buffers = new ConcurrentLinkedQueue<Histogram[]>();
+
+    public LiveCounters()
+    {
+        counters = new StripedCounter[Counter.values().length];
+        for ( int i = 0; i < counters.length; i++ )
+        {
+            counters[i] = new StripedCounter();
+        }
+        latencies = new ConcurrentHistogram[Operation.values().length];
+        for ( int i = 0; i < latencies.length; i++ )
+        {
+            latencies[i] = new ConcurrentHistogram();
+        }
+    }
+
+    public void add( Counter counter, long delta )
+    {
+        counters[counter.ordinal()].add( delta );
+    }
+
+    public long get( Counter counter )
+    {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @param recorded Latencies recorded since the last time this worker
+     *            added any
+     */
+    public void addLatencies( Operation operation, Histogram recorded )
+    {
+        latencies[operation.ordinal()].add( recorded );
+    }
+
+    /**
+     * @param nanos A single latency, for workers that recorded too few to
+     *            add them as a histogram
+     */
+    public void recordLatency( Operation operation, long nanos )
+    {
+        latencies[operation.ordinal()].record( nanos );
+    }
+
+    /**
+     * @return Empty histograms, by operation, for a worker to record into
+     *         until it is done, created as needed
+     */
+    Histogram[] borrowBuffer()
+    {
+        Histogram[] buffer = buffers.poll();
+        return buffer != null ? buffer : new Histogram[Operation.values().length];
+    }
+
+    /**
+     * @param buffer Borrowed with {@link #borrowBuffer()}, all of it published
+     *            and reset
+     */
+    void returnBuffer( Histogram[] buffer )
+    {
+        buffers.offer( buffer );
+    }
+
+    /**
+     * @return The latencies of the operation published so far
+     */
+    public Histogram getLatencies( Operation operation )
+    {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    /**
+     * @return The current totals of all counters, in Counter order
+     */
+    public long[] snapshot()
+    {
+        long[] result = new long[counters.length];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = counters[i].sum();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.neo4j.bench.cases.mixedload.LiveCounters.Counter;
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * Serves the live counters and latencies of a run over HTTP on localhost,
+ * so that it can be watched while it runs. /metrics is in the Prometheus
+ * text format, /metrics.json in JSON. Every request takes a fresh snapshot,
+ * nothing is computed in between.
+ */
+public class LiveMetricsServer
+{
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] QUANTILE_NAMES = { "p50", "p90", "p99",
+            "p999" };
+
+    private final LiveCounters counters;
+    private final Server server;
+    private final long startMillis;
+
+    public LiveMetricsServer( LiveCounters counters, int port )
+    {
+        this.counters = counters;
+        this.startMillis = System.currentTimeMillis();
+        server = new Server();
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setHost( "127.0.0.1" );
+        connector.setPort( port );
+        server.addConnector( connector );
+        server.setHandler( new AbstractHandler()
+        {
+            @Override
+            public void handle( String target, HttpServletRequest request,
+                    HttpServletResponse response, int dispatch )
+                    throws IOException, ServletException
+            {
+                serve( target, request, response );
+            }
+        } );
+    }
+
+    public void start() throws Exception
+    {
+        server.start();
+    }
+
+    public void stop() throws Exception
+    {
+        server.stop();
+    }
+
+    private void serve( String target, HttpServletRequest request,
+            HttpServletResponse response ) throws IOException
+    {
+        if ( "/metrics".equals( target ) )
+        {
+            response.setContentType( "text/plain; version=0.0.4" );
+            writePrometheus( response.getWriter() );
+        }
+        else if ( "/metrics.json".equals( target ) )
+        {
+            response.setContentType( "application/json" );
+            writeJson( response.getWriter() );
+        }
+        else
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+        }
+        ( (Request) request ).setHandled( true );
+    }
+
+    private void writePrometheus( PrintWriter out )
+    {
+        out.println( "# TYPE neo4j_bench_uptime_seconds gauge" );
+        out.println( "neo4j_bench_uptime_seconds " + uptimeSeconds() );
+        long[] totals = counters.snapshot();
+        for ( Counter counter : Counter.values() )
+        {
+            String name = "neo4j_bench_" + counter.name().toLowerCase()
+                          + "_total";
+            out.println( "# TYPE " + name + " counter" );
+            out.println( name + " " + totals[counter.ordinal()] );
+        }
+        out.println( "# TYPE neo4j_bench_latency_seconds summary" );
+        for ( Operation operation : Operation.values() )
+        {
+            Histogram histogram = counters.getLatencies( operation );
+            if ( histogram.getTotalCount() == 0 )
+            {
+                continue;
+            }
+            String labels = "operation=\"" + operation + "\"";
+            for ( double quantile : QUANTILES )
+            {
+                out.println( "neo4j_bench_latency_seconds{" + labels
+                             + ",quantile=\"" + quantile + "\"} "
+                             + histogram.getValueAtPercentile( quantile * 100 )
+                             / 1e9 );
+            }
+            out.println( "neo4j_bench_latency_seconds_sum{" + labels + "} "
+                         + histogram.getMean() * histogram.getTotalCount()
+                         / 1e9 );
+            out.println( "neo4j_bench_latency_seconds_count{" + labels + "} "
+                         + histogram.getTotalCount() );
+        }
+        out.flush();
+    }
+
+    private void writeJson( PrintWriter out )
+    {
+        StringBuilder json = new StringBuilder( "{\"uptimeSeconds\":" ).append(
+                uptimeSeconds() );
+        long[] totals = counters.snapshot();
+        json.append( ",\"counters\":{" );
+        for ( Counter counter : Counter.values() )
+        {
+            json.append( counter.ordinal() == 0 ? "" : "," ).append( '"' ).append(
+                    counter.name().toLowerCase() ).append( "\":" ).append(
+                    totals[counter.ordinal()] );
+        }
+        json.append( "},\"latenciesMicros\":{" );
+        boolean first = true;
+        for ( Operation operation : Operation.values() )
+        {
+            Histogram histogram = counters.getLatencies( operation );
+            if ( histogram.getTotalCount() == 0 )
+            {
+                continue;
+            }
+            json.append( first ? "" : "," ).append( '"' ).append( operation ).append(
+                    "\":{\"count\":" ).append( histogram.getTotalCount() ).append(
+                    ",\"mean\":" ).append( histogram.getMean() / 1000 );
+            for ( int i = 0; i < QUANTILES.length; i++ )
+            {
+                json.append( ",\"" ).append( QUANTILE_NAMES[i] ).append( "\":" ).append(
+                        histogram.getValueAtPercentile( QUANTILES[i] * 100 ) / 1000.0 );
+            }
+            json.append( ",\"max\":" ).append( histogram.getMax() / 1000.0 ).append(
+                    '}' );
+            first = false;
+        }
+        json.append( "}}" );
+        out.println( json );
+        out.flush();
+    }
+
+    private double uptimeSeconds()
+    {
+        return ( System.currentTimeMillis() - startMillis ) / 1000.0;
+    }
+}
@@ -19,239 +19,972 @@
  */
 package org.neo4j.bench.cases.mixedload;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.neo4j.bench.cases.bulkimport.ParallelImporter;
+import org.neo4j.bench.cases.mixedload.LiveCounters.Counter;
+import org.neo4j.bench.cases.mixedload.trace.TraceWriter;
 import org.neo4j.bench.cases.mixedload.workers.BulkCreateWorker;
-import org.neo4j.bench.cases.mixedload.workers.BulkReaderWorker;
-import org.neo4j.bench.cases.mixedload.workers.CreateWorker;
-import org.neo4j.bench.cases.mixedload.workers.DeleteWorker;
-import org.neo4j.bench.cases.mixedload.workers.PropertyAddWorker;
+import org.neo4j.bench.cases.mixedload.workers.WorkerKind;
+import org.neo4j.bench.cases.topology.Topology;
+import org.neo4j.bench.metrics.Histogram;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
 
 /**
- * The main driver for the operation performer threads. Keeps the probabilities
- * with which each thread type is launched and aggregates the results of their
- * runs.
+ * The main driver for the operation performer threads. Launches them as
+ * often as the {@link WorkloadProfile} says and aggregates the results of
+ * their runs.
  *
  * @author <a href=mailto:chris.gioran@neotechnology.com> Chris Gioran </a>
  *
  */
 public class MixedLoadBenchCase
 {
-    private enum WorkerType
-    {
-        SIMPLE,
-        BULK
-    }
-
-    // Keeps the list of simple workers futures
-    private final List<Future<int[]>> simpleTasks;
-    // Keeps the list of bulk workers futures
-    private final List<Future<int[]>> bulkTasks;
-    private int tasksExecuted;
-    // The queue of nodes created/deleted
-    private final LinkedBlockingQueue<Node> nodes;
-
-    private long totalReads = 0;
-    private long totalWrites = 0;
-    private long totalTime = 0;
-    // Current max values
-    private double peakReads = 0;
-    private double peakWrites = 0;
-    private double sustainedReads = 0;
-    private double sustainedWrites = 0;
+    // The pool of ids of the nodes created/deleted
+    private final NodePool nodes;
+    // Adds up the results of the workers as they finish
+    private ResultAggregator aggregator;
+    // Live counts of all workers, sampled for the throughput over time
+    private final LiveCounters counters;
     // Time to run, in minutes
     private final long timeToRun;
+    // Which workers run how often and how long
+    private WorkloadProfile workload;
+    // Populate with the parallel importer on this many threads, if positive
+    private int populateThreads;
+    private int populateTxSize;
+    private Topology populateTopology;
+    // The shape the workers give the graph, null for uniformly random pairs
+    private Topology topology;
+    // How far traversal workers go
+    private int traversalDepth = 3;
+    private Direction traversalDirection = Direction.OUTGOING;
+    // Which nodes point lookups go to
+    private KeyDistribution keyDistribution = KeyDistribution.parse( "uniform" );
+    // What the property workers write
+    private PropertyShape propertyShape = PropertyShape.defaultShape();
+    // The store of the database, to follow its growth, null not to
+    private File storeDir;
+    private long storeSizeIntervalMillis;
+    private File storeSizeFile;
+    private StoreSizeLog storeSizeLog;
+    // Serves the live counters over HTTP on this port, if positive
+    private int metricsPort;
+    private LiveMetricsServer metricsServer;
+    // Arrival rates per second for open loop runs, null for closed loop
+    private Map<WorkerKind, Double> openLoopRates;
+    private OpenLoopDriver.Arrivals arrivals;
+    // Steps of the open loop ramp, no ramp if less than two
+    private int rampSteps;
+    private double rampFactor;
+    // What runs the workers and how many of them are in flight at most
+    private ExecutorStrategy executorStrategy;
+    private int concurrency;
+    // Sweep concurrency levels up to this one, no sweep if not positive
+    private int sweepMaxConcurrency;
+    private ScalabilitySweep scalabilitySweep;
+    // Sweep transaction sizes up to this one, no sweep if not positive
+    private int sweepMaxTxSize;
+    private BatchSizeSweep batchSizeSweep;
+    // Warm-up settings, no warm-up if the max time is not positive
+    private long warmupMaxMillis;
+    private long warmupSampleMillis;
+    private int warmupWindow;
+    private double warmupMaxVariation;
+    // What the warm-up found
+    private long warmupMillis;
+    private double steadyStateThroughput;
+    private boolean steadyStateReached;
+    // Throughput sampling over the measured part of the run
+    private long sampleIntervalMillis;
+    private File timeSeriesFile;
+    private ThroughputSampler sampler;
+    // Seeds the random streams of the run, unseeded if null
+    private Long seed;
+    // Where the operations of the run are recorded, null for nowhere
+    private File traceFile;
+    private TraceWriter trace;
+    // Set up by setUp(), for the warm-up and the measured run
+    private WorkerContext context;
+    private Random r;
 
     public MixedLoadBenchCase( long timeToRun )
     {
-        simpleTasks = new LinkedList<Future<int[]>>();
-        bulkTasks = new LinkedList<Future<int[]>>();
         this.timeToRun = timeToRun;
-        nodes = new LinkedBlockingQueue<Node>();
-        tasksExecuted = 0;
+        nodes = new NodePool();
+        aggregator = new ResultAggregator();
+        counters = new LiveCounters();
+        workload = WorkloadProfile.defaultProfile();
+        sampleIntervalMillis = 1000;
+        executorStrategy = ExecutorStrategy.FIXED;
+        concurrency = Runtime.getRuntime().availableProcessors();
     }
 
     public double[] getResults()
     {
         double[] totals = new double[6];
-        totals[0] = totalReads * 1.0 / totalTime;
-        totals[1] = totalWrites * 1.0 / totalTime;
-        totals[2] = peakReads;
-        totals[3] = peakWrites;
-        totals[4] = sustainedReads;
-        totals[5] = sustainedWrites;
+        totals[0] = aggregator.getAvgReadsPerMs();
+        totals[1] = aggregator.getAvgWritesPerMs();
+        totals[2] = getPeakPerMs( Counter.READS );
+        totals[3] = getPeakPerMs( Counter.WRITES );
+        totals[4] = getSustainedPerMs( Counter.READS );
+        totals[5] = getSustainedPerMs( Counter.WRITES );
         return Arrays.copyOf( totals, totals.length );
     }
 
-    public Queue<Node> getNodeQueue()
+    /**
+     * @return The highest rate of any sample interval, per ms
+     */
+    public double getPeakPerMs( Counter counter )
+    {
+        return sampler == null ? 0
+                : sampler.getPeakPerSecond( counter ) / 1000;
+    }
+
+    /**
+     * @return The rate that 90% of the sample intervals reached, per ms
+     */
+    public double getSustainedPerMs( Counter counter )
+    {
+        return sampler == null ? 0
+                : sampler.getPercentilePerSecond( counter, 10 ) / 1000;
+    }
+
+    public NodePool getNodePool()
     {
         return nodes;
     }
 
+    public ResultAggregator getAggregator()
+    {
+        return aggregator;
+    }
+
+    public void setWorkload( WorkloadProfile workload )
+    {
+        this.workload = workload;
+    }
+
+    /**
+     * Creates the initial nodes with a {@link ParallelImporter} instead of a
+     * single bulk create worker, with relationships of the given topology.
+     */
+    public void setParallelPopulate( int threads, int txSize,
+            Topology topology )
+    {
+        this.populateThreads = threads;
+        this.populateTxSize = txSize;
+        this.populateTopology = topology;
+    }
+
+    /**
+     * @param topology The shape the initial population and all creating
+     *            workers give the graph
+     */
+    public void setTopology( Topology topology )
+    {
+        this.topology = topology;
+    }
+
+    /**
+     * @param depth How many hops the traversal workers go, shortest paths
+     *            up to twice that
+     * @param direction The direction filtered traversals follow
+     */
+    public void setTraversal( int depth, Direction direction )
+    {
+        this.traversalDepth = depth;
+        this.traversalDirection = direction;
+    }
+
+    /**
+     * @param keyDistribution Which nodes the lookup workers read
+     */
+    public void setKeyDistribution( KeyDistribution keyDistribution )
+    {
+        this.keyDistribution = keyDistribution;
+    }
+
+    /**
+     * @param propertyShape What the property workers write
+     */
+    public void setPropertyShape( PropertyShape propertyShape )
+    {
+        this.propertyShape = propertyShape;
+    }
+
+    /**
+     * @param seed Makes every worker draw the same random numbers in every
+     *            run, null for different ones
+     */
+    public void setSeed( Long seed )
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @param traceFile Where all the operations of the run, from the
+     *            initial load on, are recorded for replay, null for nowhere
+     */
+    public void setTraceFile( File traceFile )
+    {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * @param port The local port to serve live metrics on for the whole
+     *            run, none if not positive
+     */
+    public void setMetricsPort( int port )
+    {
+        this.metricsPort = port;
+    }
+
+    /**
+     * @param storeDir The store of the database, to report how much the
+     *            store files grow during the measured run
+     * @param intervalMillis How often the sizes are written
+     * @param file Where the sizes are written, null for none
+     */
+    public void setStoreDir( File storeDir, long intervalMillis, File file )
+    {
+        this.storeDir = storeDir;
+        this.storeSizeIntervalMillis = intervalMillis;
+        this.storeSizeFile = file;
+    }
+
+    public WorkloadProfile getWorkload()
+    {
+        return workload;
+    }
+
+    /**
+     * Makes the run open loop instead of keeping a fixed number of workers
+     * busy. With rampSteps greater than one, the time to run is split in
+     * steps of rates growing by rampFactor, to find where throughput stops
+     * following the offered load.
+     *
+     * @param rates Arrival rates per second for every kind of worker
+     */
+    public void setOpenLoop( Map<WorkerKind, Double> rates,
+            OpenLoopDriver.Arrivals arrivals, int rampSteps, double rampFactor )
+    {
+        this.openLoopRates = rates;
+        this.arrivals = arrivals;
+        this.rampSteps = rampSteps;
+        this.rampFactor = rampFactor;
+    }
+
+    /**
+     * @param concurrency The number of workers in flight at most, for the
+     *            closed loop, or the number of threads serving arrivals, for
+     *            the open loop
+     */
+    public void setExecutor( ExecutorStrategy executorStrategy, int concurrency )
+    {
+        this.executorStrategy = executorStrategy;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sweeps concurrency instead of running at a single level: the time to
+     * run is split evenly over 1, 2, 4, ... up to maxConcurrency workers in
+     * flight, on the same database.
+     */
+    public void setScalabilitySweep( int maxConcurrency )
+    {
+        this.sweepMaxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return The results of the scalability sweep, null if none was run
+     */
+    public ScalabilitySweep getScalabilitySweep()
+    {
+        return scalabilitySweep;
+    }
+
+    /**
+     * Sweeps the operations per transaction of all writers instead: the
+     * time to run is split evenly over 1, 10, 100, ... up to maxTxSize.
+     */
+    public void setBatchSizeSweep( int maxTxSize )
+    {
+        this.sweepMaxTxSize = maxTxSize;
+    }
+
+    /**
+     * @return true if measure() runs one of the sweeps, not a single run
+     */
+    public boolean isSweep()
+    {
+        return openLoopRates == null
+               && ( sweepMaxConcurrency > 0 || sweepMaxTxSize > 0 );
+    }
+
+    /**
+     * @return The results of the transaction size sweep, null if none was run
+     */
+    public BatchSizeSweep getBatchSizeSweep()
+    {
+        return batchSizeSweep;
+    }
+
+    /**
+     * Runs the closed loop mix without recording anything until throughput
+     * is steady, before measuring in any mode.
+     *
+     * @param maxMillis Give up waiting for steady state after this long
+     * @param sampleMillis The length of each throughput sample
+     * @param window The number of consecutive samples that must be steady
+     * @param maxVariation The highest coefficient of variation of the
+     *            samples in the window that is still steady
+     */
+    public void setWarmup( long maxMillis, long sampleMillis, int window,
+            double maxVariation )
+    {
+        this.warmupMaxMillis = maxMillis;
+        this.warmupSampleMillis = sampleMillis;
+        this.warmupWindow = window;
+        this.warmupMaxVariation = maxVariation;
+    }
+
+    /**
+     * @param intervalMillis The length of every throughput sample
+     * @param file Where the samples are written, null for none
+     */
+    public void setSampling( long intervalMillis, File file )
+    {
+        this.sampleIntervalMillis = intervalMillis;
+        this.timeSeriesFile = file;
+    }
+
+    /**
+     * @return The throughput sampler of the measured run, null before it
+     */
+    public ThroughputSampler getSampler()
+    {
+        return sampler;
+    }
+
+    public long getWarmupMillis()
+    {
+        return warmupMillis;
+    }
+
+    /**
+     * @return The ops per second at which warm-up was considered steady, or
+     *         where it was left if it never was
+     */
+    public double getSteadyStateThroughput()
+    {
+        return steadyStateThroughput;
+    }
+
+    public boolean isSteadyStateReached()
+    {
+        return steadyStateReached;
+    }
+
+    /**
+     * Populates the database, warms up and measures, all in one go.
+     */
     public void run( GraphDatabaseService graphDb )
     {
+        setUp( graphDb );
+        try
+        {
+            warmUp();
+            measure();
+        }
+        finally
+        {
+            tearDown();
+        }
+    }
 
-        int maxThreads = Runtime.getRuntime().availableProcessors() + 2;
-        ExecutorService service = Executors.newFixedThreadPool( maxThreads );
-        Random r = new Random();
+    /**
+     * Populates the database with the initial load of the workload.
+     */
+    public void setUp( GraphDatabaseService graphDb )
+    {
+        context = new WorkerContext( graphDb, nodes, counters, topology );
+        context.setTraversal( traversalDepth, traversalDirection );
+        context.setKeyDistribution( keyDistribution );
+        context.setPropertyShape( workload.getPropertyRelationshipShare() == null ? propertyShape
+                : propertyShape.withRelationshipShare( workload.getPropertyRelationshipShare() ) );
+        context.setRelationshipDeleteShare( workload.getRelationshipDeleteShare() );
+        if ( workload.hasWorker( WorkerKind.CHURN ) )
+        {
+            // Only churn is meant to follow id reuse, the others would pay
+            // for it on every create and delete
+            context.setIdReuse( new IdReuseTracker() );
+        }
+        if ( seed != null )
+        {
+            context.setSeed( seed );
+        }
+        r = context.newRandom();
+        if ( traceFile != null )
+        {
+            try
+            {
+                trace = new TraceWriter( traceFile );
+                context.setTrace( trace );
+            }
+            catch ( IOException e )
+            {
+                // The run goes on untraced, as it would have without a file
+                e.printStackTrace();
+            }
+        }
+        startMetricsServer();
 
-        long startTime = System.currentTimeMillis();
+        // The initial load is part of the warm-up, if there is one
+        ResultAggregator populateInto = warmupMaxMillis > 0 ? new ResultAggregator()
+                : aggregator;
         try
         {
-            service.submit( new BulkCreateWorker( graphDb, nodes, 100000 ) ).get();
+            if ( populateThreads > 0 )
+            {
+                ParallelImporter importer = new ParallelImporter( graphDb,
+                        populateThreads, populateTxSize, populateTopology );
+                if ( seed != null )
+                {
+                    importer.setSeed( context.newRandom().nextLong() );
+                }
+                System.out.println( "Populated with "
+                                    + importer.run( workload.getPopulate(),
+                                            nodes, storeDir ) );
+            }
+            else
+            {
+                populateInto.add( new BulkCreateWorker( context,
+                        workload.getPopulate() ).call() );
+            }
         }
         catch ( Exception e )
         {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Runs the workload unmeasured until it is steady, if warm-up is on.
+     */
+    public void warmUp()
+    {
+        if ( warmupMaxMillis > 0 )
+        {
+            warmUp( context, r );
+        }
+    }
+
+    /**
+     * Runs the measured part, as set up: closed or open loop or a sweep.
+     */
+    public void measure()
+    {
+        long startTime = System.currentTimeMillis();
+        if ( storeDir != null )
+        {
+            storeSizeLog = new StoreSizeLog( storeDir,
+                    storeSizeIntervalMillis, storeSizeFile );
+            storeSizeLog.start();
+        }
+        sampler = new ThroughputSampler( counters, sampleIntervalMillis,
+                timeSeriesFile );
+        sampler.start();
 
-        while ( System.currentTimeMillis() - startTime < timeToRun * 60 * 1000 )
+        try
         {
-            double dice = r.nextDouble();
-            if ( dice > 0.5 )
+            if ( openLoopRates != null )
             {
-                simpleTasks.add( service.submit( new CreateWorker( graphDb,
-                        nodes, r.nextInt( 1000 ) ) ) );
+                runOpenLoop( context );
+                return;
             }
-            else if ( dice > 0.1 )
+            if ( sweepMaxConcurrency > 0 )
             {
-                simpleTasks.add( service.submit( new DeleteWorker( graphDb,
-                        nodes, r.nextInt( 1000 ) ) ) );
+                runScalabilitySweep( context, r );
+                return;
             }
-            if ( r.nextDouble() > 0.3 )
+            if ( sweepMaxTxSize > 0 )
             {
-                bulkTasks.add( service.submit( new BulkCreateWorker( graphDb,
-                        nodes, 2000 ) ) );
+                runBatchSizeSweep( context, r );
+                return;
             }
-            if ( r.nextDouble() < 0.1 )
+            runClosedLoop( context, workload, concurrency,
+                    timeToRun * 60 * 1000, aggregator, r, true, null );
+        }
+        catch ( InterruptedException e )
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            stopSampler();
+            stopStoreSizeLog();
+        }
+        printOutResults( "Final results" );
+        System.out.println( "Run for "
+                            + ( System.currentTimeMillis() - startTime )
+                            / 60000 + " minutes" );
+    }
+
+    /**
+     * Starts a new trial, what measure() measures next is kept apart from
+     * what it measured before.
+     */
+    public void nextTrial()
+    {
+        aggregator = new ResultAggregator();
+    }
+
+    /**
+     * Stops what setUp() started.
+     */
+    public void tearDown()
+    {
+        stopMetricsServer();
+        if ( trace != null )
+        {
+            try
             {
-                bulkTasks.add( service.submit( new BulkReaderWorker( graphDb ) ) );
+                trace.close();
             }
-            if ( r.nextBoolean() )
+            catch ( IOException e )
             {
-                simpleTasks.add( service.submit( new PropertyAddWorker(
-                        graphDb, nodes, 200 ) ) );
+                e.printStackTrace();
             }
-            try
+            trace = null;
+        }
+    }
+
+    /**
+     * @return Throughput per ms, latency percentiles in microseconds and
+     *         totals of the measured run, by name
+     */
+    public Map<String, Double> getMetrics()
+    {
+        Map<String, Double> result = new LinkedHashMap<String, Double>();
+        result.put( "avg-reads-per-ms", aggregator.getAvgReadsPerMs() );
+        result.put( "avg-writes-per-ms", aggregator.getAvgWritesPerMs() );
+        result.put( "peak-reads-per-ms", getPeakPerMs( Counter.READS ) );
+        result.put( "peak-writes-per-ms", getPeakPerMs( Counter.WRITES ) );
+        result.put( "sustained-reads-per-ms", getSustainedPerMs( Counter.READS ) );
+        result.put( "sustained-writes-per-ms", getSustainedPerMs( Counter.WRITES ) );
+        result.put( "commits", (double) aggregator.getCommits() );
+        result.put( "rollbacks", (double) aggregator.getRollbacks() );
+        result.put( "failures", (double) aggregator.getFailures() );
+        for ( Operation operation : Operation.values() )
+        {
+            Histogram histogram = aggregator.getLatencies( operation );
+            if ( histogram.getTotalCount() == 0 )
+            {
+                continue;
+            }
+            String name = operation.name().toLowerCase().replace( '_', '-' );
+            result.put( name + "-p50-us",
+                    histogram.getValueAtPercentile( 50 ) / 1000.0 );
+            result.put( name + "-p99-us",
+                    histogram.getValueAtPercentile( 99 ) / 1000.0 );
+        }
+        return result;
+    }
+
+    /**
+     * Keeps workers picked at random from the workload in flight until the
+     * time is up and then waits for them to finish.
+     *
+     * @param mix The workers to pick from
+     * @param workers The number of workers in flight at most
+     * @param into Where the results of the workers go
+     * @param report True to print the results once per sample interval
+     * @param stop Ends the run early once set, may be null
+     */
+    private void runClosedLoop( WorkerContext context, WorkloadProfile mix,
+            int workers, long durationMillis, ResultAggregator into, Random r,
+            boolean report, AtomicBoolean stop ) throws InterruptedException
+    {
+        ExecutorService service = executorStrategy.create( workers );
+        // Bounds the number of workers in flight, released as each finishes
+        Semaphore slots = new Semaphore( workers );
+        long startTime = System.currentTimeMillis();
+        long lastReport = startTime;
+        try
+        {
+            long now;
+            while ( ( now = System.currentTimeMillis() ) - startTime < durationMillis
+                    && ( stop == null || !stop.get() ) )
             {
-                while ( simpleTasks.size() + bulkTasks.size() > maxThreads - 2 )
+                WorkerKind kind = mix.pick( r );
+                submit( service, slots, kind.newWorker( context,
+                        mix.ops( kind, r ), mix.txSize( kind ) ), into );
+                // Not after every worker, reporting costs the driver time
+                if ( report && now - lastReport >= sampleIntervalMillis )
                 {
-                    gatherUp( simpleTasks, WorkerType.SIMPLE, false );
-                    gatherUp( bulkTasks, WorkerType.BULK, false );
-                    Thread.sleep( 100 );
+                    printOutResults( "Intermediate results" );
+                    lastReport = now;
                 }
-                printOutResults( "Intermediate results" );
             }
-            catch ( InterruptedException e )
+            // Wait for everything in flight to finish
+            slots.acquire( workers );
+        }
+        finally
+        {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * Runs the mix into a throwaway aggregator while a sampler thread checks
+     * its throughput, until it is steady or the max warm-up time is over.
+     * Throughput is taken from the live counters, which move with every
+     * operation, not from the aggregator, which only moves when a whole
+     * worker is done.
+     */
+    private void warmUp( WorkerContext context, Random r )
+    {
+        final ResultAggregator warmupResults = new ResultAggregator();
+        final SteadyStateDetector detector = new SteadyStateDetector(
+                warmupWindow, warmupMaxVariation );
+        final AtomicBoolean steady = new AtomicBoolean();
+        Thread sampler = new Thread( "warmup-sampler" )
+        {
+            @Override
+            public void run()
             {
-                e.printStackTrace();
+                long lastOps = counters.get( Counter.READS )
+                               + counters.get( Counter.WRITES );
+                long lastTime = System.nanoTime();
+                try
+                {
+                    while ( !steady.get() )
+                    {
+                        Thread.sleep( warmupSampleMillis );
+                        long ops = counters.get( Counter.READS )
+                                   + counters.get( Counter.WRITES );
+                        long now = System.nanoTime();
+                        double throughput = ( ops - lastOps ) * 1000000000.0
+                                            / ( now - lastTime );
+                        lastOps = ops;
+                        lastTime = now;
+                        if ( detector.addSample( throughput ) )
+                        {
+                            steady.set( true );
+                        }
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    // Warm-up is over without reaching steady state
+                }
             }
-        }
+        };
+        long start = System.currentTimeMillis();
+        sampler.start();
         try
         {
-            getAll();
+            runClosedLoop( context, workload, concurrency, warmupMaxMillis,
+                    warmupResults, r, false, steady );
+            sampler.interrupt();
+            sampler.join();
         }
         catch ( InterruptedException e )
         {
             e.printStackTrace();
         }
+        warmupMillis = System.currentTimeMillis() - start;
+        steadyStateReached = steady.get();
+        steadyStateThroughput = detector.getMean();
+        System.out.println( String.format(
+                "Warm-up took %d s, %s at %.2f ops/sec (variation %.3f)",
+                warmupMillis / 1000, steadyStateReached ? "steady state reached"
+                        : "no steady state within the limit",
+                steadyStateThroughput, detector.getCoefficientOfVariation() ) );
+    }
+
+    private void runScalabilitySweep( WorkerContext context, Random r )
+            throws InterruptedException
+    {
+        int[] levels = ScalabilitySweep.levels( sweepMaxConcurrency );
+        long levelMillis = timeToRun * 60 * 1000 / levels.length;
+        scalabilitySweep = new ScalabilitySweep();
+        for ( int level : levels )
+        {
+            ResultAggregator levelResults = new ResultAggregator();
+            long start = System.nanoTime();
+            runClosedLoop( context, workload, level, levelMillis,
+                    levelResults, r, false, null );
+            long wallNanos = System.nanoTime() - start;
+            double opsPerSecond = ( levelResults.getReads() + levelResults.getWrites() )
+                                  * 1000000000.0 / wallNanos;
+            scalabilitySweep.add( level, opsPerSecond );
+            System.out.println( String.format(
+                    "Concurrency %d: %.2f ops/sec", level, opsPerSecond ) );
+        }
+        scalabilitySweep.print( System.out );
+    }
+
+    private void runBatchSizeSweep( WorkerContext context, Random r )
+            throws InterruptedException
+    {
+        int[] levels = BatchSizeSweep.levels( sweepMaxTxSize );
+        long levelMillis = timeToRun * 60 * 1000 / levels.length;
+        batchSizeSweep = new BatchSizeSweep();
+        for ( int txSize : levels )
+        {
+            ResultAggregator levelResults = new ResultAggregator();
+            BatchSizeSweep.resetPeakHeap();
+            long start = System.nanoTime();
+            runClosedLoop( context, workload.withTxSize( txSize ), concurrency,
+                    levelMillis, levelResults, r, false, null );
+            long wallNanos = System.nanoTime() - start;
+            double commitsPerSecond = levelResults.getCommits() * 1000000000.0
+                                      / wallNanos;
+            double opsPerSecond = ( levelResults.getReads() + levelResults.getWrites() )
+                                  * 1000000000.0 / wallNanos;
+            batchSizeSweep.add( txSize, commitsPerSecond, opsPerSecond,
+                    levelResults.getRollbacks(),
+                    levelResults.getLatencies( Operation.COMMIT ),
+                    BatchSizeSweep.getPeakHeap() );
+            System.out.println( String.format(
+                    "Tx size %d: %.2f commits/sec, %.2f ops/sec, %d rolled back",
+                    txSize, commitsPerSecond, opsPerSecond,
+                    levelResults.getRollbacks() ) );
+        }
+        batchSizeSweep.print( System.out );
+    }
+
+    private void runOpenLoop( WorkerContext context )
+            throws InterruptedException
+    {
+        OpenLoopDriver driver = new OpenLoopDriver( context, aggregator,
+                executorStrategy, concurrency, arrivals );
+        long runMillis = timeToRun * 60 * 1000;
+        if ( rampSteps > 1 )
+        {
+            List<OpenLoopDriver.StepResult> steps = driver.ramp(
+                    openLoopRates, rampSteps, rampFactor, runMillis
+                                                          / rampSteps );
+            System.out.println( "Saturation knee at offered load of "
+                                + OpenLoopDriver.findKnee( steps )
+                                + " ops per second" );
+        }
+        else
+        {
+            System.out.println( "Open loop run: "
+                                + driver.runStep( openLoopRates, runMillis ) );
+        }
+        stopSampler();
         printOutResults( "Final results" );
-        System.out.println( "Run for "
-                            + ( System.currentTimeMillis() - startTime )
-                            / 60000 + " minutes" );
-        service.shutdown();
+        for ( WorkerKind kind : openLoopRates.keySet() )
+        {
+            Histogram histogram = driver.getResponseTimes( kind );
+            System.out.println( String.format(
+                    "%s response time from intended start (us): count=%d p50=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                    kind, histogram.getTotalCount(),
+                    histogram.getValueAtPercentile( 50 ) / 1000.0,
+                    histogram.getValueAtPercentile( 99 ) / 1000.0,
+                    histogram.getValueAtPercentile( 99.9 ) / 1000.0,
+                    histogram.getMax() / 1000.0 ) );
+        }
     }
-    
+
+    private void stopSampler()
+    {
+        if ( sampler == null )
+        {
+            return;
+        }
+        try
+        {
+            sampler.stop();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void printOutResults(String header)
     {
         System.out.println( header );
-        System.out.println( "Total time (ms): " + totalTime );
-        System.out.println( "Total reads: " + totalReads );
-        System.out.println( "Total writes: " + totalWrites );
-        System.out.println( "Peak reads per ms:" + peakReads );
-        System.out.println( "Peak writes per ms: " + peakWrites );
-        System.out.println( "Peak Sustained reads per ms: " + sustainedReads );
-        System.out.println( "Peak Sustained writes per ms: " + sustainedWrites );
+        System.out.println( "Total time (ms): " + aggregator.getElapsedNanos() / 1000000 );
+        System.out.println( "Total reads: " + aggregator.getReads() );
+        System.out.println( "Total writes: " + aggregator.getWrites() );
+        System.out.println( "Total commits: " + aggregator.getCommits() );
+        System.out.println( "Total rollbacks: " + aggregator.getRollbacks() );
+        System.out.println( "Rolled back operations: " + aggregator.getRolledBackOperations() );
+        System.out.println( "Failed operations: " + aggregator.getFailures() );
+        System.out.println( "Executed tasks: " + aggregator.getTasksExecuted() );
+        System.out.println( "Failed tasks: " + aggregator.getTasksFailed() );
+        System.out.println( "Peak reads per ms: " + getPeakPerMs( Counter.READS ) );
+        System.out.println( "Peak writes per ms: " + getPeakPerMs( Counter.WRITES ) );
+        System.out.println( "Sustained reads per ms: " + getSustainedPerMs( Counter.READS ) );
+        System.out.println( "Sustained writes per ms: " + getSustainedPerMs( Counter.WRITES ) );
+        if ( aggregator.getBytesWritten() > 0 )
+        {
+            System.out.println( "Total property bytes written: "
+                                + aggregator.getBytesWritten() );
+            System.out.println( "Peak property bytes written per sec: "
+                                + getPeakPerMs( Counter.BYTES_WRITTEN ) * 1000 );
+            System.out.println( "Sustained property bytes written per sec: "
+                                + getSustainedPerMs( Counter.BYTES_WRITTEN ) * 1000 );
+        }
+        long nodeIdsReused = counters.get( Counter.NODE_IDS_REUSED );
+        long relationshipIdsReused = counters.get( Counter.RELATIONSHIP_IDS_REUSED );
+        if ( nodeIdsReused + relationshipIdsReused > 0 )
+        {
+            System.out.println( "Ids reused: nodes=" + nodeIdsReused
+                                + " relationships=" + relationshipIdsReused );
+        }
+        if ( aggregator.getVisited() > 0 )
+        {
+            System.out.println( "Traversal nodes visited per sec: "
+                                + aggregator.getVisitedPerSecond() );
+        }
+        System.out.println( "Throughput samples: "
+                            + ( sampler == null ? 0 : sampler.getSampleCount() ) );
+        if ( sampler != null && sampler.getSampleCount() >= 4 )
+        {
+            System.out.println( String.format(
+                    "Throughput change first to last quarter: reads %+.1f%% writes %+.1f%%",
+                    sampler.getDecay( Counter.READS ) * 100,
+                    sampler.getDecay( Counter.WRITES ) * 100 ) );
+        }
+        for ( Operation operation : Operation.values() )
+        {
+            Histogram histogram = aggregator.getLatencies( operation );
+            if ( histogram.getTotalCount() == 0 )
+            {
+                continue;
+            }
+            System.out.println( String.format(
+                    "%s latency (us): count=%d p50=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                    operation, histogram.getTotalCount(),
+                    histogram.getValueAtPercentile( 50 ) / 1000.0,
+                    histogram.getValueAtPercentile( 99 ) / 1000.0,
+                    histogram.getValueAtPercentile( 99.9 ) / 1000.0,
+                    histogram.getMax() / 1000.0 ) );
+        }
         System.out.println();
     }
 
+    private void startMetricsServer()
+    {
+        if ( metricsPort <= 0 )
+        {
+            return;
+        }
+        metricsServer = new LiveMetricsServer( counters, metricsPort );
+        try
+        {
+            metricsServer.start();
+            System.out.println( "Serving live metrics on http://localhost:"
+                                + metricsPort + "/metrics" );
+        }
+        catch ( Exception e )
+        {
+            // Watching is optional, the run goes on without it
+            e.printStackTrace();
+            metricsServer = null;
+        }
+    }
+
+    private void stopMetricsServer()
+    {
+        if ( metricsServer == null )
+        {
+            return;
+        }
+        try
+        {
+            metricsServer.stop();
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+        }
+        metricsServer = null;
+    }
+
+    private void stopStoreSizeLog()
+    {
+        if ( storeSizeLog == null )
+        {
+            return;
+        }
+        try
+        {
+            storeSizeLog.stop();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long[] growth = storeSizeLog.getGrowth();
+        StringBuilder line = new StringBuilder( "Store growth (bytes):" );
+        for ( int i = 0; i < growth.length; i++ )
+        {
+            line.append( " " ).append( StoreSizeLog.FILES[i] ).append( "=" ).append(
+                    growth[i] );
+        }
+        System.out.println( line );
+    }
+
     /**
-     * 
-     * @param tasks The list of Futures to gather
-     * @param type The type of tasks - used for statistics generation
-     * @param sweepUp True if this method should wait for unfinished tasks if
-     *            false, not done tasks are skipped
-     * @throws InterruptedException
+     * Waits for a free slot and hands the worker to the executor. Its result
+     * goes to the aggregator from the executor thread, as soon as it is done.
+     *
+     * @param into Where the result goes
      */
-    private void gatherUp( List<Future<int[]>> tasks, WorkerType type,
-            boolean sweepUp ) throws InterruptedException
+    private void submit( ExecutorService service,
+            final Semaphore slots, Callable<WorkerResult> worker,
+            final ResultAggregator into )
+            throws InterruptedException
     {
-        Iterator<Future<int[]>> it = tasks.iterator();
-        while ( it.hasNext() )
+        slots.acquire();
+        FutureTask<WorkerResult> task = new FutureTask<WorkerResult>( worker )
         {
-            Future<int[]> task = it.next();
-            // Short circuit - if sweepUp is true, we gather everything up, else
-            // only finished
-            if ( sweepUp || task.isDone() )
+            @Override
+            protected void done()
             {
-                tasksExecuted++;
                 try
                 {
-                    int[] taskRes = task.get();
-                    totalReads += taskRes[0];
-                    totalWrites += taskRes[1];
-                    totalTime += taskRes[2];
-                    // These are the means for this run
-                    double thisReads = taskRes[0]
-                                       / ( taskRes[2] == 0 ? 1 : taskRes[2] );
-                    double thisWrites = taskRes[1]
-                                        / ( taskRes[2] == 0 ? 1 : taskRes[2] );
-                    // Sustained operations must be at least as long as half the average runtime
-                    if ( type == WorkerType.BULK && taskRes[2] > totalTime*0.5/tasksExecuted )
-                    {
-                        if ( thisReads > sustainedReads )
-                            sustainedReads = thisReads;
-                        if ( thisWrites > sustainedWrites )
-                            sustainedWrites = thisWrites;
-                    }
-                    // The test run for more than 10% of the average time, long enough for
-                    // getting a peak value
-                    if ( taskRes[2] > totalTime*0.1/tasksExecuted )
-                    {
-                        if ( thisReads > peakReads ) peakReads = thisReads;
-                        if ( thisWrites > peakWrites ) peakWrites = thisWrites;
-                    }
+                    into.add( get() );
                 }
                 catch ( ExecutionException e )
                 {
                     // It threw an exception, print and continue
                     e.printStackTrace();
-                    continue;
+                    into.taskFailed();
+                }
+                catch ( InterruptedException e )
+                {
+                    // Cannot happen, we are done
+                    Thread.currentThread().interrupt();
                 }
                 finally
                 {
-                    it.remove();
+                    slots.release();
                 }
-
             }
-        }
-    }
-
-    private void getAll() throws InterruptedException
-    {
-        gatherUp( simpleTasks, WorkerType.SIMPLE, true );
-        gatherUp( bulkTasks, WorkerType.BULK, true );
+        };
+        service.execute( task );
     }
 }
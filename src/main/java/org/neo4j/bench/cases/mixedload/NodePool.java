@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The pool of node ids created by the workers and shared between them. Ids
+ * are kept in a number of independently locked stripes of primitive longs, so
+ * that picking a random node and removing it are both constant time
+ * operations and concurrent workers seldom contend on the same lock.
+ *
+ * New ids are spread round robin over the stripes, which keeps them balanced
+ * and the random sampling (random stripe, then random slot) close to uniform.
+ */
+public class NodePool
+{
+    private static final int INITIAL_STRIPE_CAPACITY = 1024;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final AtomicInteger size;
+    private final AtomicInteger nextStripe;
+    private final AtomicLong highestId;
+
+    public NodePool()
+    {
+        this( Runtime.getRuntime().availableProcessors() * 4 );
+    }
+
+    /**
+     * @param concurrency The expected number of concurrent users, rounded up
+     *            to the next power of two to get the number of stripes
+     */
+    public NodePool( int concurrency )
+    {
+        int stripeCount = 1;
+        while ( stripeCount < concurrency )
+        {
+            stripeCount <<= 1;
+        }
+        stripes = new Stripe[stripeCount];
+        for ( int i = 0; i < stripeCount; i++ )
+        {
+            stripes[i] = new Stripe();
+        }
+        stripeMask = stripeCount - 1;
+        size = new AtomicInteger();
+        nextStripe = new AtomicInteger();
+        highestId = new AtomicLong( -1 );
+    }
+
+    public void add( long nodeId )
+    {
+        stripes[nextStripe.getAndIncrement() & stripeMask].add( nodeId );
+        size.incrementAndGet();
+        long currentHighest;
+        while ( nodeId > ( currentHighest = highestId.get() ) )
+        {
+            if ( highestId.compareAndSet( currentHighest, nodeId ) )
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns a random node id from the pool, leaving it in place.
+     *
+     * @param r The source of randomness of the calling worker
+     * @return The node id or -1 if the pool is empty
+     */
+    public long random( Random r )
+    {
+        while ( size.get() > 0 )
+        {
+            long result = stripes[r.nextInt( stripes.length )].random( r );
+            if ( result != -1 )
+            {
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a random node id from the pool and returns it, so that no other
+     * worker will pick it from now on.
+     *
+     * @param r The source of randomness of the calling worker
+     * @return The node id or -1 if the pool is empty
+     */
+    public long removeRandom( Random r )
+    {
+        while ( size.get() > 0 )
+        {
+            long result = stripes[r.nextInt( stripes.length )].removeRandom( r );
+            if ( result != -1 )
+            {
+                size.decrementAndGet();
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * @return The highest node id ever added to this pool, -1 if none
+     */
+    public long highestId()
+    {
+        return highestId.get();
+    }
+
+    private static class Stripe
+    {
+        private long[] ids = new long[INITIAL_STRIPE_CAPACITY];
+        private int count = 0;
+
+        synchronized void add( long id )
+        {
+            if ( count == ids.length )
+            {
+                long[] grown = new long[ids.length * 2];
+                System.arraycopy( ids, 0, grown, 0, count );
+                ids = grown;
+            }
+            ids[count++] = id;
+        }
+
+        synchronized long random( Random r )
+        {
+            if ( count == 0 )
+            {
+                return -1;
+            }
+            return ids[r.nextInt( count )];
+        }
+
+        synchronized long removeRandom( Random r )
+        {
+            if ( count == 0 )
+            {
+                return -1;
+            }
+            // Swap remove - the last one takes the place of the removed one
+            int index = r.nextInt( count );
+            long result = ids[index];
+            ids[index] = ids[--count];
+            return result;
+        }
+    }
+}
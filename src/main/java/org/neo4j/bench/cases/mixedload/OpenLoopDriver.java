@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.neo4j.bench.cases.mixedload.workers.WorkerKind;
+import org.neo4j.bench.metrics.ConcurrentHistogram;
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * Drives the workers open loop: every kind of worker is started at a target
+ * rate, following a schedule that does not care how fast the database
+ * answers. Each arrival performs a single operation and its response time is
+ * measured from the moment it was supposed to start, so time spent queued
+ * behind a stalled database is counted instead of silently omitted.
+ */
+public class OpenLoopDriver
+{
+    public enum Arrivals
+    {
+        // Evenly spaced arrivals
+        CONSTANT,
+        // Exponentially distributed gaps, as independent clients would produce
+        POISSON
+    }
+
+    // Offered load that is not met by this much is saturation
+    private static final double SATURATED_THROUGHPUT_RATIO = 0.9;
+    // A p99 this many times that of the first step is saturation
+    private static final double SATURATED_LATENCY_FACTOR = 5;
+
+    private final WorkerContext context;
+    private final ResultAggregator aggregator;
+    private final ExecutorStrategy executorStrategy;
+    private final int threads;
+    private final Arrivals arrivals;
+    // Response times from the intended start, per kind, over all steps
+    private final Map<WorkerKind, ConcurrentHistogram> responseTimes;
+
+    public OpenLoopDriver( WorkerContext context, ResultAggregator aggregator,
+            ExecutorStrategy executorStrategy, int threads, Arrivals arrivals )
+    {
+        this.context = context;
+        this.aggregator = aggregator;
+        this.executorStrategy = executorStrategy;
+        this.threads = threads;
+        this.arrivals = arrivals;
+        this.responseTimes = new EnumMap<WorkerKind, ConcurrentHistogram>(
+                WorkerKind.class );
+        for ( WorkerKind kind : WorkerKind.values() )
+        {
+            responseTimes.put( kind, new ConcurrentHistogram() );
+        }
+    }
+
+    /**
+     * @return The response times of the kind in nanoseconds, measured from
+     *         the intended start of each arrival
+     */
+    public Histogram getResponseTimes( WorkerKind kind )
+    {
+        return responseTimes.get( kind ).snapshot();
+    }
+
+    /**
+     * Offers the given load for the given time, then gives arrivals still
+     * queued a tenth of that to finish before dropping them.
+     *
+     * @param ratesPerSecond The arrival rate of every kind of worker to start
+     */
+    public StepResult runStep( final Map<WorkerKind, Double> ratesPerSecond,
+            long durationMillis ) throws InterruptedException
+    {
+        final ExecutorService service = executorStrategy.create( threads );
+        final ConcurrentHistogram stepResponseTimes = new ConcurrentHistogram();
+        final AtomicLong completed = new AtomicLong();
+        // Submitted and not yet started, whatever the executor wraps them in
+        final Set<Arrival> pending = Collections.newSetFromMap(
+                new ConcurrentHashMap<Arrival, Boolean>() );
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.MILLISECONDS.toNanos( durationMillis );
+
+        List<Thread> schedulers = new ArrayList<Thread>();
+        double offered = 0;
+        for ( final Map.Entry<WorkerKind, Double> rate : ratesPerSecond.entrySet() )
+        {
+            if ( rate.getValue() <= 0 )
+            {
+                continue;
+            }
+            offered += rate.getValue();
+            Thread scheduler = new Thread( "open-loop-" + rate.getKey() )
+            {
+                @Override
+                public void run()
+                {
+                    schedule( service, rate.getKey(), rate.getValue(), start,
+                            end, stepResponseTimes, completed, pending );
+                }
+            };
+            schedulers.add( scheduler );
+            scheduler.start();
+        }
+        for ( Thread scheduler : schedulers )
+        {
+            scheduler.join();
+        }
+        long achievedCount = completed.get();
+        long windowNanos = System.nanoTime() - start;
+
+        service.shutdown();
+        long dropped = 0;
+        if ( !service.awaitTermination( durationMillis / 10, TimeUnit.MILLISECONDS ) )
+        {
+            long now = System.nanoTime();
+            for ( Arrival arrival : pending )
+            {
+                if ( !pending.remove( arrival ) )
+                {
+                    // Started in the meantime, it records itself
+                    continue;
+                }
+                // They waited at least this long, count it or they are omitted
+                stepResponseTimes.record( now - arrival.intendedStart );
+                responseTimes.get( arrival.kind ).record( now - arrival.intendedStart );
+                dropped++;
+            }
+            service.shutdownNow();
+            service.awaitTermination( durationMillis, TimeUnit.MILLISECONDS );
+        }
+        return new StepResult( offered, achievedCount * 1000000000.0
+                                        / windowNanos,
+                stepResponseTimes.snapshot(), dropped );
+    }
+
+    /**
+     * Runs steps of increasing load, the rates multiplied by factor every
+     * time, until the database saturates or the steps run out.
+     *
+     * @return The results of all the steps run, the last one saturated if
+     *         saturation was reached
+     */
+    public List<StepResult> ramp( Map<WorkerKind, Double> baseRates,
+            int steps, double factor, long stepMillis )
+            throws InterruptedException
+    {
+        List<StepResult> results = new ArrayList<StepResult>();
+        double multiplier = 1;
+        for ( int i = 0; i < steps; i++ )
+        {
+            Map<WorkerKind, Double> rates = new EnumMap<WorkerKind, Double>(
+                    WorkerKind.class );
+            for ( Map.Entry<WorkerKind, Double> rate : baseRates.entrySet() )
+            {
+                rates.put( rate.getKey(), rate.getValue() * multiplier );
+            }
+            StepResult step = runStep( rates, stepMillis );
+            results.add( step );
+            System.out.println( "Ramp step " + i + ": " + step );
+            if ( step.isSaturated( results.get( 0 ) ) )
+            {
+                break;
+            }
+            multiplier *= factor;
+        }
+        return results;
+    }
+
+    /**
+     * @return The highest offered rate the steps sustained before saturating,
+     *         0 if even the first step was saturated
+     */
+    public static double findKnee( List<StepResult> steps )
+    {
+        double knee = 0;
+        for ( StepResult step : steps )
+        {
+            if ( step.isSaturated( steps.get( 0 ) ) )
+            {
+                break;
+            }
+            knee = step.getOfferedPerSec();
+        }
+        return knee;
+    }
+
+    private void schedule( ExecutorService service, WorkerKind kind,
+            double ratePerSecond, long start, long end,
+            ConcurrentHistogram stepResponseTimes, AtomicLong completed,
+            Set<Arrival> pending )
+    {
+        Random r = context.newRandom();
+        double meanGapNanos = 1000000000.0 / ratePerSecond;
+        long intended = start;
+        while ( intended < end )
+        {
+            long now;
+            while ( ( now = System.nanoTime() ) < intended )
+            {
+                LockSupport.parkNanos( intended - now );
+            }
+            Arrival arrival = new Arrival( kind, intended, stepResponseTimes,
+                    completed, pending );
+            pending.add( arrival );
+            service.execute( arrival );
+            if ( arrivals == Arrivals.POISSON )
+            {
+                intended += (long) ( -Math.log( 1 - r.nextDouble() ) * meanGapNanos );
+            }
+            else
+            {
+                intended += (long) meanGapNanos;
+            }
+        }
+    }
+
+    private class Arrival implements Runnable
+    {
+        private final WorkerKind kind;
+        private final long intendedStart;
+        private final ConcurrentHistogram stepResponseTimes;
+        private final AtomicLong completed;
+        private final Set<Arrival> pending;
+
+        Arrival( WorkerKind kind, long intendedStart,
+                ConcurrentHistogram stepResponseTimes, AtomicLong completed,
+                Set<Arrival> pending )
+        {
+            this.kind = kind;
+            this.intendedStart = intendedStart;
+            this.stepResponseTimes = stepResponseTimes;
+            this.completed = completed;
+            this.pending = pending;
+        }
+
+        @Override
+        public void run()
+        {
+            if ( !pending.remove( this ) )
+            {
+                // Dropped at the end of the step, already counted
+                return;
+            }
+            Callable<WorkerResult> worker = kind.newWorker( context, 1, 1 );
+            try
+            {
+                aggregator.add( worker.call() );
+            }
+            catch ( Exception e )
+            {
+                e.printStackTrace();
+                aggregator.taskFailed();
+            }
+            long responseTime = System.nanoTime() - intendedStart;
+            stepResponseTimes.record( responseTime );
+            responseTimes.get( kind ).record( responseTime );
+            completed.incrementAndGet();
+        }
+    }
+
+    public static class StepResult
+    {
+        private final double offeredPerSec;
+        private final double achievedPerSec;
+        private final Histogram responseTimes;
+        private final long dropped;
+
+        StepResult( double offeredPerSec, double achievedPerSec,
+                Histogram responseTimes, long dropped )
+        {
+            this.offeredPerSec = offeredPerSec;
+            this.achievedPerSec = achievedPerSec;
+            this.responseTimes = responseTimes;
+            this.dropped = dropped;
+        }
+
+        public double getOfferedPerSec()
+        {
+            return offeredPerSec;
+        }
+
+        public double getAchievedPerSec()
+        {
+            return achievedPerSec;
+        }
+
+        public Histogram getResponseTimes()
+        {
+            return responseTimes;
+        }
+
+        public long getDropped()
+        {
+            return dropped;
+        }
+
+        boolean isSaturated( StepResult baseline )
+        {
+            return achievedPerSec < offeredPerSec * SATURATED_THROUGHPUT_RATIO
+                   || dropped > 0
+                   || responseTimes.getValueAtPercentile( 99 ) > SATURATED_LATENCY_FACTOR
+                                                                  * baseline.responseTimes.getValueAtPercentile( 99 );
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                    "offered=%.1f/s achieved=%.1f/s p50=%.1fus p99=%.1fus max=%.1fus dropped=%d",
+                    offeredPerSec, achievedPerSec,
+                    responseTimes.getValueAtPercentile( 50 ) / 1000.0,
+                    responseTimes.getValueAtPercentile( 99 ) / 1000.0,
+                    responseTimes.getMax() / 1000.0, dropped );
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+/**
+ * The kinds of operations the workers perform and time individually. New
+ * ones must be added at the end, the order is part of the stats file format.
+ */
+public enum Operation
+{
+    NODE_CREATE,
+    RELATIONSHIP_CREATE,
+    NODE_DELETE,
+    PROPERTY_SET,
+    FULL_SCAN,
+    // Committing a transaction, however many operations it holds
+    COMMIT,
+    // Traversal queries, each from a random node
+    EXPAND,
+    FILTERED_TRAVERSAL,
+    SHORTEST_PATH,
+    // Reading a node by id with its properties and relationships
+    POINT_LOOKUP,
+    // Reading a property and writing back a value derived from it
+    PROPERTY_UPDATE,
+    RELATIONSHIP_DELETE
+}
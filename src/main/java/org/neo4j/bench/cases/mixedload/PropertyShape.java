@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.Random;
+
+import org.neo4j.bench.cases.bulkimport.DegreeDistribution;
+
+/**
+ * What the property workers write: how many properties per node or
+ * relationship, of which types and how large, how many go to relationships
+ * and how many are read-modify-write updates of a property already there.
+ * Sizes are the length of strings and arrays, drawn from a
+ * {@link DegreeDistribution} spec and capped at {@link #MAX_VALUE_SIZE}.
+ */
+public class PropertyShape
+{
+    public enum ValueType
+    {
+        INT,
+        LONG,
+        BOOLEAN,
+        STRING,
+        STRING_ARRAY,
+        LONG_ARRAY
+    }
+
+    public static final int MAX_VALUE_SIZE = 1 << 20;
+
+    private final DegreeDistribution perEntity;
+    private final DegreeDistribution size;
+    private final ValueType[] types;
+    private final double[] cumulativeWeights;
+    private final double relationshipShare;
+    private final double updateShare;
+
+    /**
+     * @param perEntity Properties per node or relationship, at least one
+     * @param size Length of strings and arrays
+     * @param types Weights of the value types, like "STRING:4,LONG_ARRAY:1"
+     * @param relationshipShare Share of the operations on relationships
+     * @param updateShare Share of the operations that update instead of add
+     */
+    public PropertyShape( String perEntity, String size, String types,
+            double relationshipShare, double updateShare )
+    {
+        this.perEntity = DegreeDistribution.parse( perEntity );
+        this.size = DegreeDistribution.parse( size );
+        String[] weights = types.split( "," );
+        this.types = new ValueType[weights.length];
+        this.cumulativeWeights = new double[weights.length];
+        double total = 0;
+        for ( int i = 0; i < weights.length; i++ )
+        {
+            String[] parts = weights[i].split( ":" );
+            this.types[i] = ValueType.valueOf( parts[0].trim().toUpperCase() );
+            total += parts.length > 1 ? Double.parseDouble( parts[1].trim() )
+                    : 1;
+            cumulativeWeights[i] = total;
+        }
+        this.relationshipShare = relationshipShare;
+        this.updateShare = updateShare;
+    }
+
+    private PropertyShape( PropertyShape shape, double relationshipShare )
+    {
+        this.perEntity = shape.perEntity;
+        this.size = shape.size;
+        this.types = shape.types;
+        this.cumulativeWeights = shape.cumulativeWeights;
+        this.relationshipShare = relationshipShare;
+        this.updateShare = shape.updateShare;
+    }
+
+    /**
+     * @return One short value of any type per operation, all added to nodes
+     */
+    public static PropertyShape defaultShape()
+    {
+        return new PropertyShape( "constant:1", "uniform:25",
+                "INT,LONG,BOOLEAN,STRING", 0, 0 );
+    }
+
+    /**
+     * @return This shape with another share of the operations on
+     *         relationships
+     */
+    public PropertyShape withRelationshipShare( double relationshipShare )
+    {
+        return new PropertyShape( this, relationshipShare );
+    }
+
+    public int propertiesPerEntity( Random r )
+    {
+        return Math.max( 1, perEntity.sample( r ) );
+    }
+
+    public int valueSize( Random r )
+    {
+        return Math.min( size.sample( r ), MAX_VALUE_SIZE );
+    }
+
+    public ValueType type( Random r )
+    {
+        double pick = r.nextDouble() * cumulativeWeights[types.length - 1];
+        for ( int i = 0; i < types.length; i++ )
+        {
+            if ( pick < cumulativeWeights[i] )
+            {
+                return types[i];
+            }
+        }
+        return types[types.length - 1];
+    }
+
+    public double getRelationshipShare()
+    {
+        return relationshipShare;
+    }
+
+    public double getUpdateShare()
+    {
+        return updateShare;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder result = new StringBuilder();
+        for ( int i = 0; i < types.length; i++ )
+        {
+            result.append( i == 0 ? "" : "," ).append( types[i] );
+        }
+        return perEntity + " per entity of " + result + ", size " + size
+               + ", " + relationshipShare + " on relationships, "
+               + updateShare + " updates";
+    }
+}
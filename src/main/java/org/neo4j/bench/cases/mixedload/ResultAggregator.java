@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.neo4j.bench.metrics.ConcurrentHistogram;
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * Adds up the {@link WorkerResult}s of the workers. It is called from the
+ * executor threads as each worker finishes, so all state is kept in atomics
+ * and no driver thread has to poll for finished tasks.
+ */
+public class ResultAggregator
+{
+    private final AtomicLong tasksExecuted = new AtomicLong();
+    private final AtomicLong tasksFailed = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong rollbacks = new AtomicLong();
+    private final AtomicLong rolledBackOperations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong elapsedNanos = new AtomicLong();
+    private final AtomicLong visited = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    // Run time of the workers that traversed
+    private final AtomicLong visitingNanos = new AtomicLong();
+    private final AtomicLongArray operationCounts;
+    private final ConcurrentHistogram[] latencies;
+
+    public ResultAggregator()
+    {
+        operationCounts = new AtomicLongArray( Operation.values().length );
+        latencies = new ConcurrentHistogram[Operation.values().length];
+        for ( int i = 0; i < latencies.length; i++ )
+        {
+            latencies[i] = new ConcurrentHistogram();
+        }
+    }
+
+    /**
+     * @param result The result of a finished worker
+     */
+    public void add( WorkerResult result )
+    {
+        tasksExecuted.incrementAndGet();
+        if ( result.isAborted() )
+        {
+            tasksFailed.incrementAndGet();
+        }
+        reads.addAndGet( result.getReads() );
+        writes.addAndGet( result.getWrites() );
+        commits.addAndGet( result.getCommits() );
+        rollbacks.addAndGet( result.getRollbacks() );
+        rolledBackOperations.addAndGet( result.getRolledBackOperations() );
+        failures.addAndGet( result.getFailures() );
+        elapsedNanos.addAndGet( result.getElapsedNanos() );
+        bytesWritten.addAndGet( result.getBytesWritten() );
+        if ( result.getVisited() > 0 )
+        {
+            visited.addAndGet( result.getVisited() );
+            visitingNanos.addAndGet( result.getElapsedNanos() );
+        }
+        for ( Operation operation : Operation.values() )
+        {
+            long count = result.getOperationCount( operation );
+            if ( count > 0 )
+            {
+                operationCounts.addAndGet( operation.ordinal(), count );
+                result.addLatenciesTo( operation,
+                        latencies[operation.ordinal()] );
+            }
+        }
+    }
+
+    /**
+     * A worker ended with an exception and returned no result.
+     */
+    public void taskFailed()
+    {
+        tasksFailed.incrementAndGet();
+    }
+
+    public long getTasksExecuted()
+    {
+        return tasksExecuted.get();
+    }
+
+    public long getTasksFailed()
+    {
+        return tasksFailed.get();
+    }
+
+    public long getReads()
+    {
+        return reads.get();
+    }
+
+    public long getWrites()
+    {
+        return writes.get();
+    }
+
+    public long getCommits()
+    {
+        return commits.get();
+    }
+
+    public long getRollbacks()
+    {
+        return rollbacks.get();
+    }
+
+    /**
+     * @return The operations of rolled back transactions, not counted as
+     *         reads, writes or latencies
+     */
+    public long getRolledBackOperations()
+    {
+        return rolledBackOperations.get();
+    }
+
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    /**
+     * @return The sum of the run times of all workers, not wall clock time
+     */
+    public long getElapsedNanos()
+    {
+        return elapsedNanos.get();
+    }
+
+    public long getVisited()
+    {
+        return visited.get();
+    }
+
+    /**
+     * @return Nodes reached per second of traversing worker time
+     */
+    public double getVisitedPerSecond()
+    {
+        return visited.get() * 1000000000.0
+               / Math.max( visitingNanos.get(), 1 );
+    }
+
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    public long getOperationCount( Operation operation )
+    {
+        return operationCounts.get( operation.ordinal() );
+    }
+
+    public Histogram getLatencies( Operation operation )
+    {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    public double getAvgReadsPerMs()
+    {
+        return reads.get() * 1000000.0 / Math.max( elapsedNanos.get(), 1 );
+    }
+
+    public double getAvgWritesPerMs()
+    {
+        return writes.get() * 1000000.0 / Math.max( elapsedNanos.get(), 1 );
+    }
+}
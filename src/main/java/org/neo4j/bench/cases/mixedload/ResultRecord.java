@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * One trial of a run as kept in a {@link ResultsStore}: the stats, what
+ * was run where, and optionally the full latency histograms and the time
+ * series of the counters behind them.
+ */
+public class ResultRecord
+{
+    /**
+     * How runs are named after when they started, in an order that sorts by
+     * time, years included.
+     */
+    public static final String RUN_NAME_FORMAT = "yyyy-MM-dd-HH-mm";
+
+    private final long timestamp;
+    private final String version;
+    private final String commit;
+    private final String host;
+    private final Stats stats;
+    private final Map<Operation, Histogram> histograms;
+    private long intervalMillis;
+    private long[][] timeSeries;
+
+    /**
+     * @param timestamp When the run started, shared by all its trials
+     */
+    public ResultRecord( long timestamp, String version, String commit,
+            String host, Stats stats )
+    {
+        this.timestamp = timestamp;
+        this.version = version;
+        this.commit = commit;
+        this.host = host;
+        this.stats = stats;
+        this.histograms = new EnumMap<Operation, Histogram>( Operation.class );
+        this.timeSeries = new long[0][];
+    }
+
+    /**
+     * @return The name of a run started at the given time
+     */
+    public static String runName( Date start )
+    {
+        return new SimpleDateFormat( RUN_NAME_FORMAT ).format( start );
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public String getVersion()
+    {
+        return version;
+    }
+
+    public String getCommit()
+    {
+        return commit;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public Stats getStats()
+    {
+        return stats;
+    }
+
+    public void setHistogram( Operation operation, Histogram histogram )
+    {
+        histograms.put( operation, histogram );
+    }
+
+    public Map<Operation, Histogram> getHistograms()
+    {
+        return histograms;
+    }
+
+    /**
+     * @param samples The increase of every counter over every interval, as
+     *            from {@link ThroughputSampler#getSamples()}
+     */
+    public void setTimeSeries( long intervalMillis, long[][] samples )
+    {
+        this.intervalMillis = intervalMillis;
+        this.timeSeries = samples;
+    }
+
+    public long getIntervalMillis()
+    {
+        return intervalMillis;
+    }
+
+    public long[][] getTimeSeries()
+    {
+        return timeSeries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return stats.getName() + " " + version + " " + commit + "@" + host;
+    }
+}
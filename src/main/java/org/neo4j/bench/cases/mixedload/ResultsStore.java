@@ -0,0 +1,660 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * An append-only store of results, in two files. The data file holds the
+ * records back to back, each a binary encoding of a {@link ResultRecord}.
+ * The index file holds a fixed width entry per record: the timestamp of its
+ * run, its offset and its length, and the hash codes of its version, commit
+ * and host. Queries read the small index, pick the entries by timestamp and
+ * hashes and decode only their records from the data file, so years of
+ * results need not be parsed to get the last few of a host.
+ *
+ * A record is written before its index entry, a crash in between leaves a
+ * record no query sees rather than an entry pointing at nothing. An index
+ * of the first format, without a header or hashes, is rewritten on first
+ * use.
+ */
+public class ResultsStore
+{
+    private static final int FORMAT = 2;
+    // Time series values written as ints, clamped
+    private static final int FORMAT_INT_SAMPLES = 1;
+    private static final int INDEX_MAGIC = 0x4E425249;
+    private static final int INDEX_FORMAT = 2;
+    private static final int INDEX_HEADER_SIZE = 4 + 4;
+    private static final int INDEX_ENTRY_SIZE = 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int LEGACY_INDEX_ENTRY_SIZE = 8 + 8 + 4;
+
+    private final File dataFile;
+    private final File indexFile;
+
+    /**
+     * @param base The name of the store, its files get .data and .index
+     *            added
+     */
+    public ResultsStore( File base )
+    {
+        this.dataFile = new File( base.getPath() + ".data" );
+        this.indexFile = new File( base.getPath() + ".index" );
+    }
+
+    public boolean exists()
+    {
+        return indexFile.exists();
+    }
+
+    public synchronized void append( ResultRecord record ) throws IOException
+    {
+        upgradeIndex();
+        byte[] bytes = encode( record );
+        long offset;
+        RandomAccessFile data = new RandomAccessFile( dataFile, "rw" );
+        try
+        {
+            offset = data.length();
+            data.seek( offset );
+            data.write( bytes );
+            data.getFD().sync();
+        }
+        finally
+        {
+            data.close();
+        }
+        RandomAccessFile index = new RandomAccessFile( indexFile, "rw" );
+        try
+        {
+            if ( index.length() < INDEX_HEADER_SIZE )
+            {
+                index.setLength( 0 );
+                index.writeInt( INDEX_MAGIC );
+                index.writeInt( INDEX_FORMAT );
+            }
+            // Drop a torn entry of an earlier crash
+            long entries = index.length() - INDEX_HEADER_SIZE;
+            index.seek( INDEX_HEADER_SIZE + entries - entries % INDEX_ENTRY_SIZE );
+            writeEntry( index, new Entry( record, offset, bytes.length ) );
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    private static void writeEntry( RandomAccessFile index, Entry entry )
+            throws IOException
+    {
+        index.writeLong( entry.timestamp );
+        index.writeLong( entry.offset );
+        index.writeInt( entry.length );
+        index.writeInt( entry.versionHash );
+        index.writeInt( entry.commitHash );
+        index.writeInt( entry.hostHash );
+    }
+
+    /**
+     * @return The number of records
+     */
+    public int size() throws IOException
+    {
+        return readIndex().size();
+    }
+
+    /**
+     * @return The records of the runs started from from, inclusive, to to,
+     *         exclusive, oldest first
+     */
+    public List<ResultRecord> range( long from, long to ) throws IOException
+    {
+        List<Entry> entries = readIndex();
+        int start = firstAtOrAfter( entries, from );
+        int end = firstAtOrAfter( entries, to );
+        return read( entries.subList( start, Math.max( start, end ) ) );
+    }
+
+    /**
+     * @return The records of all trials of the last runs, oldest first
+     */
+    public List<ResultRecord> lastRuns( int runs ) throws IOException
+    {
+        return lastRuns( runs, null, null, null );
+    }
+
+    /**
+     * @param version The version the runs are of, null for any
+     * @param commit The commit the runs are of, null for any
+     * @param host The host the runs were on, null for any
+     * @return The records of all trials of the last runs that match, oldest
+     *         first
+     */
+    public List<ResultRecord> lastRuns( int runs, String version,
+            String commit, String host ) throws IOException
+    {
+        List<Entry> entries = matching( readIndex(), version, commit, host );
+        int start = entries.size();
+        int seen = 0;
+        while ( start > 0 )
+        {
+            if ( start == entries.size()
+                 || entries.get( start - 1 ).timestamp != entries.get( start ).timestamp )
+            {
+                if ( seen == runs )
+                {
+                    break;
+                }
+                seen++;
+            }
+            start--;
+        }
+        return confirmed( read( entries.subList( start, entries.size() ) ),
+                version, commit, host );
+    }
+
+    /**
+     * @param version The version of the records, null for any
+     * @param commit The commit of the records, null for any
+     * @param host The host of the records, null for any
+     * @return The records that match, oldest first
+     */
+    public List<ResultRecord> find( String version, String commit,
+            String host ) throws IOException
+    {
+        return confirmed( read( matching( readIndex(), version, commit, host ) ),
+                version, commit, host );
+    }
+
+    private static List<Entry> matching( List<Entry> entries, String version,
+            String commit, String host )
+    {
+        if ( version == null && commit == null && host == null )
+        {
+            return entries;
+        }
+        List<Entry> result = new ArrayList<Entry>();
+        for ( Entry entry : entries )
+        {
+            if ( ( version == null || entry.versionHash == version.hashCode() )
+                 && ( commit == null || entry.commitHash == commit.hashCode() )
+                 && ( host == null || entry.hostHash == host.hashCode() ) )
+            {
+                result.add( entry );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the records whose hashes matched by chance.
+     */
+    private static List<ResultRecord> confirmed( List<ResultRecord> records,
+            String version, String commit, String host )
+    {
+        if ( version == null && commit == null && host == null )
+        {
+            return records;
+        }
+        List<ResultRecord> result = new ArrayList<ResultRecord>();
+        for ( ResultRecord record : records )
+        {
+            if ( ( version == null || version.equals( record.getVersion() ) )
+                 && ( commit == null || commit.equals( record.getCommit() ) )
+                 && ( host == null || host.equals( record.getHost() ) ) )
+            {
+                result.add( record );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The stats of all trials of the last runs, ordered by when they
+     *         ran rather than by name, as names of imported runs have no year
+     */
+    public SortedSet<Stats> lastStats( int runs ) throws IOException
+    {
+        final Map<Stats, Long> timestamps = new HashMap<Stats, Long>();
+        for ( ResultRecord record : lastRuns( runs ) )
+        {
+            timestamps.put( record.getStats(), record.getTimestamp() );
+        }
+        SortedSet<Stats> result = new TreeSet<Stats>( new Comparator<Stats>()
+        {
+            @Override
+            public int compare( Stats o1, Stats o2 )
+            {
+                int result = timestamps.get( o1 ).compareTo( timestamps.get( o2 ) );
+                return result != 0 ? result : o1.compareTo( o2 );
+            }
+        } );
+        result.addAll( timestamps.keySet() );
+        return result;
+    }
+
+    /**
+     * Moves the runs of the tab separated stats file results were kept in
+     * before into this store, once, if the store does not exist yet. Their
+     * names have no year, it is taken to be the latest that puts them in
+     * the past.
+     */
+    public void importLegacy( File legacy ) throws IOException
+    {
+        if ( exists() || !legacy.isFile() )
+        {
+            return;
+        }
+        List<Stats> old = new ArrayList<Stats>();
+        BufferedReader reader = new BufferedReader( new FileReader( legacy ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                Stats stats = Stats.parse( line );
+                if ( stats != null )
+                {
+                    old.add( stats );
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        SimpleDateFormat format = new SimpleDateFormat( ResultRecord.RUN_NAME_FORMAT );
+        format.setLenient( false );
+        Calendar now = Calendar.getInstance();
+        int imported = 0;
+        for ( Stats stats : old )
+        {
+            Date date;
+            try
+            {
+                date = format.parse( now.get( Calendar.YEAR ) + "-"
+                                     + stats.getRunName() );
+            }
+            catch ( ParseException e )
+            {
+                System.out.println( "Not importing " + stats.getName()
+                                    + ", it has no date" );
+                continue;
+            }
+            Calendar when = Calendar.getInstance();
+            when.setTime( date );
+            if ( when.after( now ) )
+            {
+                when.add( Calendar.YEAR, -1 );
+            }
+            append( new ResultRecord( when.getTimeInMillis(), "", "", "", stats ) );
+            imported++;
+        }
+        System.out.println( "Imported " + imported + " runs from " + legacy );
+    }
+
+    private static int firstAtOrAfter( List<Entry> entries, long timestamp )
+    {
+        int low = 0;
+        int high = entries.size();
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            if ( entries.get( middle ).timestamp < timestamp )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Rewrites an index of the first format, entries without hashes and no
+     * header, reading the hashed fields from the records.
+     */
+    private synchronized void upgradeIndex() throws IOException
+    {
+        if ( !indexFile.exists() || indexFile.length() < 4 )
+        {
+            return;
+        }
+        RandomAccessFile index = new RandomAccessFile( indexFile, "r" );
+        List<Entry> legacy = new ArrayList<Entry>();
+        try
+        {
+            if ( index.readInt() == INDEX_MAGIC )
+            {
+                return;
+            }
+            long dataLength = dataFile.length();
+            long complete = index.length() - index.length()
+                                             % LEGACY_INDEX_ENTRY_SIZE;
+            index.seek( 0 );
+            for ( long i = 0; i < complete; i += LEGACY_INDEX_ENTRY_SIZE )
+            {
+                long timestamp = index.readLong();
+                long offset = index.readLong();
+                int length = index.readInt();
+                if ( offset + length <= dataLength )
+                {
+                    legacy.add( new Entry( timestamp, offset, length, 0, 0, 0 ) );
+                }
+            }
+        }
+        finally
+        {
+            index.close();
+        }
+        List<ResultRecord> records = read( legacy );
+        File upgraded = new File( indexFile.getPath() + ".upgrade" );
+        RandomAccessFile out = new RandomAccessFile( upgraded, "rw" );
+        try
+        {
+            out.setLength( 0 );
+            out.writeInt( INDEX_MAGIC );
+            out.writeInt( INDEX_FORMAT );
+            for ( int i = 0; i < legacy.size(); i++ )
+            {
+                writeEntry( out, new Entry( records.get( i ),
+                        legacy.get( i ).offset, legacy.get( i ).length ) );
+            }
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+        if ( !indexFile.delete() || !upgraded.renameTo( indexFile ) )
+        {
+            throw new IOException( "Could not replace " + indexFile + " by "
+                                   + upgraded );
+        }
+    }
+
+    /**
+     * @return The complete entries of the index, in timestamp order
+     */
+    private List<Entry> readIndex() throws IOException
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        upgradeIndex();
+        if ( !indexFile.exists() || indexFile.length() < INDEX_HEADER_SIZE )
+        {
+            return entries;
+        }
+        long dataLength = dataFile.length();
+        RandomAccessFile index = new RandomAccessFile( indexFile, "r" );
+        try
+        {
+            FileChannel channel = index.getChannel();
+            long size = channel.size() - INDEX_HEADER_SIZE;
+            long complete = size - size % INDEX_ENTRY_SIZE;
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, INDEX_HEADER_SIZE, complete );
+            boolean sorted = true;
+            while ( buffer.remaining() >= INDEX_ENTRY_SIZE )
+            {
+                Entry entry = new Entry( buffer.getLong(), buffer.getLong(),
+                        buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                        buffer.getInt() );
+                if ( entry.offset + entry.length > dataLength )
+                {
+                    continue;
+                }
+                if ( !entries.isEmpty()
+                     && entries.get( entries.size() - 1 ).timestamp > entry.timestamp )
+                {
+                    sorted = false;
+                }
+                entries.add( entry );
+            }
+            if ( !sorted )
+            {
+                // Imported history or a clock set back, appends are in order
+                // otherwise. The sort is stable, trials keep their order.
+                Collections.sort( entries, new Comparator<Entry>()
+                {
+                    @Override
+                    public int compare( Entry o1, Entry o2 )
+                    {
+                        return o1.timestamp < o2.timestamp ? -1
+                                : o1.timestamp == o2.timestamp ? 0 : 1;
+                    }
+                } );
+            }
+        }
+        finally
+        {
+            index.close();
+        }
+        return entries;
+    }
+
+    private List<ResultRecord> read( List<Entry> entries ) throws IOException
+    {
+        List<ResultRecord> result = new ArrayList<ResultRecord>( entries.size() );
+        if ( entries.isEmpty() )
+        {
+            return result;
+        }
+        RandomAccessFile data = new RandomAccessFile( dataFile, "r" );
+        try
+        {
+            // Read by position, as the file may well outgrow what one
+            // buffer can address
+            FileChannel channel = data.getChannel();
+            for ( Entry entry : entries )
+            {
+                ByteBuffer record = ByteBuffer.allocate( entry.length );
+                while ( record.hasRemaining() )
+                {
+                    if ( channel.read( record, entry.offset
+                                               + record.position() ) < 0 )
+                    {
+                        throw new IOException( "Record at " + entry.offset
+                                               + " cut short in " + dataFile );
+                    }
+                }
+                result.add( decode( record.array() ) );
+            }
+        }
+        finally
+        {
+            data.close();
+        }
+        return result;
+    }
+
+    static byte[] encode( ResultRecord record ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        Stats stats = record.getStats();
+        out.writeInt( FORMAT );
+        out.writeLong( record.getTimestamp() );
+        out.writeUTF( record.getVersion() );
+        out.writeUTF( record.getCommit() );
+        out.writeUTF( record.getHost() );
+        out.writeUTF( stats.getName() );
+        out.writeDouble( stats.getAvgReadsPerSec() );
+        out.writeDouble( stats.getAvgWritePerSec() );
+        out.writeDouble( stats.getPeakReadsPerSec() );
+        out.writeDouble( stats.getPeakWritesPerSec() );
+        out.writeDouble( stats.getSustainedReadsPerSec() );
+        out.writeDouble( stats.getSustainedWritesPerSec() );
+
+        List<Operation> withLatencies = new ArrayList<Operation>();
+        for ( Operation operation : Operation.values() )
+        {
+            if ( !Double.isNaN( stats.getLatency( operation,
+                    Stats.LATENCY_PERCENTILES[0] ) ) )
+            {
+                withLatencies.add( operation );
+            }
+        }
+        out.writeByte( withLatencies.size() );
+        for ( Operation operation : withLatencies )
+        {
+            out.writeByte( operation.ordinal() );
+            for ( double percentile : Stats.LATENCY_PERCENTILES )
+            {
+                out.writeDouble( stats.getLatency( operation, percentile ) );
+            }
+        }
+
+        out.writeByte( record.getHistograms().size() );
+        for ( Map.Entry<Operation, Histogram> histogram : record.getHistograms().entrySet() )
+        {
+            out.writeByte( histogram.getKey().ordinal() );
+            histogram.getValue().write( out );
+        }
+
+        long[][] timeSeries = record.getTimeSeries();
+        out.writeInt( (int) record.getIntervalMillis() );
+        out.writeInt( timeSeries.length );
+        out.writeByte( timeSeries.length == 0 ? 0 : timeSeries[0].length );
+        for ( long[] sample : timeSeries )
+        {
+            for ( long value : sample )
+            {
+                out.writeLong( value );
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    static ResultRecord decode( byte[] bytes ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream(
+                bytes ) );
+        int format = in.readInt();
+        if ( format != FORMAT && format != FORMAT_INT_SAMPLES )
+        {
+            throw new IOException( "Unknown result format " + format );
+        }
+        long timestamp = in.readLong();
+        String version = in.readUTF();
+        String commit = in.readUTF();
+        String host = in.readUTF();
+        Stats stats = new Stats( in.readUTF() );
+        stats.setAvgReadsPerSec( in.readDouble() );
+        stats.setAvgWritePerSec( in.readDouble() );
+        stats.setPeakReadsPerSec( in.readDouble() );
+        stats.setPeakWritesPerSec( in.readDouble() );
+        stats.setSustainedReadsPerSec( in.readDouble() );
+        stats.setSustainedWritesPerSec( in.readDouble() );
+        ResultRecord record = new ResultRecord( timestamp, version, commit,
+                host, stats );
+
+        // Operations are only ever appended, so ordinals stay valid
+        Operation[] operations = Operation.values();
+        int withLatencies = in.readUnsignedByte();
+        for ( int i = 0; i < withLatencies; i++ )
+        {
+            Operation operation = operations[in.readUnsignedByte()];
+            double[] values = new double[Stats.LATENCY_PERCENTILES.length];
+            for ( int j = 0; j < values.length; j++ )
+            {
+                values[j] = in.readDouble();
+            }
+            stats.setLatencies( operation, values );
+        }
+
+        int histograms = in.readUnsignedByte();
+        for ( int i = 0; i < histograms; i++ )
+        {
+            Operation operation = operations[in.readUnsignedByte()];
+            record.setHistogram( operation, Histogram.read( in ) );
+        }
+
+        int intervalMillis = in.readInt();
+        long[][] timeSeries = new long[in.readInt()][];
+        int columns = in.readUnsignedByte();
+        for ( int i = 0; i < timeSeries.length; i++ )
+        {
+            timeSeries[i] = new long[columns];
+            for ( int j = 0; j < columns; j++ )
+            {
+                timeSeries[i][j] = format == FORMAT_INT_SAMPLES ? in.readInt()
+                        : in.readLong();
+            }
+        }
+        record.setTimeSeries( intervalMillis, timeSeries );
+        return record;
+    }
+
+    private static class Entry
+    {
+        final long timestamp;
+        final long offset;
+        final int length;
+        final int versionHash;
+        final int commitHash;
+        final int hostHash;
+
+        Entry( long timestamp, long offset, int length, int versionHash,
+                int commitHash, int hostHash )
+        {
+            this.timestamp = timestamp;
+            this.offset = offset;
+            this.length = length;
+            this.versionHash = versionHash;
+            this.commitHash = commitHash;
+            this.hostHash = hostHash;
+        }
+
+        Entry( ResultRecord record, long offset, int length )
+        {
+            this( record.getTimestamp(), offset, length,
+                    record.getVersion().hashCode(),
+                    record.getCommit().hashCode(), record.getHost().hashCode() );
+        }
+    }
+}
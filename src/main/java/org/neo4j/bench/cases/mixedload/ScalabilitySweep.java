@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.bench.metrics.UniversalScalabilityLaw;
+
+/**
+ * The throughput of the mixed workload measured at a series of concurrency
+ * levels, and what the Universal Scalability Law makes of it.
+ */
+public class ScalabilitySweep
+{
+    private final List<Integer> concurrency;
+    private final List<Double> throughput;
+
+    public ScalabilitySweep()
+    {
+        concurrency = new ArrayList<Integer>();
+        throughput = new ArrayList<Double>();
+    }
+
+    /**
+     * @return 1, 2, 4, ... up to and including max
+     */
+    public static int[] levels( int max )
+    {
+        List<Integer> result = new ArrayList<Integer>();
+        for ( int level = 1; level < max; level *= 2 )
+        {
+            result.add( level );
+        }
+        result.add( max );
+        int[] levels = new int[result.size()];
+        for ( int i = 0; i < levels.length; i++ )
+        {
+            levels[i] = result.get( i );
+        }
+        return levels;
+    }
+
+    /**
+     * @param opsPerSecond Reads and writes per second of wall clock time
+     */
+    public void add( int level, double opsPerSecond )
+    {
+        concurrency.add( level );
+        throughput.add( opsPerSecond );
+    }
+
+    public int[] getConcurrency()
+    {
+        int[] result = new int[concurrency.size()];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = concurrency.get( i );
+        }
+        return result;
+    }
+
+    public double[] getThroughput()
+    {
+        double[] result = new double[throughput.size()];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = throughput.get( i );
+        }
+        return result;
+    }
+
+    public UniversalScalabilityLaw fit()
+    {
+        return UniversalScalabilityLaw.fit( getConcurrency(), getThroughput() );
+    }
+
+    public void print( PrintStream out )
+    {
+        out.println( "Concurrency\tOps/sec\tSpeedup\tEfficiency" );
+        double single = throughput.get( 0 ) / concurrency.get( 0 );
+        for ( int i = 0; i < concurrency.size(); i++ )
+        {
+            double speedup = throughput.get( i ) / single;
+            out.println( String.format( "%d\t%.2f\t%.2f\t%.2f",
+                    concurrency.get( i ), throughput.get( i ), speedup,
+                    speedup / concurrency.get( i ) ) );
+        }
+        UniversalScalabilityLaw usl = fit();
+        out.println( String.format(
+                "USL contention (sigma)=%.5f coherency (kappa)=%.6f peak concurrency=%.1f",
+                usl.getSigma(), usl.getKappa(), usl.getPeakConcurrency() ) );
+    }
+}
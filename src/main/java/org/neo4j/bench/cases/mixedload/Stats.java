@@ -20,10 +20,17 @@
 package org.neo4j.bench.cases.mixedload;
 
 import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.StringTokenizer;
 
+import org.neo4j.bench.metrics.Histogram;
+
 public class Stats implements Comparable<Stats>
 {
+    // The latency percentiles kept for every operation, in file order
+    public static final double[] LATENCY_PERCENTILES = { 50, 99, 99.9, 100 };
+
     private String name;
     private double avgReadsPerSec;
     private double avgWritePerSec;
@@ -31,10 +38,13 @@ public class Stats implements Comparable<Stats>
     private double peakWritesPerSec;
     private double sustainedReadsPerSec;
     private double sustainedWritesPerSec;
+    // Latencies in microseconds, at LATENCY_PERCENTILES
+    private final Map<Operation, double[]> latencies;
 
     public Stats( String name )
     {
         this.name = name;
+        this.latencies = new EnumMap<Operation, double[]>( Operation.class );
     }
 
     public double getAvgReadsPerSec()
@@ -97,16 +107,76 @@ public class Stats implements Comparable<Stats>
         this.sustainedWritesPerSec = sustainedWritesPerSec;
     }
 
+    /**
+     * Keeps the {@link #LATENCY_PERCENTILES} of the histogram, which holds
+     * nanoseconds, as microseconds.
+     */
+    public void setLatencies( Operation operation, Histogram histogram )
+    {
+        double[] values = new double[LATENCY_PERCENTILES.length];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values[i] = histogram.getValueAtPercentile( LATENCY_PERCENTILES[i] ) / 1000.0;
+        }
+        latencies.put( operation, values );
+    }
+
+    /**
+     * @param values Microseconds at {@link #LATENCY_PERCENTILES}, as read back
+     */
+    void setLatencies( Operation operation, double[] values )
+    {
+        latencies.put( operation, values );
+    }
+
+    /**
+     * @param percentile One of {@link #LATENCY_PERCENTILES}
+     * @return The latency in microseconds or NaN if it was not recorded
+     */
+    public double getLatency( Operation operation, double percentile )
+    {
+        double[] values = latencies.get( operation );
+        if ( values != null )
+        {
+            for ( int i = 0; i < LATENCY_PERCENTILES.length; i++ )
+            {
+                if ( LATENCY_PERCENTILES[i] == percentile )
+                {
+                    return values[i];
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
     public String getName()
     {
         return name;
     }
 
+    /**
+     * @return The name of the run this is a trial of, the name up to a '#'
+     */
+    public String getRunName()
+    {
+        int hash = name.indexOf( '#' );
+        return hash == -1 ? name : name.substring( 0, hash );
+    }
+
     public void write( PrintStream out, boolean newLine )
     {
         out.print( String.format( "%s\t%.2f\t%.2f\t%.2f\t%.2f\t%.2f\t%.2f",
                 name, avgReadsPerSec, avgWritePerSec, peakReadsPerSec,
                 peakWritesPerSec, sustainedReadsPerSec, sustainedWritesPerSec ) );
+        // Latencies follow, all operations in order, NaN for the missing ones
+        for ( Operation operation : Operation.values() )
+        {
+            for ( double percentile : LATENCY_PERCENTILES )
+            {
+                out.print( String.format( "\t%.2f",
+                        getLatency( operation, percentile ) ) );
+            }
+        }
         if ( newLine )
         {
             out.println();
@@ -168,6 +238,30 @@ public class Stats implements Comparable<Stats>
         result.peakWritesPerSec = peakWrites;
         result.sustainedReadsPerSec = sustainedReads;
         result.sustainedWritesPerSec = sustainedWrites;
+        // Older lines have no latencies, newer ones may have more operations
+        for ( Operation operation : Operation.values() )
+        {
+            if ( tokenizer.countTokens() < LATENCY_PERCENTILES.length )
+            {
+                break;
+            }
+            double[] values = new double[LATENCY_PERCENTILES.length];
+            try
+            {
+                for ( int i = 0; i < values.length; i++ )
+                {
+                    values[i] = Double.valueOf( tokenizer.nextToken() );
+                }
+            }
+            catch ( NumberFormatException e )
+            {
+                return null;
+            }
+            if ( !Double.isNaN( values[0] ) )
+            {
+                result.latencies.put( operation, values );
+            }
+        }
         return result;
     }
 }
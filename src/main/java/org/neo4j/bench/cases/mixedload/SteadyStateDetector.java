@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+/**
+ * Tells when throughput has stabilized: the coefficient of variation
+ * (standard deviation over mean) of the last few throughput samples has to
+ * fall within a limit.
+ */
+public class SteadyStateDetector
+{
+    private final double[] window;
+    private final double maxCoefficientOfVariation;
+    private int samples;
+    private double coefficientOfVariation = Double.NaN;
+
+    /**
+     * @param windowSize The number of consecutive samples looked at
+     * @param maxCoefficientOfVariation The highest variation still considered
+     *            steady, e.g. 0.05 for 5%
+     */
+    public SteadyStateDetector( int windowSize, double maxCoefficientOfVariation )
+    {
+        this.window = new double[windowSize];
+        this.maxCoefficientOfVariation = maxCoefficientOfVariation;
+    }
+
+    /**
+     * @param throughput The throughput of the latest sample interval
+     * @return True if the window is full and steady
+     */
+    public boolean addSample( double throughput )
+    {
+        window[samples++ % window.length] = throughput;
+        if ( samples < window.length )
+        {
+            return false;
+        }
+        double mean = getMean();
+        double squares = 0;
+        for ( double sample : window )
+        {
+            squares += ( sample - mean ) * ( sample - mean );
+        }
+        double deviation = Math.sqrt( squares / window.length );
+        coefficientOfVariation = mean > 0 ? deviation / mean
+                : Double.POSITIVE_INFINITY;
+        return coefficientOfVariation <= maxCoefficientOfVariation;
+    }
+
+    /**
+     * @return The mean throughput over the window
+     */
+    public double getMean()
+    {
+        int count = Math.min( samples, window.length );
+        double sum = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            sum += window[i];
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @return The variation over the last full window, NaN before it filled
+     */
+    public double getCoefficientOfVariation()
+    {
+        return coefficientOfVariation;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes the sizes of the store files at a fixed interval from a background
+ * thread, one tab separated line per sample, so that the growth of the
+ * stores under churn can be followed next to the throughput time series.
+ */
+public class StoreSizeLog
+{
+    // The store files followed, in column order
+    static final String[] FILES = { "neostore.nodestore.db",
+            "neostore.relationshipstore.db", "neostore.propertystore.db",
+            "neostore.propertystore.db.strings",
+            "neostore.propertystore.db.arrays" };
+
+    private final File storeDir;
+    private final long intervalMillis;
+    private final File file;
+    private volatile boolean running;
+    private Thread thread;
+    private long[] first;
+    private long[] last;
+
+    /**
+     * @param file Where the sizes are written, null to only compare them
+     *            from start to stop
+     */
+    public StoreSizeLog( File storeDir, long intervalMillis, File file )
+    {
+        this.storeDir = storeDir;
+        this.intervalMillis = intervalMillis;
+        this.file = file;
+    }
+
+    public void start()
+    {
+        running = true;
+        first = sizes();
+        if ( file == null )
+        {
+            return;
+        }
+        thread = new Thread( "store-size-log" )
+        {
+            @Override
+            public void run()
+            {
+                log();
+            }
+        };
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException
+    {
+        running = false;
+        if ( thread != null )
+        {
+            thread.interrupt();
+            thread.join();
+        }
+        last = sizes();
+    }
+
+    /**
+     * @return The growth of every store file from start to stop, in
+     *         {@link #FILES} order
+     */
+    public long[] getGrowth()
+    {
+        long[] result = new long[FILES.length];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = last[i] - first[i];
+        }
+        return result;
+    }
+
+    private long[] sizes()
+    {
+        long[] result = new long[FILES.length];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = new File( storeDir, FILES[i] ).length();
+        }
+        return result;
+    }
+
+    private void log()
+    {
+        PrintWriter out = null;
+        try
+        {
+            out = new PrintWriter( new FileWriter( file ) );
+            out.print( "seconds" );
+            for ( String name : FILES )
+            {
+                out.print( "\t" + name );
+            }
+            out.println();
+            long start = System.currentTimeMillis();
+            while ( running )
+            {
+                out.print( ( System.currentTimeMillis() - start ) / 1000 );
+                for ( long size : sizes() )
+                {
+                    out.print( "\t" + size );
+                }
+                out.println();
+                out.flush();
+                Thread.sleep( intervalMillis );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            // Stopped
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if ( out != null )
+            {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.neo4j.bench.cases.mixedload.LiveCounters.Counter;
+import org.neo4j.bench.metrics.TimeSeriesFile;
+
+/**
+ * Samples the live counters of the workers at a fixed interval from a
+ * background thread. Every sample is the increase of each counter over its
+ * interval, kept in memory for the peak and sustained rates and written to
+ * a time series file, if one is given, so that stalls and throughput cliffs
+ * over a long run can be looked at afterwards.
+ */
+public class ThroughputSampler
+{
+    private final LiveCounters counters;
+    private final long intervalMillis;
+    private final File file;
+    private final List<long[]> samples;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param file Where the samples are written, null for none
+     */
+    public ThroughputSampler( LiveCounters counters, long intervalMillis,
+            File file )
+    {
+        this.counters = counters;
+        this.intervalMillis = intervalMillis;
+        this.file = file;
+        this.samples = new ArrayList<long[]>();
+    }
+
+    public void start()
+    {
+        running = true;
+        thread = new Thread( "throughput-sampler" )
+        {
+            @Override
+            public void run()
+            {
+                sample();
+            }
+        };
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Stops sampling, the last partial interval is not kept.
+     */
+    public void stop() throws InterruptedException
+    {
+        running = false;
+        thread.interrupt();
+        thread.join();
+    }
+
+    public synchronized int getSampleCount()
+    {
+        return samples.size();
+    }
+
+    /**
+     * @return The increase of every counter over every interval so far, by
+     *         counter ordinal
+     */
+    public synchronized long[][] getSamples()
+    {
+        return samples.toArray( new long[samples.size()][] );
+    }
+
+    public long getIntervalMillis()
+    {
+        return intervalMillis;
+    }
+
+    /**
+     * @return The highest per second rate of any interval, 0 without samples
+     */
+    public double getPeakPerSecond( Counter counter )
+    {
+        return getPercentilePerSecond( counter, 100 );
+    }
+
+    /**
+     * @param percentile Between 0 and 100; low ones, like 10, give the rate
+     *            that was sustained for nearly all the run
+     * @return The per second rate at the given percentile of the intervals
+     */
+    public synchronized double getPercentilePerSecond( Counter counter,
+            double percentile )
+    {
+        if ( samples.isEmpty() )
+        {
+            return 0;
+        }
+        long[] values = new long[samples.size()];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values[i] = samples.get( i )[counter.ordinal()];
+        }
+        Arrays.sort( values );
+        int index = (int) Math.ceil( percentile / 100.0 * values.length ) - 1;
+        index = Math.max( 0, Math.min( values.length - 1, index ) );
+        return values[index] * 1000.0 / intervalMillis;
+    }
+
+    /**
+     * How much the rate fell over the run, from its first quarter of
+     * intervals to its last, so that slow decay from fragmentation shows
+     * apart from the noise of single intervals.
+     *
+     * @return The relative change, negative for a decline, 0 with fewer
+     *         than four samples
+     */
+    public synchronized double getDecay( Counter counter )
+    {
+        int quarter = samples.size() / 4;
+        if ( quarter == 0 )
+        {
+            return 0;
+        }
+        long first = 0;
+        long last = 0;
+        for ( int i = 0; i < quarter; i++ )
+        {
+            first += samples.get( i )[counter.ordinal()];
+            last += samples.get( samples.size() - 1 - i )[counter.ordinal()];
+        }
+        return first == 0 ? 0 : ( last - first ) / (double) first;
+    }
+
+    private void sample()
+    {
+        TimeSeriesFile out = null;
+        try
+        {
+            if ( file != null )
+            {
+                out = new TimeSeriesFile( file, System.currentTimeMillis(),
+                        (int) intervalMillis, Counter.values().length );
+            }
+            long[] last = counters.snapshot();
+            long next = System.currentTimeMillis() + intervalMillis;
+            while ( running )
+            {
+                long wait = next - System.currentTimeMillis();
+                if ( wait > 0 )
+                {
+                    Thread.sleep( wait );
+                }
+                next += intervalMillis;
+                long[] current = counters.snapshot();
+                long[] delta = new long[current.length];
+                for ( int i = 0; i < current.length; i++ )
+                {
+                    delta[i] = current[i] - last[i];
+                }
+                last = current;
+                synchronized ( this )
+                {
+                    samples.add( delta );
+                }
+                if ( out != null )
+                {
+                    out.append( delta );
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            // Stopped
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if ( out != null )
+            {
+                try
+                {
+                    out.close();
+                }
+                catch ( IOException e )
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
+import org.neo4j.bench.cases.mixedload.trace.TraceWriter;
+import org.neo4j.bench.cases.topology.Topology;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * What all workers of a run share: the database, the pool of nodes they
+ * work on, the counters they publish their progress to, the topology
+ * they shape the graph with, how far traversals go, which nodes point
+ * lookups go to and what properties are written. With a seed, every
+ * worker gets a random stream of its own, the same for the n-th worker of
+ * every run with that seed.
+ */
+public class WorkerContext
+{
+    // What the create workers name their types without a topology
+    private static final RelationshipType[] DEFAULT_TYPES = {
+            DynamicRelationshipType.withName( "TYPE_GENERIC" ),
+            DynamicRelationshipType.withName( "TYPE_BULK" ) };
+
+    private final GraphDatabaseService graphDb;
+    private final NodePool nodes;
+    private final LiveCounters counters;
+    private final Topology topology;
+    private IdReuseTracker idReuse = IdReuseTracker.DISABLED;
+    private int traversalDepth = 3;
+    private Direction traversalDirection = Direction.OUTGOING;
+    private KeyDistribution keyDistribution = KeyDistribution.parse( "uniform" );
+    private PropertyShape propertyShape = PropertyShape.defaultShape();
+    private double relationshipDeleteShare;
+    private boolean seeded;
+    private long seed;
+    private final AtomicLong randoms = new AtomicLong();
+    private TraceWriter trace;
+
+    public WorkerContext( GraphDatabaseService graphDb, NodePool nodes,
+            LiveCounters counters )
+    {
+        this( graphDb, nodes, counters, null );
+    }
+
+    /**
+     * @param topology The shape of the graph, null to connect uniformly
+     *            random nodes from the pool
+     */
+    public WorkerContext( GraphDatabaseService graphDb, NodePool nodes,
+            LiveCounters counters, Topology topology )
+    {
+        this.graphDb = graphDb;
+        this.nodes = nodes;
+        this.counters = counters;
+        this.topology = topology;
+    }
+
+    public GraphDatabaseService getGraphDb()
+    {
+        return graphDb;
+    }
+
+    public NodePool getNodes()
+    {
+        return nodes;
+    }
+
+    public LiveCounters getCounters()
+    {
+        return counters;
+    }
+
+    /**
+     * @return The shape of the graph, null for uniformly random
+     */
+    public Topology getTopology()
+    {
+        return topology;
+    }
+
+    /**
+     * @return The types relationships are created with
+     */
+    public RelationshipType[] getRelationshipTypes()
+    {
+        return topology == null ? DEFAULT_TYPES.clone() : topology.getTypes();
+    }
+
+    /**
+     * @param idReuse Where the workers note deleted ids and check created
+     *            ones, {@link IdReuseTracker#DISABLED} by default
+     */
+    public void setIdReuse( IdReuseTracker idReuse )
+    {
+        this.idReuse = idReuse;
+    }
+
+    /**
+     * @return Where the workers note deleted ids and check created ones
+     */
+    public IdReuseTracker getIdReuse()
+    {
+        return idReuse;
+    }
+
+    /**
+     * @param depth How many hops traversals go
+     * @param direction The direction filtered traversals follow
+     */
+    public void setTraversal( int depth, Direction direction )
+    {
+        this.traversalDepth = depth;
+        this.traversalDirection = direction;
+    }
+
+    public int getTraversalDepth()
+    {
+        return traversalDepth;
+    }
+
+    public Direction getTraversalDirection()
+    {
+        return traversalDirection;
+    }
+
+    /**
+     * @param keyDistribution Which nodes point lookups go to
+     */
+    public void setKeyDistribution( KeyDistribution keyDistribution )
+    {
+        this.keyDistribution = keyDistribution;
+    }
+
+    public KeyDistribution getKeyDistribution()
+    {
+        return keyDistribution;
+    }
+
+    /**
+     * @param propertyShape What the property workers write
+     */
+    public void setPropertyShape( PropertyShape propertyShape )
+    {
+        this.propertyShape = propertyShape;
+    }
+
+    public PropertyShape getPropertyShape()
+    {
+        return propertyShape;
+    }
+
+    /**
+     * @param share The share of the deletes that take a relationship instead
+     *            of a node, 0 for nodes only
+     */
+    public void setRelationshipDeleteShare( double share )
+    {
+        this.relationshipDeleteShare = share;
+    }
+
+    public double getRelationshipDeleteShare()
+    {
+        return relationshipDeleteShare;
+    }
+
+    public void setSeed( long seed )
+    {
+        this.seed = seed;
+        this.seeded = true;
+    }
+
+    /**
+     * @return The next of the seeded streams, or an unseeded one without a
+     *         seed
+     */
+    public Random newRandom()
+    {
+        if ( !seeded )
+        {
+            return new Random();
+        }
+        // Mixed, so that the streams of consecutive workers are unrelated
+        long z = seed + randoms.incrementAndGet() * 0x9E3779B97F4A7C15L;
+        z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+        return new Random( z ^ ( z >>> 31 ) );
+    }
+
+    /**
+     * @param trace Where the workers record what they do, null for nowhere
+     */
+    public void setTrace( TraceWriter trace )
+    {
+        this.trace = trace;
+    }
+
+    /**
+     * @return A stream for a new worker to record its operations into
+     */
+    public TraceStream newTrace()
+    {
+        return trace == null ? TraceStream.DISABLED : trace.newStream();
+    }
+
+    /**
+     * @return An empty result for a new worker, publishing to the counters
+     */
+    public WorkerResult newResult()
+    {
+        return new WorkerResult( counters );
+    }
+}
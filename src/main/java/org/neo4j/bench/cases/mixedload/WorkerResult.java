@@ -0,0 +1,442 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.util.Arrays;
+
+import org.neo4j.bench.cases.mixedload.LiveCounters.Counter;
+import org.neo4j.bench.metrics.ConcurrentHistogram;
+import org.neo4j.bench.metrics.Histogram;
+
+/**
+ * What a worker did during its run. Workers fill it in as they go, without
+ * any synchronization, and return it from their call() when done. Counts are
+ * also published to the live counters of the run, if there are any, and
+ * latencies about once a second and when the worker is done.
+ *
+ * The first latencies are kept as plain values, so that the many workers of
+ * a handful of operations, like those of an open loop, neither allocate nor
+ * merge whole histograms. Past a few dozen of them they move to
+ * histograms by operation.
+ *
+ * Between {@link #beginBatch()} and the end of the batch, operations are
+ * held back: they count as done only if the batch commits, and as rolled
+ * back otherwise.
+ */
+public class WorkerResult
+{
+    private static final long PUBLISH_INTERVAL_NANOS = 1000000000L;
+
+    private static final int SPARSE_LIMIT = 64;
+
+    private final LiveCounters live;
+    private final long[] operationCounts;
+    // Null until the sparse latencies outgrow their limit
+    private Histogram[] latencies;
+    private int[] sparseOperations;
+    private long[] sparseNanos;
+    private int sparseSize;
+    // The sparse latencies up to here were published to the live counters
+    private int sparsePublished;
+    // Recorded since they were last published, borrowed from the live
+    // counters on the first record and returned when the worker is done
+    private Histogram[] unpublished;
+    private long lastPublished;
+    private long reads;
+    private long writes;
+    private long commits;
+    private long rollbacks;
+    private long failures;
+    private long visited;
+    private long bytesWritten;
+    private long elapsedNanos;
+    private long rolledBackOperations;
+    private boolean aborted;
+
+    // The batch in progress, if any, held back until it ends
+    private boolean inBatch;
+    private long batchReads;
+    private long batchWrites;
+    private long batchBytesWritten;
+    private int[] batchOperations = new int[16];
+    private long[] batchNanos = new long[16];
+    private int batchSize;
+
+    public WorkerResult()
+    {
+        this( null );
+    }
+
+    /**
+     * @param live Where counts are published as they happen, may be null
+     */
+    public WorkerResult( LiveCounters live )
+    {
+        this.live = live;
+        operationCounts = new long[Operation.values().length];
+        lastPublished = System.nanoTime();
+    }
+
+    public void addReads( long count )
+    {
+        if ( inBatch )
+        {
+            batchReads += count;
+            return;
+        }
+        reads += count;
+        publish( Counter.READS, count );
+    }
+
+    public void addWrites( long count )
+    {
+        if ( inBatch )
+        {
+            batchWrites += count;
+            return;
+        }
+        writes += count;
+        publish( Counter.WRITES, count );
+    }
+
+    public void committed()
+    {
+        commits++;
+        publish( Counter.COMMITS, 1 );
+    }
+
+    public void rolledBack()
+    {
+        rollbacks++;
+        publish( Counter.ROLLBACKS, 1 );
+    }
+
+    /**
+     * An operation that could not be performed but did not end the worker,
+     * e.g. because its node was deleted by another worker.
+     */
+    public void failed()
+    {
+        failures++;
+        publish( Counter.FAILURES, 1 );
+    }
+
+    /**
+     * Nodes reached by a traversal, counted apart from the reads to get the
+     * speed of traversals alone.
+     */
+    public void addVisited( long count )
+    {
+        visited += count;
+    }
+
+    public void addBytesWritten( long count )
+    {
+        if ( inBatch )
+        {
+            batchBytesWritten += count;
+            return;
+        }
+        bytesWritten += count;
+        publish( Counter.BYTES_WRITTEN, count );
+    }
+
+    /**
+     * A node was created with the id of a deleted one. Id reuse is only
+     * published to the live counters, to be followed over time.
+     */
+    public void nodeIdReused()
+    {
+        publish( Counter.NODE_IDS_REUSED, 1 );
+    }
+
+    public void relationshipIdReused()
+    {
+        publish( Counter.RELATIONSHIP_IDS_REUSED, 1 );
+    }
+
+    /**
+     * Counts one more operation of the given type that took the given time.
+     */
+    public void record( Operation operation, long nanos )
+    {
+        if ( inBatch )
+        {
+            if ( batchSize == batchNanos.length )
+            {
+                batchOperations = Arrays.copyOf( batchOperations, batchSize * 2 );
+                batchNanos = Arrays.copyOf( batchNanos, batchSize * 2 );
+            }
+            batchOperations[batchSize] = operation.ordinal();
+            batchNanos[batchSize++] = nanos;
+            return;
+        }
+        int index = operation.ordinal();
+        operationCounts[index]++;
+        if ( latencies == null && sparseSize < SPARSE_LIMIT )
+        {
+            if ( sparseNanos == null )
+            {
+                sparseOperations = new int[SPARSE_LIMIT];
+                sparseNanos = new long[SPARSE_LIMIT];
+            }
+            sparseOperations[sparseSize] = index;
+            sparseNanos[sparseSize++] = nanos;
+        }
+        else
+        {
+            if ( latencies == null )
+            {
+                spill();
+            }
+            recordInto( latencies, index, nanos );
+            if ( live != null )
+            {
+                if ( unpublished == null )
+                {
+                    unpublished = live.borrowBuffer();
+                }
+                recordInto( unpublished, index, nanos );
+            }
+        }
+        if ( live != null
+             && System.nanoTime() - lastPublished >= PUBLISH_INTERVAL_NANOS )
+        {
+            publishLatencies();
+        }
+    }
+
+    /**
+     * Moves the sparse latencies to histograms, publishing those not
+     * published yet as they are.
+     */
+    private void spill()
+    {
+        publishSparse();
+        latencies = new Histogram[Operation.values().length];
+        for ( int i = 0; i < sparseSize; i++ )
+        {
+            recordInto( latencies, sparseOperations[i], sparseNanos[i] );
+        }
+        sparseSize = 0;
+        sparsePublished = 0;
+        sparseOperations = null;
+        sparseNanos = null;
+    }
+
+    private static void recordInto( Histogram[] histograms, int index,
+            long nanos )
+    {
+        if ( histograms[index] == null )
+        {
+            histograms[index] = new Histogram();
+        }
+        histograms[index].record( nanos );
+    }
+
+    /**
+     * Holds back the operations from now on until the batch ends with
+     * {@link #commitBatch()} or {@link #rollBackBatch()}.
+     */
+    public void beginBatch()
+    {
+        inBatch = true;
+        batchReads = 0;
+        batchWrites = 0;
+        batchBytesWritten = 0;
+        batchSize = 0;
+    }
+
+    /**
+     * Counts the operations of the batch as done, and a commit.
+     */
+    public void commitBatch()
+    {
+        inBatch = false;
+        addReads( batchReads );
+        addWrites( batchWrites );
+        addBytesWritten( batchBytesWritten );
+        Operation[] operations = Operation.values();
+        for ( int i = 0; i < batchSize; i++ )
+        {
+            record( operations[batchOperations[i]], batchNanos[i] );
+        }
+        committed();
+    }
+
+    /**
+     * Counts the operations of the batch as rolled back, and a rollback.
+     */
+    public void rollBackBatch()
+    {
+        inBatch = false;
+        rolledBackOperations += batchSize;
+        rolledBack();
+    }
+
+    /**
+     * The worker gave up on an error other than a conflict with the other
+     * workers, what it did up to then still counts.
+     */
+    public void aborted()
+    {
+        aborted = true;
+    }
+
+    /**
+     * Also publishes what latencies are left, the worker is done.
+     */
+    public void setElapsedNanos( long elapsedNanos )
+    {
+        this.elapsedNanos = elapsedNanos;
+        if ( live != null )
+        {
+            publishLatencies();
+        }
+        if ( unpublished != null )
+        {
+            live.returnBuffer( unpublished );
+            unpublished = null;
+        }
+    }
+
+    private void publishLatencies()
+    {
+        publishSparse();
+        if ( unpublished != null )
+        {
+            for ( Operation operation : Operation.values() )
+            {
+                Histogram histogram = unpublished[operation.ordinal()];
+                if ( histogram != null && histogram.getTotalCount() > 0 )
+                {
+                    live.addLatencies( operation, histogram );
+                    histogram.reset();
+                }
+            }
+        }
+        lastPublished = System.nanoTime();
+    }
+
+    private void publishSparse()
+    {
+        if ( live == null )
+        {
+            return;
+        }
+        Operation[] operations = Operation.values();
+        for ( ; sparsePublished < sparseSize; sparsePublished++ )
+        {
+            live.recordLatency( operations[sparseOperations[sparsePublished]],
+                    sparseNanos[sparsePublished] );
+        }
+    }
+
+    public long getReads()
+    {
+        return reads;
+    }
+
+    public long getWrites()
+    {
+        return writes;
+    }
+
+    public long getCommits()
+    {
+        return commits;
+    }
+
+    public long getRollbacks()
+    {
+        return rollbacks;
+    }
+
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    public long getVisited()
+    {
+        return visited;
+    }
+
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The operations of batches that were rolled back, not counted
+     *         anywhere else
+     */
+    public long getRolledBackOperations()
+    {
+        return rolledBackOperations;
+    }
+
+    public boolean isAborted()
+    {
+        return aborted;
+    }
+
+    public long getOperationCount( Operation operation )
+    {
+        return operationCounts[operation.ordinal()];
+    }
+
+    /**
+     * Adds the latencies of the operation, in nanoseconds, to the given
+     * ones: value by value while they are few, whole histograms after.
+     */
+    public void addLatenciesTo( Operation operation, ConcurrentHistogram into )
+    {
+        int index = operation.ordinal();
+        if ( latencies != null )
+        {
+            if ( latencies[index] != null )
+            {
+                into.add( latencies[index] );
+            }
+            return;
+        }
+        for ( int i = 0; i < sparseSize; i++ )
+        {
+            if ( sparseOperations[i] == index )
+            {
+                into.record( sparseNanos[i] );
+            }
+        }
+    }
+
+    private void publish( Counter counter, long count )
+    {
+        if ( live != null )
+        {
+            live.add( counter, count );
+        }
+    }
+}
@@ -0,0 +1,409 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.neo4j.bench.cases.mixedload.workers.WorkerKind;
+
+/**
+ * A named mix of workers: how often each kind is started relative to the
+ * others, how many operations each performs and, for open loop runs, the
+ * rate each kind arrives at. Profiles are read from a properties file like
+ *
+ * <pre>
+ * profiles=read-heavy,write-heavy
+ * read-heavy.populate=100000
+ * read-heavy.BULK_READ.weight=95
+ * read-heavy.CREATE.weight=5
+ * read-heavy.CREATE.ops=0-999
+ * read-heavy.CREATE.tx-size=10
+ * read-heavy.CREATE.rate=100
+ * read-heavy.property-relationship-share=0.5
+ * read-heavy.relationship-delete-share=0.4
+ * </pre>
+ *
+ * where ops is a fixed count or an inclusive range picked from uniformly,
+ * tx-size is the operations per transaction, 0 for all of them in one, and
+ * kinds without a weight are not started at all. The share of property
+ * operations on relationships overrides the one of the property shape, the
+ * share of deletes that take a relationship instead of a node is 0 unless
+ * set.
+ */
+public class WorkloadProfile
+{
+    public static final String DEFAULT_NAME = "default";
+
+    // Writers that delete what the others work on
+    private static final Set<WorkerKind> DELETERS = EnumSet.of(
+            WorkerKind.DELETE, WorkerKind.CHURN );
+
+    private final String name;
+    private final Map<WorkerKind, Double> weights;
+    // Inclusive min and max operations per worker
+    private final Map<WorkerKind, int[]> ops;
+    private final Map<WorkerKind, Double> rates;
+    private final Map<WorkerKind, Integer> txSizes;
+    private int populate;
+    // Null for the share of the property shape
+    private Double propertyRelationshipShare;
+    private double relationshipDeleteShare;
+
+    public WorkloadProfile( String name )
+    {
+        this.name = name;
+        this.weights = new EnumMap<WorkerKind, Double>( WorkerKind.class );
+        this.ops = new EnumMap<WorkerKind, int[]>( WorkerKind.class );
+        this.rates = new EnumMap<WorkerKind, Double>( WorkerKind.class );
+        this.txSizes = new EnumMap<WorkerKind, Integer>( WorkerKind.class );
+        this.populate = 100000;
+    }
+
+    /**
+     * @return A copy of this profile with every writer committing every
+     *         txSize operations, performing at least that many. Deleters
+     *         keep committing every operation, or their conflicts with the
+     *         other writers would roll back ever larger batches and swamp
+     *         the cost of committing that is measured.
+     */
+    public WorkloadProfile withTxSize( int txSize )
+    {
+        WorkloadProfile result = new WorkloadProfile( name );
+        result.weights.putAll( weights );
+        result.rates.putAll( rates );
+        result.txSizes.putAll( txSizes );
+        result.populate = populate;
+        result.propertyRelationshipShare = propertyRelationshipShare;
+        result.relationshipDeleteShare = relationshipDeleteShare;
+        for ( Map.Entry<WorkerKind, int[]> range : ops.entrySet() )
+        {
+            WorkerKind kind = range.getKey();
+            if ( !kind.isWriter() )
+            {
+                result.ops.put( kind, range.getValue() );
+                continue;
+            }
+            if ( DELETERS.contains( kind ) )
+            {
+                result.ops.put( kind, range.getValue() );
+                result.txSizes.put( kind, 1 );
+                continue;
+            }
+            result.ops.put( kind, new int[] {
+                    Math.max( range.getValue()[0], txSize ),
+                    Math.max( range.getValue()[1], txSize ) } );
+            result.txSizes.put( kind, txSize );
+        }
+        return result;
+    }
+
+    /**
+     * The mix the benchmark always ran: create, delete and property workers
+     * of up to a thousand operations, frequent bulk creates and a rare full
+     * scan.
+     */
+    public static WorkloadProfile defaultProfile()
+    {
+        WorkloadProfile result = new WorkloadProfile( DEFAULT_NAME );
+        result.setWorker( WorkerKind.CREATE, 5, 0, 999 );
+        result.setWorker( WorkerKind.DELETE, 4, 0, 999 );
+        result.setWorker( WorkerKind.BULK_CREATE, 7, 2000, 2000 );
+        result.setWorker( WorkerKind.BULK_READ, 1, 1, 1 );
+        result.setWorker( WorkerKind.PROPERTY_ADD, 5, 200, 200 );
+        return result;
+    }
+
+    /**
+     * @param names Comma separated names of the profiles to load, empty or
+     *            null for all profiles in the file
+     * @return The profiles, in the order asked for
+     */
+    public static List<WorkloadProfile> load( File file, String names )
+            throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            properties.load( in );
+        }
+        finally
+        {
+            in.close();
+        }
+        if ( names == null || names.trim().length() == 0 )
+        {
+            names = properties.getProperty( "profiles", "" );
+        }
+        List<WorkloadProfile> result = new ArrayList<WorkloadProfile>();
+        for ( String name : names.split( "," ) )
+        {
+            if ( name.trim().length() > 0 )
+            {
+                result.add( parse( name.trim(), properties ) );
+            }
+        }
+        if ( result.isEmpty() )
+        {
+            throw new IllegalArgumentException( "No profiles in " + file );
+        }
+        return result;
+    }
+
+    private static WorkloadProfile parse( String name, Properties properties )
+    {
+        WorkloadProfile result = new WorkloadProfile( name );
+        String populate = properties.getProperty( name + ".populate" );
+        if ( populate != null )
+        {
+            result.setPopulate( Integer.parseInt( populate.trim() ) );
+        }
+        String share = properties.getProperty( name
+                                               + ".property-relationship-share" );
+        if ( share != null )
+        {
+            result.setPropertyRelationshipShare( Double.parseDouble( share.trim() ) );
+        }
+        share = properties.getProperty( name + ".relationship-delete-share" );
+        if ( share != null )
+        {
+            result.setRelationshipDeleteShare( Double.parseDouble( share.trim() ) );
+        }
+        for ( WorkerKind kind : WorkerKind.values() )
+        {
+            String prefix = name + "." + kind.name() + ".";
+            String weight = properties.getProperty( prefix + "weight" );
+            if ( weight != null )
+            {
+                String[] range = properties.getProperty( prefix + "ops", "1" ).trim().split( "-" );
+                int min = Integer.parseInt( range[0].trim() );
+                int max = range.length > 1 ? Integer.parseInt( range[1].trim() )
+                        : min;
+                result.setWorker( kind, Double.parseDouble( weight.trim() ),
+                        min, max );
+            }
+            String txSize = properties.getProperty( prefix + "tx-size" );
+            if ( txSize != null )
+            {
+                result.setTxSize( kind, Integer.parseInt( txSize.trim() ) );
+            }
+            String rate = properties.getProperty( prefix + "rate" );
+            if ( rate != null )
+            {
+                result.setRate( kind, Double.parseDouble( rate.trim() ) );
+            }
+        }
+        if ( result.getTotalWeight() <= 0 )
+        {
+            throw new IllegalArgumentException( "Profile " + name
+                                                + " has no worker with a weight" );
+        }
+        return result;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @param weight How often the kind is started, relative to the others
+     * @param minOps The least operations a worker of this kind performs
+     * @param maxOps The most operations a worker of this kind performs
+     */
+    public void setWorker( WorkerKind kind, double weight, int minOps,
+            int maxOps )
+    {
+        if ( minOps < 0 || maxOps < minOps )
+        {
+            throw new IllegalArgumentException( "Bad operation range "
+                                                + minOps + "-" + maxOps
+                                                + " for " + kind );
+        }
+        weights.put( kind, weight );
+        ops.put( kind, new int[] { minOps, maxOps } );
+    }
+
+    /**
+     * @return True if workers of the kind are started at all
+     */
+    public boolean hasWorker( WorkerKind kind )
+    {
+        Double weight = weights.get( kind );
+        return weight != null && weight > 0;
+    }
+
+    /**
+     * @param txSize The operations per transaction, 0 for all in one
+     */
+    public void setTxSize( WorkerKind kind, int txSize )
+    {
+        txSizes.put( kind, txSize );
+    }
+
+    /**
+     * @return The operations per transaction of the kind, 0 for all in one;
+     *         bulk creates are all in one and the rest one each by default
+     */
+    public int txSize( WorkerKind kind )
+    {
+        Integer txSize = txSizes.get( kind );
+        if ( txSize == null )
+        {
+            return kind == WorkerKind.BULK_CREATE ? 0 : 1;
+        }
+        return txSize;
+    }
+
+    /**
+     * @param ratePerSecond The open loop arrival rate of the kind
+     */
+    public void setRate( WorkerKind kind, double ratePerSecond )
+    {
+        rates.put( kind, ratePerSecond );
+    }
+
+    /**
+     * @return The open loop arrival rates, empty if the profile sets none
+     */
+    public Map<WorkerKind, Double> getRates()
+    {
+        return new EnumMap<WorkerKind, Double>( rates );
+    }
+
+    /**
+     * @return The number of nodes created before measuring
+     */
+    public int getPopulate()
+    {
+        return populate;
+    }
+
+    public void setPopulate( int populate )
+    {
+        this.populate = populate;
+    }
+
+    /**
+     * @return The share of the property operations on relationships, null
+     *         to leave it to the property shape
+     */
+    public Double getPropertyRelationshipShare()
+    {
+        return propertyRelationshipShare;
+    }
+
+    public void setPropertyRelationshipShare( double share )
+    {
+        this.propertyRelationshipShare = share;
+    }
+
+    /**
+     * @return The share of the deletes that take a relationship, leaving
+     *         its nodes
+     */
+    public double getRelationshipDeleteShare()
+    {
+        return relationshipDeleteShare;
+    }
+
+    public void setRelationshipDeleteShare( double share )
+    {
+        this.relationshipDeleteShare = share;
+    }
+
+    /**
+     * @return A kind of worker picked at random, as likely as its weight
+     */
+    public WorkerKind pick( Random r )
+    {
+        double dice = r.nextDouble() * getTotalWeight();
+        WorkerKind last = null;
+        for ( Map.Entry<WorkerKind, Double> weight : weights.entrySet() )
+        {
+            if ( weight.getValue() <= 0 )
+            {
+                continue;
+            }
+            last = weight.getKey();
+            dice -= weight.getValue();
+            if ( dice < 0 )
+            {
+                break;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return The number of operations for the next worker of the kind
+     */
+    public int ops( WorkerKind kind, Random r )
+    {
+        int[] range = ops.get( kind );
+        if ( range == null )
+        {
+            return 1;
+        }
+        return range[0] + r.nextInt( range[1] - range[0] + 1 );
+    }
+
+    private double getTotalWeight()
+    {
+        double total = 0;
+        for ( double weight : weights.values() )
+        {
+            total += Math.max( weight, 0 );
+        }
+        return total;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder result = new StringBuilder( name ).append( ":" );
+        for ( Map.Entry<WorkerKind, Double> weight : weights.entrySet() )
+        {
+            int[] range = ops.get( weight.getKey() );
+            result.append( " " ).append( weight.getKey() ).append( "=" ).append(
+                    weight.getValue() ).append( "x" ).append( range[0] );
+            if ( range[1] != range[0] )
+            {
+                result.append( "-" ).append( range[1] );
+            }
+            if ( weight.getKey().isWriter() )
+            {
+                result.append( "/tx" ).append( txSize( weight.getKey() ) );
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.trace;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.ResultAggregator;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.workers.BulkReaderWorker;
+import org.neo4j.bench.cases.mixedload.workers.PointLookupWorker;
+import org.neo4j.bench.cases.mixedload.workers.TraversalWorker;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Replays a trace written by a {@link TraceWriter}, every stream of it in
+ * its own task and in its own order, transaction by transaction as
+ * recorded. Either every event waits for its original time since the start
+ * of the trace, or all streams go as fast as they can on a fixed number of
+ * threads.
+ *
+ * The database may hand out other ids than the traced one did, so created
+ * nodes and relationships are mapped from their traced ids to their new
+ * ones; ids that were not created in the trace are taken as they are. An
+ * event that does not apply, e.g. a delete of a node another stream has not
+ * created yet when going as fast as possible, rolls its transaction back
+ * and counts as a failure: a divergence from the traced run.
+ */
+public class TraceReplayer
+{
+    private final GraphDatabaseService graphDb;
+    private final boolean originalTiming;
+    private final int threads;
+    private final Map<Long, Long> nodeIds = new ConcurrentHashMap<Long, Long>();
+    private final Map<Long, Long> relationshipIds = new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * @param originalTiming true to keep the timing of the trace, false to
+     *            go as fast as possible
+     * @param threads The streams replayed at once when going as fast as
+     *            possible, timed replays run all streams that overlap
+     */
+    public TraceReplayer( GraphDatabaseService graphDb,
+            boolean originalTiming, int threads )
+    {
+        this.graphDb = graphDb;
+        this.originalTiming = originalTiming;
+        this.threads = threads;
+    }
+
+    /**
+     * @return What the replay did, the failures being divergences
+     */
+    public ResultAggregator replay( File file ) throws IOException,
+            InterruptedException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new FileInputStream( file ), 1 << 16 ) );
+        ExecutorService service = originalTiming ? Executors.newCachedThreadPool()
+                : Executors.newFixedThreadPool( threads );
+        List<Future<WorkerResult>> replays = new ArrayList<Future<WorkerResult>>();
+        try
+        {
+            if ( in.readInt() != TraceWriter.MAGIC )
+            {
+                throw new IOException( file + " is not a trace" );
+            }
+            in.readLong(); // When it was recorded
+            long startNanos = System.nanoTime();
+            // Streams the last block of which is still to come
+            Map<Integer, ByteArrayOutputStream> pending = new HashMap<Integer, ByteArrayOutputStream>();
+            while ( true )
+            {
+                int stream;
+                boolean last;
+                byte[] events;
+                try
+                {
+                    stream = in.readInt();
+                    last = in.readBoolean();
+                    events = new byte[in.readInt()];
+                    in.readFully( events );
+                }
+                catch ( EOFException e )
+                {
+                    // The end, or a block torn by a run that died
+                    break;
+                }
+                ByteArrayOutputStream blocks = pending.get( stream );
+                if ( blocks == null )
+                {
+                    blocks = new ByteArrayOutputStream( events.length );
+                    pending.put( stream, blocks );
+                }
+                blocks.write( events );
+                if ( last )
+                {
+                    replays.add( service.submit( new StreamReplay(
+                            pending.remove( stream ).toByteArray(), startNanos ) ) );
+                }
+            }
+            // Workers that never finished, what they did is still part of it
+            for ( ByteArrayOutputStream blocks : pending.values() )
+            {
+                replays.add( service.submit( new StreamReplay(
+                        blocks.toByteArray(), startNanos ) ) );
+            }
+        }
+        finally
+        {
+            in.close();
+            service.shutdown();
+        }
+
+        ResultAggregator result = new ResultAggregator();
+        for ( Future<WorkerResult> replay : replays )
+        {
+            try
+            {
+                result.add( replay.get() );
+            }
+            catch ( ExecutionException e )
+            {
+                e.getCause().printStackTrace();
+                result.taskFailed();
+            }
+        }
+        return result;
+    }
+
+    private class StreamReplay implements Callable<WorkerResult>
+    {
+        private final byte[] events;
+        private final long startNanos;
+        private int position;
+        private final WorkerResult result = new WorkerResult();
+        private Transaction tx;
+        // The current transaction diverged, the rest of it is skipped
+        private boolean diverged;
+
+        StreamReplay( byte[] events, long startNanos )
+        {
+            this.events = events;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public WorkerResult call()
+        {
+            long time = System.nanoTime();
+            long offset = 0;
+            try
+            {
+                while ( position < events.length )
+                {
+                    byte type = events[position++];
+                    offset += readVarLong();
+                    if ( originalTiming )
+                    {
+                        long now;
+                        while ( ( now = System.nanoTime() ) < startNanos + offset )
+                        {
+                            LockSupport.parkNanos( startNanos + offset - now );
+                        }
+                    }
+                    replay( type );
+                }
+            }
+            finally
+            {
+                if ( tx != null )
+                {
+                    // Cut off by the end of the traced run
+                    tx.failure();
+                    tx.finish();
+                    result.rolledBack();
+                }
+            }
+            result.setElapsedNanos( System.nanoTime() - time );
+            return result;
+        }
+
+        private void replay( byte type )
+        {
+            switch ( type )
+            {
+            case TraceWriter.BEGIN:
+                tx = graphDb.beginTx();
+                diverged = false;
+                return;
+            case TraceWriter.COMMIT:
+            case TraceWriter.ROLLBACK:
+                end( type == TraceWriter.COMMIT && !diverged );
+                return;
+            default:
+            }
+
+            // Operands are read whether the event applies or not
+            long start = System.nanoTime();
+            try
+            {
+                switch ( type )
+                {
+                case TraceWriter.CREATE_NODE:
+                {
+                    long traced = readVarLong();
+                    if ( !diverged )
+                    {
+                        nodeIds.put( traced, graphDb.createNode().getId() );
+                        done( Operation.NODE_CREATE, start );
+                    }
+                    return;
+                }
+                case TraceWriter.CREATE_RELATIONSHIP:
+                {
+                    long traced = readVarLong();
+                    long from = readVarLong();
+                    long to = readVarLong();
+                    String name = readString();
+                    if ( !diverged )
+                    {
+                        Relationship created = node( from ).createRelationshipTo(
+                                node( to ), DynamicRelationshipType.withName( name ) );
+                        relationshipIds.put( traced, created.getId() );
+                        done( Operation.RELATIONSHIP_CREATE, start );
+                    }
+                    return;
+                }
+                case TraceWriter.DELETE_NODE:
+                {
+                    long id = readVarLong();
+                    if ( !diverged )
+                    {
+                        node( id ).delete();
+                        done( Operation.NODE_DELETE, start );
+                    }
+                    return;
+                }
+                case TraceWriter.DELETE_RELATIONSHIP:
+                {
+                    long id = readVarLong();
+                    if ( !diverged )
+                    {
+                        relationship( id ).delete();
+                        done( Operation.RELATIONSHIP_DELETE, start );
+                    }
+                    return;
+                }
+                case TraceWriter.SET_NODE_PROPERTY:
+                case TraceWriter.SET_RELATIONSHIP_PROPERTY:
+                {
+                    long id = readVarLong();
+                    String key = readString();
+                    Object value = readValue();
+                    if ( !diverged && value != null )
+                    {
+                        PropertyContainer entity = type == TraceWriter.SET_NODE_PROPERTY ? node( id )
+                                : relationship( id );
+                        entity.setProperty( key, value );
+                        done( Operation.PROPERTY_SET, start );
+                    }
+                    return;
+                }
+                case TraceWriter.LOOKUP:
+                    PointLookupWorker.lookup( node( readVarLong() ), result );
+                    done( Operation.POINT_LOOKUP, start );
+                    return;
+                case TraceWriter.EXPAND:
+                {
+                    long id = readVarLong();
+                    String name = readString();
+                    Direction direction = Direction.values()[events[position++]];
+                    int depth = (int) readVarLong();
+                    TraversalWorker.expand( node( id ), name.length() == 0 ? null
+                            : DynamicRelationshipType.withName( name ),
+                            direction, depth, result );
+                    done( name.length() == 0 ? Operation.EXPAND
+                            : Operation.FILTERED_TRAVERSAL, start );
+                    return;
+                }
+                case TraceWriter.SHORTEST_PATH:
+                {
+                    long from = readVarLong();
+                    long to = readVarLong();
+                    int maxLength = (int) readVarLong();
+                    TraversalWorker.shortestPath( node( from ), node( to ),
+                            maxLength, result );
+                    done( Operation.SHORTEST_PATH, start );
+                    return;
+                }
+                case TraceWriter.SCAN:
+                    BulkReaderWorker.scan( graphDb, result );
+                    done( Operation.FULL_SCAN, start );
+                    return;
+                default:
+                    throw new IllegalStateException( "Unknown trace event "
+                                                     + type );
+                }
+            }
+            catch ( NotFoundException e )
+            {
+                // Not there, or not yet
+                result.failed();
+                diverged = true;
+            }
+        }
+
+        private void done( Operation operation, long start )
+        {
+            result.record( operation, System.nanoTime() - start );
+        }
+
+        private void end( boolean commit )
+        {
+            if ( tx == null )
+            {
+                return;
+            }
+            if ( commit )
+            {
+                tx.success();
+            }
+            else
+            {
+                tx.failure();
+            }
+            long commitStart = System.nanoTime();
+            try
+            {
+                tx.finish();
+                if ( commit )
+                {
+                    result.record( Operation.COMMIT, System.nanoTime()
+                                                     - commitStart );
+                    result.committed();
+                }
+                else
+                {
+                    result.rolledBack();
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                // Failed to commit what the traced run committed
+                result.failed();
+                result.rolledBack();
+            }
+            tx = null;
+        }
+
+        private Node node( long tracedId )
+        {
+            Long id = nodeIds.get( tracedId );
+            return graphDb.getNodeById( id == null ? tracedId : id );
+        }
+
+        private Relationship relationship( long tracedId )
+        {
+            Long id = relationshipIds.get( tracedId );
+            return graphDb.getRelationshipById( id == null ? tracedId : id );
+        }
+
+        private long readVarLong()
+        {
+            long value = 0;
+            for ( int shift = 0;; shift += 7 )
+            {
+                byte b = events[position++];
+                value |= (long) ( b & 0x7F ) << shift;
+                if ( b >= 0 )
+                {
+                    return value;
+                }
+            }
+        }
+
+        private long readZigZag()
+        {
+            long value = readVarLong();
+            return ( value >>> 1 ) ^ -( value & 1 );
+        }
+
+        private String readString()
+        {
+            long header = readVarLong();
+            int length = (int) ( header >>> 1 );
+            char[] chars = new char[length];
+            if ( ( header & 1 ) == 0 )
+            {
+                for ( int i = 0; i < length; i++ )
+                {
+                    chars[i] = (char) events[position++];
+                }
+            }
+            else
+            {
+                for ( int i = 0; i < length; i++ )
+                {
+                    chars[i] = (char) ( ( events[position] & 0xFF ) << 8 | events[position + 1] & 0xFF );
+                    position += 2;
+                }
+            }
+            return new String( chars );
+        }
+
+        /**
+         * @return The value, null for one of a type the trace does not keep
+         */
+        private Object readValue()
+        {
+            switch ( events[position++] )
+            {
+            case TraceWriter.INT:
+                return (int) readZigZag();
+            case TraceWriter.LONG:
+                return readZigZag();
+            case TraceWriter.BOOLEAN:
+                return events[position++] != 0;
+            case TraceWriter.STRING:
+                return readString();
+            case TraceWriter.STRING_ARRAY:
+                String[] strings = new String[(int) readVarLong()];
+                for ( int i = 0; i < strings.length; i++ )
+                {
+                    strings[i] = readString();
+                }
+                return strings;
+            case TraceWriter.LONG_ARRAY:
+                long[] longs = new long[(int) readVarLong()];
+                for ( int i = 0; i < longs.length; i++ )
+                {
+                    longs[i] = readZigZag();
+                }
+                return longs;
+            default:
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.trace;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * The trace of one worker, written to by that worker only. A disabled
+ * stream ignores everything, so workers record unconditionally.
+ */
+public class TraceStream
+{
+    public static final TraceStream DISABLED = new TraceStream( null, -1, 0 );
+
+    private static final int FLUSH_SIZE = 1 << 20;
+
+    private final TraceWriter writer;
+    private final int id;
+    private long lastNanos;
+    private byte[] buffer;
+    private int size;
+
+    TraceStream( TraceWriter writer, int id, long startNanos )
+    {
+        this.writer = writer;
+        this.id = id;
+        this.lastNanos = startNanos;
+        this.buffer = writer == null ? null : new byte[1024];
+    }
+
+    public void begin()
+    {
+        event( TraceWriter.BEGIN );
+    }
+
+    public void committed()
+    {
+        event( TraceWriter.COMMIT );
+    }
+
+    public void rolledBack()
+    {
+        event( TraceWriter.ROLLBACK );
+    }
+
+    public void nodeCreated( long id )
+    {
+        if ( event( TraceWriter.CREATE_NODE ) )
+        {
+            writeVarLong( id );
+        }
+    }
+
+    public void relationshipCreated( Relationship relationship )
+    {
+        if ( event( TraceWriter.CREATE_RELATIONSHIP ) )
+        {
+            writeVarLong( relationship.getId() );
+            writeVarLong( relationship.getStartNode().getId() );
+            writeVarLong( relationship.getEndNode().getId() );
+            writeString( relationship.getType().name() );
+        }
+    }
+
+    public void nodeDeleted( long id )
+    {
+        if ( event( TraceWriter.DELETE_NODE ) )
+        {
+            writeVarLong( id );
+        }
+    }
+
+    public void relationshipDeleted( long id )
+    {
+        if ( event( TraceWriter.DELETE_RELATIONSHIP ) )
+        {
+            writeVarLong( id );
+        }
+    }
+
+    public void propertySet( PropertyContainer entity, String key, Object value )
+    {
+        if ( writer == null )
+        {
+            return;
+        }
+        if ( entity instanceof Node )
+        {
+            event( TraceWriter.SET_NODE_PROPERTY );
+            writeVarLong( ( (Node) entity ).getId() );
+        }
+        else
+        {
+            event( TraceWriter.SET_RELATIONSHIP_PROPERTY );
+            writeVarLong( ( (Relationship) entity ).getId() );
+        }
+        writeString( key );
+        writeValue( value );
+    }
+
+    public void lookedUp( long id )
+    {
+        if ( event( TraceWriter.LOOKUP ) )
+        {
+            writeVarLong( id );
+        }
+    }
+
+    /**
+     * @param type The only type followed, null for all
+     */
+    public void expanded( long startId, RelationshipType type,
+            Direction direction, int depth )
+    {
+        if ( event( TraceWriter.EXPAND ) )
+        {
+            writeVarLong( startId );
+            writeString( type == null ? "" : type.name() );
+            ensure( 1 );
+            buffer[size++] = (byte) direction.ordinal();
+            writeVarLong( depth );
+        }
+    }
+
+    public void shortestPath( long fromId, long toId, int maxLength )
+    {
+        if ( event( TraceWriter.SHORTEST_PATH ) )
+        {
+            writeVarLong( fromId );
+            writeVarLong( toId );
+            writeVarLong( maxLength );
+        }
+    }
+
+    public void scanned()
+    {
+        event( TraceWriter.SCAN );
+    }
+
+    /**
+     * Writes out what is left, the stream is not to be used after this.
+     */
+    public void close()
+    {
+        if ( writer != null )
+        {
+            writer.write( id, true, buffer, size );
+            size = 0;
+        }
+    }
+
+    /**
+     * Starts an event, if enabled.
+     *
+     * @return false if disabled, and nothing is to be written
+     */
+    private boolean event( byte type )
+    {
+        if ( writer == null )
+        {
+            return false;
+        }
+        if ( size >= FLUSH_SIZE )
+        {
+            writer.write( id, false, buffer, size );
+            size = 0;
+        }
+        long now = System.nanoTime();
+        ensure( 1 );
+        buffer[size++] = type;
+        writeVarLong( now - lastNanos );
+        lastNanos = now;
+        return true;
+    }
+
+    private void writeValue( Object value )
+    {
+        ensure( 1 );
+        if ( value instanceof Integer )
+        {
+            buffer[size++] = TraceWriter.INT;
+            writeVarLong( zigZag( (Integer) value ) );
+        }
+        else if ( value instanceof Long )
+        {
+            buffer[size++] = TraceWriter.LONG;
+            writeVarLong( zigZag( (Long) value ) );
+        }
+        else if ( value instanceof Boolean )
+        {
+            buffer[size++] = TraceWriter.BOOLEAN;
+            ensure( 1 );
+            buffer[size++] = (byte) ( (Boolean) value ? 1 : 0 );
+        }
+        else if ( value instanceof String )
+        {
+            buffer[size++] = TraceWriter.STRING;
+            writeString( (String) value );
+        }
+        else if ( value instanceof String[] )
+        {
+            buffer[size++] = TraceWriter.STRING_ARRAY;
+            String[] strings = (String[]) value;
+            writeVarLong( strings.length );
+            for ( String string : strings )
+            {
+                writeString( string );
+            }
+        }
+        else if ( value instanceof long[] )
+        {
+            buffer[size++] = TraceWriter.LONG_ARRAY;
+            long[] longs = (long[]) value;
+            writeVarLong( longs.length );
+            for ( long element : longs )
+            {
+                writeVarLong( zigZag( element ) );
+            }
+        }
+        else
+        {
+            // Not written by the workers, replayed as a no-op
+            buffer[size++] = TraceWriter.OTHER;
+        }
+    }
+
+    /**
+     * Strings are the length in chars and the chars, truncated to a byte
+     * each when they all fit, which is what the workers write.
+     */
+    private void writeString( String string )
+    {
+        int length = string.length();
+        boolean narrow = true;
+        for ( int i = 0; i < length && narrow; i++ )
+        {
+            narrow = string.charAt( i ) < 0x80;
+        }
+        writeVarLong( narrow ? (long) length << 1 : ( (long) length << 1 ) | 1 );
+        ensure( narrow ? length : length * 2 );
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = string.charAt( i );
+            if ( !narrow )
+            {
+                buffer[size++] = (byte) ( c >>> 8 );
+            }
+            buffer[size++] = (byte) c;
+        }
+    }
+
+    private void writeVarLong( long value )
+    {
+        ensure( 10 );
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            buffer[size++] = (byte) ( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private static long zigZag( long value )
+    {
+        return ( value << 1 ) ^ ( value >> 63 );
+    }
+
+    private void ensure( int bytes )
+    {
+        if ( size + bytes > buffer.length )
+        {
+            byte[] grown = new byte[Math.max( buffer.length * 2, size + bytes )];
+            System.arraycopy( buffer, 0, grown, 0, size );
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records what the workers of a run do, operation by operation, so that
+ * exactly the same can be replayed on another database by the
+ * {@link TraceReplayer}. Every worker records into a stream of its own,
+ * without locking; a stream goes to the file in blocks, when its buffer
+ * fills up and when the worker is done.
+ *
+ * The file is a header (magic, start time in millis) and then blocks of a
+ * stream id, a flag telling if it is the last block of the stream, the
+ * length and the events. An event is its type, its time in nanoseconds
+ * since the previous event of the stream (since the start of the trace for
+ * the first one) and its operands. Times, ids and lengths are variable
+ * length encoded, most take a byte or two.
+ */
+public class TraceWriter
+{
+    static final int MAGIC = 0x4E545231; // "NTR1"
+
+    // Event types
+    static final byte BEGIN = 1;
+    static final byte COMMIT = 2;
+    static final byte ROLLBACK = 3;
+    static final byte CREATE_NODE = 4;
+    static final byte CREATE_RELATIONSHIP = 5;
+    static final byte DELETE_NODE = 6;
+    static final byte DELETE_RELATIONSHIP = 7;
+    static final byte SET_NODE_PROPERTY = 8;
+    static final byte SET_RELATIONSHIP_PROPERTY = 9;
+    static final byte LOOKUP = 10;
+    static final byte EXPAND = 11;
+    static final byte SHORTEST_PATH = 12;
+    static final byte SCAN = 13;
+
+    // Property value types
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+    static final byte STRING_ARRAY = 5;
+    static final byte LONG_ARRAY = 6;
+    static final byte OTHER = 0;
+
+    private final DataOutputStream out;
+    private final long startNanos;
+    private final AtomicInteger nextStream = new AtomicInteger();
+    private boolean closed;
+
+    public TraceWriter( File file ) throws IOException
+    {
+        out = new DataOutputStream( new BufferedOutputStream(
+                new FileOutputStream( file ), 1 << 16 ) );
+        out.writeInt( MAGIC );
+        out.writeLong( System.currentTimeMillis() );
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return A stream for one worker to record into
+     */
+    public TraceStream newStream()
+    {
+        return new TraceStream( this, nextStream.getAndIncrement(), startNanos );
+    }
+
+    synchronized void write( int stream, boolean last, byte[] events,
+            int length )
+    {
+        if ( closed )
+        {
+            // A worker that outlived the run, its end is not part of it
+            return;
+        }
+        try
+        {
+            out.writeInt( stream );
+            out.writeBoolean( last );
+            out.writeInt( length );
+            out.write( events, 0, length );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    public synchronized void close() throws IOException
+    {
+        closed = true;
+        out.close();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.workers;
+
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionFailureException;
+
+/**
+ * Ends the transactions of the batches of the write workers, the same way
+ * for all of them.
+ */
+class Batches
+{
+    private Batches()
+    {
+    }
+
+    /**
+     * Commits the transaction of a batch begun with
+     * {@link WorkerResult#beginBatch()}, timing the commit, or rolls it back,
+     * and counts the operations of the batch accordingly.
+     *
+     * @param success Whether all operations of the batch went through
+     * @return true if the batch committed
+     */
+    static boolean end( Transaction tx, boolean success, WorkerResult result,
+            TraceStream trace )
+    {
+        if ( !success )
+        {
+            tx.failure();
+        }
+        long commitStart = System.nanoTime();
+        try
+        {
+            tx.finish();
+        }
+        catch ( TransactionFailureException e )
+        {
+            // Nothing of the batch happened
+            result.failed();
+            success = false;
+        }
+        if ( success )
+        {
+            long commitNanos = System.nanoTime() - commitStart;
+            result.commitBatch();
+            result.record( Operation.COMMIT, commitNanos );
+            trace.committed();
+        }
+        else
+        {
+            result.rollBackBatch();
+            trace.rolledBack();
+        }
+        return success;
+    }
+}
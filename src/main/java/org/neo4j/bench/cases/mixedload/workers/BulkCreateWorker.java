@@ -19,18 +19,23 @@
  */
 package org.neo4j.bench.cases.mixedload.workers;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.Callable;
 
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
+import org.neo4j.bench.cases.topology.Topology;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
 
-public class BulkCreateWorker implements Callable<int[]>
+public class BulkCreateWorker implements Callable<WorkerResult>
 {
 
     private enum RelType implements RelationshipType
@@ -39,67 +44,119 @@ public class BulkCreateWorker implements Callable<int[]>
     }
 
     private final GraphDatabaseService graphDb;
-    private final Queue<Node> nodes;
+    private final NodePool nodes;
+    private final Topology topology;
     private final Random r;
+    private final TraceStream trace;
+    private final int txSize;
     private int ops;
 
-    private int reads;
-    private int writes;
+    private final WorkerResult result;
 
-    public BulkCreateWorker( GraphDatabaseService graphDb, Queue<Node> nodes, int ops )
+    public BulkCreateWorker( WorkerContext context, int ops )
     {
-        this.graphDb = graphDb;
-        this.nodes = nodes;
-        this.r = new Random();
+        this( context, ops, 0 );
+    }
+
+    /**
+     * @param txSize The operations per transaction, all in one if not
+     *            positive
+     */
+    public BulkCreateWorker( WorkerContext context, int ops, int txSize )
+    {
+        this.graphDb = context.getGraphDb();
+        this.nodes = context.getNodes();
+        this.topology = context.getTopology();
+        this.r = context.newRandom();
+        this.trace = context.newTrace();
         this.ops = ops;
+        this.txSize = txSize > 0 ? txSize : Math.max( ops, 1 );
 
-        this.reads = 0;
-        this.writes = 0;
+        this.result = context.newResult();
     }
 
     @Override
-    public int[] call() throws Exception
+    public WorkerResult call() throws Exception
     {
-        List<Node> myNodes = new LinkedList<Node>();
-        int[] result = new int[3];
-        long time = System.currentTimeMillis();
+        // Random access below, so this has to be an array list
+        List<Node> myNodes = new ArrayList<Node>( Math.max( ops, 0 ) );
+        // The nodes before this one are committed and already in the pool
+        int published = 0;
+        long time = System.nanoTime();
 
-        Transaction tx = graphDb.beginTx();
-        try
+        while ( ops > 0 )
         {
-            while ( ops-- > 0 )
+            int batch = Math.min( txSize, ops );
+            ops -= batch;
+            boolean success = false;
+            Transaction tx = graphDb.beginTx();
+            trace.begin();
+            try
             {
-                if ( myNodes.size() < 4 || r.nextDouble() < 0.75 )
+                for ( int i = 0; i < batch; i++ )
                 {
-                    myNodes.add( graphDb.createNode() );
-                    writes += 1;
+                    // Commits are timed on their own, these exclude them
+                    long start = System.nanoTime();
+                    if ( myNodes.size() < 4 || r.nextDouble() < 0.75 )
+                    {
+                        Node created = graphDb.createNode();
+                        trace.nodeCreated( created.getId() );
+                        myNodes.add( created );
+                        result.addWrites( 1 );
+                        result.record( Operation.NODE_CREATE,
+                                System.nanoTime() - start );
+                    }
+                    else
+                    {
+                        createRandomRelationship( myNodes );
+                        result.record( Operation.RELATIONSHIP_CREATE,
+                                System.nanoTime() - start );
+                    }
                 }
-                else
+                tx.success();
+                success = true;
+            }
+            catch ( Exception e )
+            {
+                tx.failure();
+                throw e;
+            }
+            finally
+            {
+                long commitStart = System.nanoTime();
+                tx.finish();
+                if ( success )
                 {
-                    createRandomRelationship( myNodes );
+                    result.record( Operation.COMMIT, System.nanoTime()
+                                                     - commitStart );
                 }
             }
-            tx.success();
-        }
-        catch ( Exception e )
-        {
-            tx.failure();
-            throw e;
-        }
-        finally
-        {
-            tx.finish();
+            result.committed();
+            trace.committed();
+            for ( ; published < myNodes.size(); published++ )
+            {
+                nodes.add( myNodes.get( published ).getId() );
+            }
         }
-        result[0] = reads;
-        result[1] = writes;
-        result[2] = (int) (System.currentTimeMillis() - time);
-        nodes.addAll( myNodes );
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
         return result;
     }
 
     private void createRandomRelationship( List<Node> myNodes )
     {
         int one, two;
+        if ( topology != null )
+        {
+            // The nodes of this worker are the whole graph to the topology
+            one = r.nextInt( myNodes.size() );
+            two = (int) topology.target( one, myNodes.size(), r );
+            trace.relationshipCreated( myNodes.get( one ).createRelationshipTo(
+                    myNodes.get( two ), topology.type( r ) ) );
+            result.addReads( 2 ); // For the nodes
+            result.addWrites( 1 ); // For the relationship
+            return;
+        }
         do
         {
             one = r.nextInt( myNodes.size() );
@@ -114,13 +171,15 @@ public class BulkCreateWorker implements Callable<int[]>
 
         if ( r.nextBoolean() )
         {
-            from.createRelationshipTo( to, RelType.TYPE_BULK );
+            trace.relationshipCreated( from.createRelationshipTo( to,
+                    RelType.TYPE_BULK ) );
         }
         else
         {
-            to.createRelationshipTo( from, RelType.TYPE_BULK );
+            trace.relationshipCreated( to.createRelationshipTo( from,
+                    RelType.TYPE_BULK ) );
         }
-        reads += 2; // For the nodes
-        writes += 1; // For the relationship
+        result.addReads( 2 ); // For the nodes
+        result.addWrites( 1 ); // For the relationship
     }
 }
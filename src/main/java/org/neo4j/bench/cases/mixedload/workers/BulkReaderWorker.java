@@ -21,56 +21,69 @@ package org.neo4j.bench.cases.mixedload.workers;
 
 import java.util.concurrent.Callable;
 
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 
-public class BulkReaderWorker implements Callable<int[]>
+public class BulkReaderWorker implements Callable<WorkerResult>
 {
 
     private final GraphDatabaseService graphDb;
+    private final TraceStream trace;
 
-    private int reads;
-    private int writes;
+    private final WorkerResult result;
 
-    public BulkReaderWorker( GraphDatabaseService graphDb )
+    public BulkReaderWorker( WorkerContext context )
     {
-        this.graphDb = graphDb;
+        this.graphDb = context.getGraphDb();
+        this.trace = context.newTrace();
 
-        this.reads = 0;
-        this.writes = 0;
+        this.result = context.newResult();
     }
 
     @Override
-    public int[] call() throws Exception
+    public WorkerResult call() throws Exception
     {
-        long time = System.currentTimeMillis();
+        long time = System.nanoTime();
         for (int i = 0; i < 10; i++)
         {
-            for ( Node node : graphDb.getAllNodes() )
+            long start = System.nanoTime();
+            trace.scanned();
+            scan( graphDb, result );
+            result.record( Operation.FULL_SCAN, System.nanoTime() - start );
+        }
+
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
+        return result;
+    }
+
+    /**
+     * Reads every node and relationship with all their properties.
+     */
+    public static void scan( GraphDatabaseService graphDb, WorkerResult result )
+    {
+        for ( Node node : graphDb.getAllNodes() )
+        {
+            result.addReads( 1 );
+            for ( Relationship r : node.getRelationships() )
             {
-                reads += 1;
-                for ( Relationship r : node.getRelationships() )
+                result.addReads( 1 );
+                for ( String propertyKey : r.getPropertyKeys() )
                 {
-                    reads += 1;
-                    for (String propertyKey : r.getPropertyKeys())
-                    {
-                        r.getProperty( propertyKey );
-                        reads += 2; // Prop key and prop value
-                    }
-                }
-                for (String propertyKey : node.getPropertyKeys())
-                {
-                    node.getProperty( propertyKey );
-                    reads += 2; // Prop key and prop value
+                    r.getProperty( propertyKey );
+                    result.addReads( 2 ); // Prop key and prop value
                 }
             }
+            for ( String propertyKey : node.getPropertyKeys() )
+            {
+                node.getProperty( propertyKey );
+                result.addReads( 2 ); // Prop key and prop value
+            }
         }
-
-        int[] result = new int[3];
-        result[0] = reads;
-        result[1] = writes;
-        result[2] = (int) (System.currentTimeMillis() - time);
-        return result;
     }
 }
@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.workers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.neo4j.bench.cases.mixedload.IdReuseTracker;
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
+
+/**
+ * Deletes and recreates, so that the graph keeps its size while its stores
+ * fragment. Half of the operations replace a random node by a new one with
+ * as many relationships, to random nodes of the pool. The other half
+ * replace a random relationship by one of the same type from the same
+ * start node to a random node. Deletes and creates are timed apart.
+ */
+public class ChurnWorker implements Callable<WorkerResult>
+{
+    private final GraphDatabaseService graphDb;
+    private final NodePool nodes;
+    private final IdReuseTracker idReuse;
+    private final Random r;
+    private final TraceStream trace;
+    private final int txSize;
+    private int ops;
+
+    // What the current transaction deleted and created, for after it ends
+    private final List<Long> deletedNodes = new ArrayList<Long>();
+    private final List<Long> deletedRelationships = new ArrayList<Long>();
+    private final List<Long> createdNodes = new ArrayList<Long>();
+    private final List<Long> createdRelationships = new ArrayList<Long>();
+
+    private final WorkerResult result;
+
+    /**
+     * @param txSize The operations per transaction, all in one if not
+     *            positive
+     */
+    public ChurnWorker( WorkerContext context, int ops, int txSize )
+    {
+        this.graphDb = context.getGraphDb();
+        this.nodes = context.getNodes();
+        this.idReuse = context.getIdReuse();
+        this.r = context.newRandom();
+        this.trace = context.newTrace();
+        this.ops = ops;
+        this.txSize = txSize > 0 ? txSize : Math.max( ops, 1 );
+        this.result = context.newResult();
+    }
+
+    @Override
+    public WorkerResult call() throws Exception
+    {
+        long time = System.nanoTime();
+        while ( ops > 0 )
+        {
+            int batch = Math.min( txSize, ops );
+            ops -= batch;
+            deletedNodes.clear();
+            deletedRelationships.clear();
+            createdNodes.clear();
+            createdRelationships.clear();
+            boolean success = false;
+            result.beginBatch();
+            Transaction tx = graphDb.beginTx();
+            trace.begin();
+            try
+            {
+                for ( int i = 0; i < batch; i++ )
+                {
+                    if ( r.nextBoolean() )
+                    {
+                        churnNode();
+                    }
+                    else
+                    {
+                        churnRelationship();
+                    }
+                }
+                tx.success();
+                success = true;
+            }
+            catch ( NotFoundException e )
+            {
+                // A node was deleted by another worker after we picked it
+                result.failed();
+            }
+            catch ( DeadlockDetectedException e )
+            {
+                // Picked to break a deadlock with another worker
+                result.failed();
+            }
+            catch ( RuntimeException e )
+            {
+                // Not a conflict with the other workers, give up but keep
+                // what was done up to here
+                e.printStackTrace();
+                result.aborted();
+                ops = 0;
+            }
+            if ( Batches.end( tx, success, result, trace ) )
+            {
+                // Created before the deletes are marked, as the ids these
+                // freed are not handed out before the commit
+                for ( long id : createdNodes )
+                {
+                    nodes.add( id );
+                    if ( idReuse.nodeCreated( id ) )
+                    {
+                        result.nodeIdReused();
+                    }
+                }
+                for ( long id : createdRelationships )
+                {
+                    if ( idReuse.relationshipCreated( id ) )
+                    {
+                        result.relationshipIdReused();
+                    }
+                }
+                for ( long id : deletedNodes )
+                {
+                    idReuse.nodeDeleted( id );
+                }
+                for ( long id : deletedRelationships )
+                {
+                    idReuse.relationshipDeleted( id );
+                }
+            }
+            else
+            {
+                // Still there, give them back to the other workers
+                for ( long id : deletedNodes )
+                {
+                    nodes.add( id );
+                }
+            }
+        }
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
+        return result;
+    }
+
+    private void churnNode()
+    {
+        long start = System.nanoTime();
+        long toDeleteId = nodes.removeRandom( r );
+        if ( toDeleteId == -1 )
+        {
+            return;
+        }
+        deletedNodes.add( toDeleteId );
+        Node toDelete = graphDb.getNodeById( toDeleteId );
+        List<RelationshipType> types = new ArrayList<RelationshipType>();
+        for ( Relationship rel : toDelete.getRelationships() )
+        {
+            types.add( rel.getType() );
+            deletedRelationships.add( rel.getId() );
+            trace.relationshipDeleted( rel.getId() );
+            rel.delete();
+        }
+        trace.nodeDeleted( toDeleteId );
+        toDelete.delete();
+        result.addReads( 1 + types.size() );
+        result.addWrites( 1 + types.size() );
+        result.record( Operation.NODE_DELETE, System.nanoTime() - start );
+
+        start = System.nanoTime();
+        Node created = graphDb.createNode();
+        trace.nodeCreated( created.getId() );
+        createdNodes.add( created.getId() );
+        result.addWrites( 1 );
+        for ( RelationshipType type : types )
+        {
+            long otherId = nodes.random( r );
+            if ( otherId == -1 )
+            {
+                break;
+            }
+            relationshipCreated( created.createRelationshipTo(
+                    graphDb.getNodeById( otherId ), type ) );
+            result.addReads( 1 );
+            result.addWrites( 1 );
+        }
+        result.record( Operation.NODE_CREATE, System.nanoTime() - start );
+    }
+
+    private void churnRelationship()
+    {
+        long start = System.nanoTime();
+        long nodeId = nodes.random( r );
+        if ( nodeId == -1 )
+        {
+            return;
+        }
+        Relationship toDelete = RandomRelationships.pick(
+                graphDb.getNodeById( nodeId ), r );
+        result.addReads( 1 );
+        if ( toDelete == null )
+        {
+            return;
+        }
+        Node startNode = toDelete.getStartNode();
+        RelationshipType type = toDelete.getType();
+        deletedRelationships.add( toDelete.getId() );
+        trace.relationshipDeleted( toDelete.getId() );
+        toDelete.delete();
+        result.addReads( 1 );
+        result.addWrites( 1 );
+        result.record( Operation.RELATIONSHIP_DELETE, System.nanoTime()
+                                                      - start );
+
+        start = System.nanoTime();
+        long otherId = nodes.random( r );
+        if ( otherId == -1 || otherId == startNode.getId() )
+        {
+            return;
+        }
+        relationshipCreated( startNode.createRelationshipTo(
+                graphDb.getNodeById( otherId ), type ) );
+        result.addReads( 1 );
+        result.addWrites( 1 );
+        result.record( Operation.RELATIONSHIP_CREATE, System.nanoTime()
+                                                      - start );
+    }
+
+    private void relationshipCreated( Relationship created )
+    {
+        trace.relationshipCreated( created );
+        createdRelationships.add( created.getId() );
+    }
+}
@@ -19,16 +19,26 @@
  */
 package org.neo4j.bench.cases.mixedload.workers;
 
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 
+import org.neo4j.bench.cases.mixedload.IdReuseTracker;
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
+import org.neo4j.bench.cases.topology.Topology;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
 
-public class CreateWorker implements Callable<int[]>
+public class CreateWorker implements Callable<WorkerResult>
 {
 
     private enum RelType implements RelationshipType
@@ -37,104 +47,191 @@ public class CreateWorker implements Callable<int[]>
     }
 
     private final GraphDatabaseService graphDb;
-    private final Queue<Node> nodes;
+    private final NodePool nodes;
+    private final Topology topology;
+    private final IdReuseTracker idReuse;
     private final Random r;
+    private final TraceStream trace;
+    private final int txSize;
     private int ops;
 
-    private int reads;
-    private int writes;
+    // Relationships the current transaction created, if ids are tracked
+    private final List<Long> createdRelationships = new ArrayList<Long>();
 
-    public CreateWorker( GraphDatabaseService graphDb, Queue<Node> nodes, int ops )
+    private final WorkerResult result;
+
+    public CreateWorker( WorkerContext context, int ops )
+    {
+        this( context, ops, 1 );
+    }
+
+    /**
+     * @param txSize The operations per transaction, all in one if not
+     *            positive
+     */
+    public CreateWorker( WorkerContext context, int ops, int txSize )
     {
-        this.graphDb = graphDb;
-        this.nodes = nodes;
-        this.r = new Random();
+        this.graphDb = context.getGraphDb();
+        this.nodes = context.getNodes();
+        this.topology = context.getTopology();
+        this.idReuse = context.getIdReuse();
+        this.r = context.newRandom();
+        this.trace = context.newTrace();
         this.ops = ops;
+        this.txSize = txSize > 0 ? txSize : Math.max( ops, 1 );
 
-        this.reads = 0;
-        this.writes = 0;
+        this.result = context.newResult();
     }
 
     @Override
-    public int[] call() throws Exception
+    public WorkerResult call() throws Exception
     {
-        long time = System.currentTimeMillis();
-        while ( ops-- > 0 )
+        long time = System.nanoTime();
+        long[] created = new long[Math.min( txSize, Math.max( ops, 0 ) )];
+        while ( ops > 0 )
         {
+            int batch = Math.min( txSize, ops );
+            ops -= batch;
+            int createdCount = 0;
+            createdRelationships.clear();
+            boolean success = false;
+            result.beginBatch();
             Transaction tx = graphDb.beginTx();
+            trace.begin();
             try
             {
-                if ( r.nextDouble() < 0.75 || nodes.size() < 4 )
+                for ( int i = 0; i < batch; i++ )
                 {
-                    createNode();
-                }
-                else
-                {
-                    createRandomRelationship();
+                    long start = System.nanoTime();
+                    if ( r.nextDouble() < 0.75 || nodes.size() < 4 )
+                    {
+                        created[createdCount++] = createNode();
+                        result.record( Operation.NODE_CREATE,
+                                System.nanoTime() - start );
+                    }
+                    else if ( createRandomRelationship() )
+                    {
+                        result.record( Operation.RELATIONSHIP_CREATE,
+                                System.nanoTime() - start );
+                    }
                 }
                 tx.success();
+                success = true;
+            }
+            catch ( NotFoundException e )
+            {
+                // One of the nodes was deleted by another worker after we
+                // picked it, not a failure of the database
+                result.failed();
+            }
+            catch ( DeadlockDetectedException e )
+            {
+                // Picked to break a deadlock with another worker
+                result.failed();
             }
-            catch ( Exception e )
+            catch ( RuntimeException e )
             {
-                tx.failure();
-                throw e;
+                // Not a conflict with the other workers, give up but keep
+                // what was done up to here
+                e.printStackTrace();
+                result.aborted();
+                ops = 0;
             }
-            finally
+            if ( Batches.end( tx, success, result, trace ) )
             {
-                tx.finish();
+                // Only committed nodes become visible to the other workers
+                for ( int i = 0; i < createdCount; i++ )
+                {
+                    nodes.add( created[i] );
+                    if ( idReuse.nodeCreated( created[i] ) )
+                    {
+                        result.nodeIdReused();
+                    }
+                }
+                for ( long id : createdRelationships )
+                {
+                    if ( idReuse.relationshipCreated( id ) )
+                    {
+                        result.relationshipIdReused();
+                    }
+                }
             }
         }
-        int[] result = new int[3];
-        result[0] = reads;
-        result[1] = writes;
-        result[2] = (int) (System.currentTimeMillis() - time);
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
         return result;
     }
 
-    private void createNode()
+    private long createNode()
     {
-        nodes.add( graphDb.createNode() );
-        writes += 1; // The node
+        result.addWrites( 1 ); // The node
+        long id = graphDb.createNode().getId();
+        trace.nodeCreated( id );
+        return id;
     }
 
-    private void createRandomRelationship()
+    private boolean createRandomRelationship()
     {
-        int one, two;
-        do
+        if ( topology != null )
         {
-            one = r.nextInt( nodes.size() );
-            two = r.nextInt( nodes.size() );
+            return createShapedRelationship();
         }
-        while ( one == two );
-
-        Node from, to;
-
-        int nextStop = Math.min( one, two );
-        int i = 0;
-        for ( ; i < nextStop; i++ )
+        long from, to;
+        do
         {
-            nodes.add( nodes.remove() );
+            from = nodes.random( r );
+            to = nodes.random( r );
         }
-        from = nodes.remove();
-        nextStop = Math.max( one, two );
-        for ( ; i < nextStop; i++ )
+        while ( from == to && nodes.size() > 1 );
+        if ( from == to )
         {
-            nodes.add( nodes.remove() );
+            // Deleters drained the pool under our feet
+            return false;
         }
-        to = nodes.remove();
 
+        Relationship created;
         if ( r.nextBoolean() )
         {
-            graphDb.getNodeById( from.getId() ).createRelationshipTo(
-                    graphDb.getNodeById( to.getId() ), RelType.TYPE_GENERIC );
+            created = graphDb.getNodeById( from ).createRelationshipTo(
+                    graphDb.getNodeById( to ), RelType.TYPE_GENERIC );
         }
         else
         {
-            graphDb.getNodeById( to.getId() ).createRelationshipTo(
-                    graphDb.getNodeById( from.getId() ), RelType.TYPE_GENERIC );
+            created = graphDb.getNodeById( to ).createRelationshipTo(
+                    graphDb.getNodeById( from ), RelType.TYPE_GENERIC );
+        }
+        relationshipCreated( created );
+        result.addReads( 2 ); // For the nodes
+        result.addWrites( 1 ); // For the relationship
+        return true;
+    }
+
+    /**
+     * Node ids stand in for the indexes of the topology. An id that was
+     * deleted ends in a NotFoundException, counted as a failure.
+     */
+    private boolean createShapedRelationship()
+    {
+        long from = nodes.random( r );
+        if ( from == -1 )
+        {
+            return false;
+        }
+        long to = topology.target( from, nodes.highestId() + 1, r );
+        relationshipCreated( graphDb.getNodeById( from ).createRelationshipTo(
+                graphDb.getNodeById( to ), topology.type( r ) ) );
+        result.addReads( 2 ); // For the nodes
+        result.addWrites( 1 ); // For the relationship
+        return true;
+    }
+
+    private void relationshipCreated( Relationship created )
+    {
+        trace.relationshipCreated( created );
+        if ( idReuse.isEnabled() )
+        {
+            createdRelationships.add( created.getId() );
         }
-        reads += 2; // For the nodes
-        writes += 1; // For the relationship
     }
 
 }
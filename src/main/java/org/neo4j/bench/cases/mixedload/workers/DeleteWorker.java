@@ -19,111 +19,193 @@
  */
 package org.neo4j.bench.cases.mixedload.workers;
 
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 
+import org.neo4j.bench.cases.mixedload.IdReuseTracker;
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
 
-public class DeleteWorker implements Callable<int[]>
+public class DeleteWorker implements Callable<WorkerResult>
 {
 
     private final GraphDatabaseService graphDb;
-    private final Queue<Node> nodes;
+    private final NodePool nodes;
+    private final IdReuseTracker idReuse;
     private final Random r;
+    private final TraceStream trace;
+    private final double relationshipShare;
+    private final int txSize;
     private int ops;
 
-    private int reads;
-    private int writes;
+    // What the current transaction deleted, for after it ends
+    private final List<Long> deletedNodes = new ArrayList<Long>();
+    private final List<Long> deletedRelationships = new ArrayList<Long>();
 
-    public DeleteWorker( GraphDatabaseService graphDb, Queue<Node> nodes,
-            int ops )
+    private final WorkerResult result;
+
+    public DeleteWorker( WorkerContext context, int ops )
+    {
+        this( context, ops, 1 );
+    }
+
+    /**
+     * @param txSize The operations per transaction, all in one if not
+     *            positive
+     */
+    public DeleteWorker( WorkerContext context, int ops, int txSize )
     {
-        this.graphDb = graphDb;
-        this.nodes = nodes;
-        this.r = new Random();
+        this.graphDb = context.getGraphDb();
+        this.nodes = context.getNodes();
+        this.idReuse = context.getIdReuse();
+        this.r = context.newRandom();
+        this.trace = context.newTrace();
+        this.relationshipShare = context.getRelationshipDeleteShare();
         this.ops = ops;
-        this.reads = 0;
-        this.writes = 0;
+        this.txSize = txSize > 0 ? txSize : Math.max( ops, 1 );
+        this.result = context.newResult();
     }
 
     @Override
-    public int[] call() throws Exception
+    public WorkerResult call() throws Exception
     {
-        long time = System.currentTimeMillis();
-        while ( ops-- > 0 )
+        long time = System.nanoTime();
+        while ( ops > 0 )
         {
+            int batch = Math.min( txSize, ops );
+            ops -= batch;
+            deletedNodes.clear();
+            deletedRelationships.clear();
+            boolean success = false;
+            result.beginBatch();
             Transaction tx = graphDb.beginTx();
+            trace.begin();
             try
             {
-                if ( r.nextDouble() > 0.4 )
-                {
-                    deleteRandomNode();
-                }
-                else
+                for ( int i = 0; i < batch; i++ )
                 {
-                    deleteRandomRelationship();
+                    long start = System.nanoTime();
+                    if ( r.nextDouble() >= relationshipShare )
+                    {
+                        if ( deleteRandomNode() )
+                        {
+                            result.record( Operation.NODE_DELETE,
+                                    System.nanoTime() - start );
+                        }
+                    }
+                    else if ( deleteRandomRelationship() )
+                    {
+                        result.record( Operation.RELATIONSHIP_DELETE,
+                                System.nanoTime() - start );
+                    }
                 }
                 tx.success();
+                success = true;
+            }
+            catch ( NotFoundException e )
+            {
+                // A relationship of the node was deleted along with its
+                // other node by another worker
+                result.failed();
+            }
+            catch ( DeadlockDetectedException e )
+            {
+                // Picked to break a deadlock with another worker
+                result.failed();
+            }
+            catch ( RuntimeException e )
+            {
+                // Not a conflict with the other workers, give up but keep
+                // what was done up to here
+                e.printStackTrace();
+                result.aborted();
+                ops = 0;
             }
-            catch ( Exception e )
+            if ( Batches.end( tx, success, result, trace ) )
             {
-                tx.failure();
-                throw e;
+                for ( long id : deletedNodes )
+                {
+                    idReuse.nodeDeleted( id );
+                }
+                for ( long id : deletedRelationships )
+                {
+                    idReuse.relationshipDeleted( id );
+                }
             }
-            finally
+            else
             {
-                tx.finish();
+                // Still there, give them back to the other workers
+                for ( long id : deletedNodes )
+                {
+                    nodes.add( id );
+                }
             }
         }
-        int[] result = new int[3];
-        result[0] = reads;
-        result[1] = writes;
-        result[2] = (int) (System.currentTimeMillis() - time);
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
         return result;
     }
 
-    private void deleteRandomNode()
+    private boolean deleteRandomNode()
     {
-        int delIndex = r.nextInt( nodes.size() );
-        Node toDelete;
-
-        for ( int i = 0; i < delIndex; i++ )
+        // Removed from the pool first, so no other worker picks it from now on
+        long toDeleteId = nodes.removeRandom( r );
+        if ( toDeleteId == -1 )
         {
-            nodes.add( nodes.remove() );
+            return false;
         }
-        toDelete = nodes.remove();
+        deletedNodes.add( toDeleteId );
+        Node toDelete = graphDb.getNodeById( toDeleteId );
         for ( Relationship rel : toDelete.getRelationships( Direction.BOTH ) )
         {
+            deletedRelationships.add( rel.getId() );
+            trace.relationshipDeleted( rel.getId() );
             rel.delete();
-            writes += 1; // The relationship delete
-            reads += 1;
+            result.addWrites( 1 ); // The relationship delete
+            result.addReads( 1 );
         }
-        nodes.remove( toDelete );
-        graphDb.getNodeById( toDelete.getId() ).delete();
-        reads += 1; // The node read in
-        writes += 1; // The node delete
+        trace.nodeDeleted( toDeleteId );
+        toDelete.delete();
+        result.addReads( 1 ); // The node read in
+        result.addWrites( 1 ); // The node delete
+        return true;
     }
 
-    private void deleteRandomRelationship()
+    /**
+     * Deletes one of the relationships of a random node of the pool, if it
+     * has any. The node stays.
+     */
+    private boolean deleteRandomRelationship()
     {
-        // Relationship toDelete;
-        // int delIndex = r.nextInt( rels.size() );
-        // Iterator<Relationship> it = rels.iterator();
-        //
-        // for ( int i = 0; i < delIndex; i++ )
-        // {
-        // it.next();
-        // }
-        // toDelete = it.next();
-        // }
-        // graphDb.getRelationshipById( toDelete.getId() ).delete();
-        // writes += 1; // The relationship delete
-        // reads += 1;
+        long nodeId = nodes.random( r );
+        if ( nodeId == -1 )
+        {
+            return false;
+        }
+        Relationship toDelete = RandomRelationships.pick(
+                graphDb.getNodeById( nodeId ), r );
+        result.addReads( 1 ); // The node read in
+        if ( toDelete == null )
+        {
+            return false;
+        }
+        deletedRelationships.add( toDelete.getId() );
+        trace.relationshipDeleted( toDelete.getId() );
+        toDelete.delete();
+        result.addReads( 1 );
+        result.addWrites( 1 ); // The relationship delete
+        return true;
     }
-
 }
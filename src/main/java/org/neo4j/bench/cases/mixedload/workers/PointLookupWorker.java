@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.workers;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.neo4j.bench.cases.mixedload.KeyDistribution;
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Reads nodes by id, each with all its properties and the ids of its
+ * neighbours, timed as one lookup. Which ids are read is up to the key
+ * distribution of the context, so a skewed one measures lookups mostly
+ * served from the caches and a uniform one over a large graph mostly
+ * served from the store files.
+ */
+public class PointLookupWorker implements Callable<WorkerResult>
+{
+    private final GraphDatabaseService graphDb;
+    private final NodePool nodes;
+    private final KeyDistribution keys;
+    private final Random r;
+    private final TraceStream trace;
+    private int ops;
+
+    private final WorkerResult result;
+
+    public PointLookupWorker( WorkerContext context, int ops )
+    {
+        this.graphDb = context.getGraphDb();
+        this.nodes = context.getNodes();
+        this.keys = context.getKeyDistribution();
+        this.r = context.newRandom();
+        this.trace = context.newTrace();
+        this.ops = ops;
+
+        this.result = context.newResult();
+    }
+
+    @Override
+    public WorkerResult call() throws Exception
+    {
+        long time = System.nanoTime();
+        while ( ops-- > 0 )
+        {
+            long count = nodes.highestId() + 1;
+            if ( count == 0 )
+            {
+                break;
+            }
+            long id = keys.next( count, r );
+            trace.lookedUp( id );
+            long start = System.nanoTime();
+            try
+            {
+                lookup( graphDb.getNodeById( id ), result );
+                result.record( Operation.POINT_LOOKUP, System.nanoTime()
+                                                       - start );
+            }
+            catch ( NotFoundException e )
+            {
+                // A hole in the id space, the node was deleted
+                result.failed();
+            }
+        }
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
+        return result;
+    }
+
+    /**
+     * Reads every property of the node and the other node of every one of
+     * its relationships.
+     */
+    public static void lookup( Node node, WorkerResult result )
+    {
+        int reads = 1;
+        for ( String key : node.getPropertyKeys() )
+        {
+            node.getProperty( key );
+            reads++;
+        }
+        for ( Relationship rel : node.getRelationships() )
+        {
+            rel.getOtherNode( node ).getId();
+            reads++;
+        }
+        result.addReads( reads );
+    }
+}
@@ -19,149 +19,258 @@
  */
 package org.neo4j.bench.cases.mixedload.workers;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.PropertyShape;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
 
-public class PropertyAddWorker implements Callable<int[]>
+/**
+ * Adds properties to random nodes and relationships of the pool, or reads
+ * one they have and writes back a value derived from it, as the property
+ * shape of the context says. Every operation is one entity with one or
+ * more properties. The bytes of the values written are counted, as that
+ * is what goes to the dynamic string and array stores.
+ */
+public class PropertyAddWorker implements Callable<WorkerResult>
 {
     private static final char[] Symbols = ( "1234567890"
                                             + "abcdefghijklmnopqrstuvwxyz"
                                             + "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
                                             + "!@#$%^&*()_+=-\\|<>?,./" ).toCharArray();
 
+    // Nodes tried before giving up on finding one with relationships
+    private static final int RELATIONSHIP_ATTEMPTS = 10;
+
     private final GraphDatabaseService graphDb;
-    private final Queue<Node> nodes;
+    private final NodePool nodes;
+    private final PropertyShape shape;
     private final Random r;
+    private final TraceStream trace;
+    private final int txSize;
     private int ops;
 
-    private int reads;
-    private int writes;
+    private final WorkerResult result;
+
+    public PropertyAddWorker( WorkerContext context, int ops )
+    {
+        this( context, ops, 1 );
+    }
 
-    public PropertyAddWorker( GraphDatabaseService graphDb, Queue<Node> nodes, int ops )
+    /**
+     * @param txSize The operations per transaction, all in one if not
+     *            positive
+     */
+    public PropertyAddWorker( WorkerContext context, int ops, int txSize )
     {
-        this.graphDb = graphDb;
-        this.nodes = nodes;
-        this.r = new Random();
+        this.graphDb = context.getGraphDb();
+        this.nodes = context.getNodes();
+        this.shape = context.getPropertyShape();
+        this.r = context.newRandom();
+        this.trace = context.newTrace();
         this.ops = ops;
+        this.txSize = txSize > 0 ? txSize : Math.max( ops, 1 );
 
-        this.reads = 0;
-        this.writes = 0;
+        this.result = context.newResult();
     }
 
     @Override
-    public int[] call() throws Exception
+    public WorkerResult call() throws Exception
     {
-        long time = System.currentTimeMillis();
-        while ( ops-- > 0 )
+        long time = System.nanoTime();
+        while ( ops > 0 )
         {
+            int batch = Math.min( txSize, ops );
+            ops -= batch;
+            boolean success = false;
+            result.beginBatch();
             Transaction tx = graphDb.beginTx();
+            trace.begin();
             try
             {
-                if ( r.nextBoolean() )
-                {
-                    addPropertyToNode();
-                }
-                else
+                for ( int i = 0; i < batch; i++ )
                 {
-//                    addPropertyToRelationship();
+                    long start = System.nanoTime();
+                    PropertyContainer entity = pickEntity();
+                    if ( entity == null )
+                    {
+                        continue;
+                    }
+                    if ( r.nextDouble() < shape.getUpdateShare() )
+                    {
+                        updateProperties( entity );
+                        result.record( Operation.PROPERTY_UPDATE,
+                                System.nanoTime() - start );
+                    }
+                    else
+                    {
+                        addProperties( entity );
+                        result.record( Operation.PROPERTY_SET,
+                                System.nanoTime() - start );
+                    }
                 }
                 tx.success();
+                success = true;
             }
-            catch ( Exception e )
+            catch ( NotFoundException e )
             {
-                tx.failure();
-                throw e;
+                // The entity was deleted by another worker after we picked it
+                result.failed();
             }
-            finally
+            catch ( DeadlockDetectedException e )
             {
-                tx.finish();
+                // Picked to break a deadlock with another worker
+                result.failed();
             }
+            catch ( RuntimeException e )
+            {
+                // Not a conflict with the other workers, give up but keep
+                // what was done up to here
+                e.printStackTrace();
+                result.aborted();
+                ops = 0;
+            }
+            Batches.end( tx, success, result, trace );
         }
-        int[] result = new int[3];
-        result[0] = reads;
-        result[1] = writes;
-        result[2] = (int) (System.currentTimeMillis() - time);
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
         return result;
     }
 
-    private void addPropertyToNode()
+    /**
+     * @return A random relationship as often as the shape says, a random
+     *         node otherwise or if none with relationships is found, null if
+     *         the pool is empty
+     */
+    private PropertyContainer pickEntity()
     {
-        int offset = r.nextInt( nodes.size() );
-        boolean createNew = r.nextBoolean();
-        String propToAdd = null;
-        while ( offset-- > 0 )
-        {
-            Node temp = nodes.remove();
-            if ( createNew && propToAdd == null
-                 && temp.getPropertyKeys().iterator().hasNext() )
+        if ( r.nextDouble() < shape.getRelationshipShare() )
+        {
+            for ( int i = 0; i < RELATIONSHIP_ATTEMPTS; i++ )
             {
-                propToAdd = temp.getPropertyKeys().iterator().next();
-                reads += 1;
-                createNew = false; // we got a name, no need to look anymore
+                long nodeId = nodes.random( r );
+                if ( nodeId == -1 )
+                {
+                    return null;
+                }
+                Relationship rel = RandomRelationships.pick(
+                        graphDb.getNodeById( nodeId ), r );
+                result.addReads( 1 );
+                if ( rel != null )
+                {
+                    return rel;
+                }
             }
-            nodes.add( temp );
         }
-        Node toChange = nodes.remove();
-        if ( propToAdd == null || toChange.hasProperty( propToAdd ) )
+        long nodeId = nodes.random( r );
+        if ( nodeId == -1 )
         {
-            propToAdd = getRandomPropertyName();
+            return null;
         }
-        toChange.setProperty( propToAdd, getRandomPropertyValue() );
-        writes += 1;
+        result.addReads( 1 );
+        return graphDb.getNodeById( nodeId );
     }
 
-    private void addPropertyToRelationship()
+    private void addProperties( PropertyContainer entity )
     {
-        int offset = r.nextInt( nodes.size() );
-        boolean createNew = r.nextBoolean();
-        String propToAdd = null;
-        Node temp = nodes.remove();
-        /*
-         *  We skip at least offset and then grab the first
-         *  node that has a relationship
-         */
-        while ( offset-- > 0 || !temp.hasRelationship() )
-        {
-            if (!temp.hasRelationship()) continue;
-            Relationship rel = temp.getRelationships().iterator().next();
-            if ( createNew && propToAdd == null
-                 && rel.getPropertyKeys().iterator().hasNext() )
+        int count = shape.propertiesPerEntity( r );
+        for ( int i = 0; i < count; i++ )
+        {
+            setProperty( entity, getRandomPropertyName(),
+                    getRandomPropertyValue( shape.type( r ) ) );
+        }
+    }
+
+    /**
+     * Reads properties already there and writes back values derived from
+     * them, adding new ones for what is missing.
+     */
+    private void updateProperties( PropertyContainer entity )
+    {
+        int count = shape.propertiesPerEntity( r );
+        for ( String key : entity.getPropertyKeys() )
+        {
+            if ( count == 0 )
             {
-                propToAdd = rel.getPropertyKeys().iterator().next();
-                reads += 1;
-                createNew = false; // we got a name, no need to look anymore
+                break;
             }
-            nodes.add( temp );
-            temp = nodes.remove();
+            Object value = entity.getProperty( key );
+            result.addReads( 1 );
+            setProperty( entity, key, derive( value ) );
+            count--;
+        }
+        for ( ; count > 0; count-- )
+        {
+            setProperty( entity, getRandomPropertyName(),
+                    getRandomPropertyValue( shape.type( r ) ) );
+        }
+    }
+
+    private void setProperty( PropertyContainer entity, String key,
+            Object value )
+    {
+        trace.propertySet( entity, key, value );
+        entity.setProperty( key, value );
+        result.addWrites( 1 );
+        result.addBytesWritten( sizeOf( value ) );
+    }
+
+    /**
+     * @return A new value of the same type and size as the old one
+     */
+    private Object derive( Object value )
+    {
+        if ( value instanceof Integer )
+        {
+            return (Integer) value + 1;
+        }
+        if ( value instanceof Long )
+        {
+            return (Long) value + 1;
+        }
+        if ( value instanceof Boolean )
+        {
+            return !(Boolean) value;
         }
-        // temp now holds a node that will do
-        if (propToAdd == null)
+        if ( value instanceof String )
         {
-            propToAdd = getRandomPropertyName();
+            String string = (String) value;
+            // Same length, so the update rewrites rather than grows
+            return string.length() == 0 ? string : string.substring( 1 )
+                                                   + Symbols[r.nextInt( Symbols.length )];
         }
-        /*
-         *  We have kind of a problem here. The node has been removed from
-         *  the queue so it is safe. But, its relationships are rooted also
-         *  to another node which might have its relationships removed
-         *  as we stand here, removing the relationship we will choose below.
-         *  I decide to completely disregard this and merrily throw an
-         *  exception. OK?
-         */
-        List<Relationship> thisNodesRels = new LinkedList<Relationship>();
-        for (Relationship rel : temp.getRelationships())
+        if ( value instanceof long[] )
         {
-            thisNodesRels.add( rel );
+            long[] array = ( (long[]) value ).clone();
+            if ( array.length > 0 )
+            {
+                array[r.nextInt( array.length )] = r.nextLong();
+            }
+            return array;
         }
-        thisNodesRels.get( r.nextInt(thisNodesRels.size()) ).setProperty( propToAdd, getRandomPropertyValue() );
+        if ( value instanceof String[] )
+        {
+            String[] array = ( (String[]) value ).clone();
+            if ( array.length > 0 )
+            {
+                int index = r.nextInt( array.length );
+                array[index] = getRandomString( array[index].length() );
+            }
+            return array;
+        }
+        // Some other type, written by someone else
+        return value;
     }
 
     private String getRandomPropertyName()
@@ -169,32 +278,80 @@ public class PropertyAddWorker implements Callable<int[]>
         return UUID.randomUUID().toString();
     }
 
-    private Object getRandomPropertyValue()
+    private Object getRandomPropertyValue( PropertyShape.ValueType type )
     {
-        switch ( r.nextInt( 4 ) )
+        switch ( type )
         {
-        case 0:
+        case INT:
             return r.nextInt();
-        case 1:
+        case LONG:
             return r.nextLong();
-        case 2:
+        case BOOLEAN:
             return r.nextBoolean();
-        case 3:
-            return getRandomString( r.nextInt( 50 ) );
+        case STRING:
+            return getRandomString( shape.valueSize( r ) );
+        case LONG_ARRAY:
+            long[] longs = new long[shape.valueSize( r )];
+            for ( int i = 0; i < longs.length; i++ )
+            {
+                longs[i] = r.nextLong();
+            }
+            return longs;
         default:
-            return new String[] { getRandomString( r.nextInt( 20 ) ), "",
-                    getRandomString( r.nextInt( 20 ) ) };
+            // An array of short strings, its total length the value size
+            int left = shape.valueSize( r );
+            String[] strings = new String[Math.max( 1, left / 16 )];
+            for ( int i = 0; i < strings.length; i++ )
+            {
+                int length = i == strings.length - 1 ? left
+                        : Math.min( left, 16 );
+                strings[i] = getRandomString( length );
+                left -= length;
+            }
+            return strings;
         }
     }
 
     private String getRandomString( int length )
     {
-        StringBuffer acc = new StringBuffer("");
-        int i = 0;
-        while ( i++ < length )
+        char[] chars = new char[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            chars[i] = Symbols[r.nextInt( Symbols.length )];
+        }
+        return new String( chars );
+    }
+
+    /**
+     * @return The bytes of the value as stored, two per char of strings
+     */
+    static long sizeOf( Object value )
+    {
+        if ( value instanceof String )
+        {
+            return ( (String) value ).length() * 2L;
+        }
+        if ( value instanceof long[] )
+        {
+            return ( (long[]) value ).length * 8L;
+        }
+        if ( value instanceof String[] )
+        {
+            long size = 0;
+            for ( String string : (String[]) value )
+            {
+                size += string.length() * 2L;
+            }
+            return size;
+        }
+        if ( value instanceof Long )
+        {
+            return 8;
+        }
+        if ( value instanceof Boolean )
         {
-            acc.append( Symbols[r.nextInt( length )] );
+            return 1;
         }
-        return acc.toString();
+        return 4;
     }
 }
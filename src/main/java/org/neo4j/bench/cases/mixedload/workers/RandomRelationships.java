@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.workers;
+
+import java.util.Random;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Picking a random relationship of a node without loading all of them.
+ */
+final class RandomRelationships
+{
+    // Relationships of a node looked at to pick one, to bound supernodes
+    private static final int CANDIDATES = 32;
+
+    private RandomRelationships()
+    {
+    }
+
+    /**
+     * Reservoir samples one of the first relationships of the node.
+     *
+     * @return The relationship, null if the node has none
+     */
+    static Relationship pick( Node node, Random r )
+    {
+        Relationship picked = null;
+        int seen = 0;
+        for ( Relationship rel : node.getRelationships() )
+        {
+            if ( r.nextInt( ++seen ) == 0 )
+            {
+                picked = rel;
+            }
+            if ( seen == CANDIDATES )
+            {
+                break;
+            }
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.workers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+import org.neo4j.bench.cases.mixedload.trace.TraceStream;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Runs bounded traversals from random nodes of the pool, each one timed as
+ * a query. The walks are breadth first over the core API, node by node, so
+ * what is measured is relationship expansion in the kernel and not the
+ * bookkeeping of a traversal framework.
+ */
+public class TraversalWorker implements Callable<WorkerResult>
+{
+    public enum Query
+    {
+        // Everything within the depth, any type and direction
+        EXPAND( Operation.EXPAND ),
+        // Within the depth, following one random type in one direction
+        FILTERED( Operation.FILTERED_TRAVERSAL ),
+        // The shortest path between two random nodes, up to twice the depth
+        SHORTEST_PATH( Operation.SHORTEST_PATH );
+
+        private final Operation operation;
+
+        private Query( Operation operation )
+        {
+            this.operation = operation;
+        }
+    }
+
+    private final GraphDatabaseService graphDb;
+    private final NodePool nodes;
+    private final Query query;
+    private final int depth;
+    private final Direction direction;
+    private final RelationshipType[] types;
+    private final Random r;
+    private final TraceStream trace;
+    private int ops;
+
+    private final WorkerResult result;
+
+    public TraversalWorker( WorkerContext context, int ops, Query query )
+    {
+        this.graphDb = context.getGraphDb();
+        this.nodes = context.getNodes();
+        this.query = query;
+        this.depth = context.getTraversalDepth();
+        this.direction = context.getTraversalDirection();
+        this.types = context.getRelationshipTypes();
+        this.r = context.newRandom();
+        this.trace = context.newTrace();
+        this.ops = ops;
+
+        this.result = context.newResult();
+    }
+
+    @Override
+    public WorkerResult call() throws Exception
+    {
+        long time = System.nanoTime();
+        while ( ops-- > 0 )
+        {
+            long start = System.nanoTime();
+            try
+            {
+                if ( runQuery() )
+                {
+                    result.record( query.operation, System.nanoTime() - start );
+                }
+            }
+            catch ( NotFoundException e )
+            {
+                // A node on the way was deleted by another worker
+                result.failed();
+            }
+        }
+        result.setElapsedNanos( System.nanoTime() - time );
+        trace.close();
+        return result;
+    }
+
+    private boolean runQuery()
+    {
+        long startId = nodes.random( r );
+        if ( startId == -1 )
+        {
+            return false;
+        }
+        Node start = graphDb.getNodeById( startId );
+        switch ( query )
+        {
+        case EXPAND:
+            trace.expanded( startId, null, Direction.BOTH, depth );
+            expand( start, null, Direction.BOTH, depth, result );
+            return true;
+        case FILTERED:
+            RelationshipType type = types[r.nextInt( types.length )];
+            trace.expanded( startId, type, direction, depth );
+            expand( start, type, direction, depth, result );
+            return true;
+        default:
+            long endId = nodes.random( r );
+            if ( endId == -1 )
+            {
+                return false;
+            }
+            trace.shortestPath( startId, endId, depth * 2 );
+            shortestPath( start, graphDb.getNodeById( endId ), depth * 2,
+                    result );
+            return true;
+        }
+    }
+
+    /**
+     * @param type The only type to follow, null for all of them
+     * @return The number of nodes within the depth, the start included
+     */
+    public static int expand( Node start, RelationshipType type,
+            Direction dir, int depth, WorkerResult result )
+    {
+        Set<Long> visited = new HashSet<Long>();
+        visited.add( start.getId() );
+        List<Node> frontier = new ArrayList<Node>();
+        frontier.add( start );
+        for ( int level = 0; level < depth && !frontier.isEmpty(); level++ )
+        {
+            List<Node> next = new ArrayList<Node>();
+            for ( Node node : frontier )
+            {
+                for ( Relationship rel : type == null ? node.getRelationships( dir )
+                        : node.getRelationships( type, dir ) )
+                {
+                    result.addReads( 1 ); // The relationship
+                    Node other = rel.getOtherNode( node );
+                    if ( visited.add( other.getId() ) )
+                    {
+                        next.add( other );
+                    }
+                }
+            }
+            frontier = next;
+        }
+        result.addReads( visited.size() ); // The nodes
+        result.addVisited( visited.size() );
+        return visited.size();
+    }
+
+    /**
+     * Searches from both ends at once, always expanding the smaller side.
+     *
+     * @return The length of the shortest path, -1 if there is none of at most
+     *         maxLength
+     */
+    public static int shortestPath( Node from, Node to, int maxLength,
+            WorkerResult result )
+    {
+        if ( from.getId() == to.getId() )
+        {
+            return 0;
+        }
+        Set<Long> seenFrom = new HashSet<Long>();
+        Set<Long> seenTo = new HashSet<Long>();
+        seenFrom.add( from.getId() );
+        seenTo.add( to.getId() );
+        List<Node> frontierFrom = new ArrayList<Node>();
+        List<Node> frontierTo = new ArrayList<Node>();
+        frontierFrom.add( from );
+        frontierTo.add( to );
+        try
+        {
+            for ( int length = 1; length <= maxLength; length++ )
+            {
+                boolean forward = frontierFrom.size() <= frontierTo.size();
+                Set<Long> seen = forward ? seenFrom : seenTo;
+                Set<Long> otherSide = forward ? seenTo : seenFrom;
+                List<Node> next = new ArrayList<Node>();
+                for ( Node node : forward ? frontierFrom : frontierTo )
+                {
+                    for ( Relationship rel : node.getRelationships( Direction.BOTH ) )
+                    {
+                        result.addReads( 1 ); // The relationship
+                        Node other = rel.getOtherNode( node );
+                        if ( otherSide.contains( other.getId() ) )
+                        {
+                            return length;
+                        }
+                        if ( seen.add( other.getId() ) )
+                        {
+                            next.add( other );
+                        }
+                    }
+                }
+                if ( next.isEmpty() )
+                {
+                    return -1;
+                }
+                if ( forward )
+                {
+                    frontierFrom = next;
+                }
+                else
+                {
+                    frontierTo = next;
+                }
+            }
+            return -1;
+        }
+        finally
+        {
+            int visited = seenFrom.size() + seenTo.size();
+            result.addReads( visited ); // The nodes
+            result.addVisited( visited );
+        }
+    }
+}
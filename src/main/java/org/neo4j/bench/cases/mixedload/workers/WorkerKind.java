@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.mixedload.workers;
+
+import java.util.concurrent.Callable;
+
+import org.neo4j.bench.cases.mixedload.WorkerContext;
+import org.neo4j.bench.cases.mixedload.WorkerResult;
+
+/**
+ * The kinds of workers there are, so that drivers can create them by name.
+ */
+public enum WorkerKind
+{
+    CREATE( true )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new CreateWorker( context, ops, txSize );
+        }
+    },
+    DELETE( true )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new DeleteWorker( context, ops, txSize );
+        }
+    },
+    PROPERTY_ADD( true )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new PropertyAddWorker( context, ops, txSize );
+        }
+    },
+    BULK_CREATE( true )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new BulkCreateWorker( context, ops, txSize );
+        }
+    },
+    BULK_READ( false )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            // Always a full sweep of reads, neither applies
+            return new BulkReaderWorker( context );
+        }
+    },
+    EXPAND( false )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new TraversalWorker( context, ops,
+                    TraversalWorker.Query.EXPAND );
+        }
+    },
+    TRAVERSE( false )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new TraversalWorker( context, ops,
+                    TraversalWorker.Query.FILTERED );
+        }
+    },
+    SHORTEST_PATH( false )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new TraversalWorker( context, ops,
+                    TraversalWorker.Query.SHORTEST_PATH );
+        }
+    },
+    LOOKUP( false )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new PointLookupWorker( context, ops );
+        }
+    },
+    CHURN( true )
+    {
+        @Override
+        public Callable<WorkerResult> newWorker( WorkerContext context,
+                int ops, int txSize )
+        {
+            return new ChurnWorker( context, ops, txSize );
+        }
+    };
+
+    private final boolean writer;
+
+    private WorkerKind( boolean writer )
+    {
+        this.writer = writer;
+    }
+
+    /**
+     * @param ops The number of operations the worker performs
+     * @param txSize The operations per transaction, all in one if not
+     *            positive
+     */
+    public abstract Callable<WorkerResult> newWorker( WorkerContext context,
+            int ops, int txSize );
+
+    /**
+     * @return True for the kinds that write and take a transaction size
+     */
+    public boolean isWriter()
+    {
+        return writer;
+    }
+}
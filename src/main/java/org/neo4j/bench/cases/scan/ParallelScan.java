@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.neo4j.bench.cases.mixedload.ExecutorStrategy;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Reads the whole graph from a number of threads. The node id space is cut
+ * in many more ranges than there are threads, each read node by node with
+ * getNodeById, skipping the ids of deleted nodes, along with all the
+ * relationships and properties of every node. With a work stealing executor
+ * threads that finish their ranges early help out with the rest.
+ */
+public class ParallelScan
+{
+    // Ranges per thread, small enough for stealing to even out the load
+    private static final int RANGES_PER_THREAD = 16;
+
+    private final GraphDatabaseService graphDb;
+    private final long highestId;
+    private final ExecutorStrategy executorStrategy;
+
+    /**
+     * @param highestId The highest node id to read
+     */
+    public ParallelScan( GraphDatabaseService graphDb, long highestId,
+            ExecutorStrategy executorStrategy )
+    {
+        this.graphDb = graphDb;
+        this.highestId = highestId;
+        this.executorStrategy = executorStrategy;
+    }
+
+    public ScanResult scan( int threads ) throws Exception
+    {
+        ExecutorService service = executorStrategy.create( threads );
+        long start = System.nanoTime();
+        ScanResult total = new ScanResult();
+        try
+        {
+            long idCount = highestId + 1;
+            int ranges = (int) Math.max( 1, Math.min( (long) threads
+                                                      * RANGES_PER_THREAD,
+                    idCount ) );
+            List<Future<ScanResult>> parts = new ArrayList<Future<ScanResult>>();
+            for ( int i = 0; i < ranges; i++ )
+            {
+                final long from = idCount * i / ranges;
+                final long to = idCount * ( i + 1 ) / ranges;
+                parts.add( service.submit( new Callable<ScanResult>()
+                {
+                    @Override
+                    public ScanResult call()
+                    {
+                        return scanRange( from, to );
+                    }
+                } ) );
+            }
+            for ( Future<ScanResult> part : parts )
+            {
+                total.add( part.get() );
+            }
+        }
+        finally
+        {
+            service.shutdown();
+        }
+        total.setElapsedNanos( System.nanoTime() - start );
+        return total;
+    }
+
+    private ScanResult scanRange( long from, long to )
+    {
+        ScanResult result = new ScanResult();
+        for ( long id = from; id < to; id++ )
+        {
+            Node node;
+            try
+            {
+                node = graphDb.getNodeById( id );
+            }
+            catch ( NotFoundException e )
+            {
+                result.hole();
+                continue;
+            }
+            long relationships = 0;
+            long properties = 0;
+            for ( Relationship rel : node.getRelationships() )
+            {
+                relationships++;
+                for ( String key : rel.getPropertyKeys() )
+                {
+                    rel.getProperty( key );
+                    properties++;
+                }
+            }
+            for ( String key : node.getPropertyKeys() )
+            {
+                node.getProperty( key );
+                properties++;
+            }
+            result.node( relationships, properties );
+        }
+        return result;
+    }
+}
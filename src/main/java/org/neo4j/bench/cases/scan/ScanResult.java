@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.scan;
+
+/**
+ * What a {@link ParallelScan} read and how long it took. Relationships are
+ * counted from both their nodes.
+ */
+public class ScanResult
+{
+    private long nodes;
+    private long relationships;
+    private long properties;
+    private long holes;
+    private long elapsedNanos;
+
+    void node( long relationshipCount, long propertyCount )
+    {
+        nodes++;
+        relationships += relationshipCount;
+        properties += propertyCount;
+    }
+
+    void hole()
+    {
+        holes++;
+    }
+
+    void add( ScanResult other )
+    {
+        nodes += other.nodes;
+        relationships += other.relationships;
+        properties += other.properties;
+        holes += other.holes;
+    }
+
+    void setElapsedNanos( long elapsedNanos )
+    {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    public long getRelationships()
+    {
+        return relationships;
+    }
+
+    public long getProperties()
+    {
+        return properties;
+    }
+
+    /**
+     * @return Ids in the range that had no node
+     */
+    public long getHoles()
+    {
+        return holes;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    public double getNodesPerSecond()
+    {
+        return nodes * 1000000000.0 / Math.max( elapsedNanos, 1 );
+    }
+
+    public double getRelationshipsPerSecond()
+    {
+        return relationships * 1000000000.0 / Math.max( elapsedNanos, 1 );
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+                "%d nodes (%d holes), %d relationships, %d properties in %d ms: %.0f nodes/sec, %.0f relationships/sec",
+                nodes, holes, relationships, properties, elapsedNanos / 1000000,
+                getNodesPerSecond(), getRelationshipsPerSecond() );
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.cases.topology;
+
+import java.util.Random;
+
+import org.neo4j.bench.cases.bulkimport.DegreeDistribution;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * The shape of the generated graphs. A topology decides how many
+ * relationships a node starts and which node each of them ends at, using
+ * only the index of the start node and the number of nodes, so that
+ * generators on any number of threads, or workers adding to a live graph
+ * whose node ids serve as indexes, all draw the same shape.
+ *
+ * Topologies are parsed from specs of a generator and options, separated by
+ * commas:
+ *
+ * <pre>
+ * random:&lt;degrees&gt;      uniform targets, degrees as in {@link DegreeDistribution}
+ * ba:&lt;m&gt;               Barabasi-Albert, m relationships per node
+ * ws:&lt;k&gt;:&lt;beta&gt;        Watts-Strogatz, k ring neighbours, rewired with beta
+ * sbm:&lt;blocks&gt;:&lt;degree&gt;:&lt;in&gt;  stochastic blocks, in of the relationships
+ *                       staying inside the block
+ * supernodes=&lt;n&gt;:&lt;share&gt; the first n nodes get share of all relationships
+ * types=&lt;n&gt;            n relationship types instead of one
+ * </pre>
+ *
+ * for example "ba:4,supernodes=10:0.05,types=8".
+ */
+public abstract class Topology
+{
+    private final String spec;
+    private int supernodes;
+    private double supernodeShare;
+    private RelationshipType[] types;
+
+    private Topology( String spec )
+    {
+        this.spec = spec;
+        this.types = new RelationshipType[] { DynamicRelationshipType.withName( "TYPE_0" ) };
+    }
+
+    /**
+     * @return The number of relationships the node starts
+     */
+    public abstract int degree( long source, Random r );
+
+    /**
+     * @return The index of the other end of a relationship from source,
+     *         never source itself unless there is no other node
+     */
+    public long target( long source, long nodeCount, Random r )
+    {
+        if ( nodeCount <= 1 )
+        {
+            return 0;
+        }
+        long result;
+        if ( supernodes > 0 && r.nextDouble() < supernodeShare )
+        {
+            result = nextLong( r, Math.min( supernodes, nodeCount ) );
+        }
+        else
+        {
+            result = shapedTarget( source, nodeCount, r );
+        }
+        return result == source ? ( source + 1 ) % nodeCount : result;
+    }
+
+    /**
+     * @return The type of the next relationship, one of the types picked
+     *         uniformly
+     */
+    public RelationshipType type( Random r )
+    {
+        return types[r.nextInt( types.length )];
+    }
+
+    /**
+     * @return All the types relationships are given
+     */
+    public RelationshipType[] getTypes()
+    {
+        return types.clone();
+    }
+
+    /**
+     * @return The spec with anything that does not belong in a file name
+     *         replaced, to tag results with
+     */
+    public String getName()
+    {
+        return spec.replaceAll( "[^A-Za-z0-9.-]", "_" );
+    }
+
+    protected abstract long shapedTarget( long source, long nodeCount,
+            Random r );
+
+    public static Topology parse( String spec )
+    {
+        String[] parts = spec.trim().split( "," );
+        Topology result = parseGenerator( spec.trim(), parts[0].trim() );
+        for ( int i = 1; i < parts.length; i++ )
+        {
+            String[] option = parts[i].trim().split( "=" );
+            if ( "supernodes".equals( option[0] ) )
+            {
+                String[] values = option[1].split( ":" );
+                result.supernodes = Integer.parseInt( values[0] );
+                result.supernodeShare = values.length > 1 ? Double.parseDouble( values[1] )
+                        : 0.01;
+            }
+            else if ( "types".equals( option[0] ) )
+            {
+                result.types = new RelationshipType[Integer.parseInt( option[1] )];
+                for ( int j = 0; j < result.types.length; j++ )
+                {
+                    result.types[j] = DynamicRelationshipType.withName( "TYPE_"
+                                                                        + j );
+                }
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Unknown topology option "
+                                                    + parts[i] );
+            }
+        }
+        return result;
+    }
+
+    private static Topology parseGenerator( String spec, String generator )
+    {
+        int colon = generator.indexOf( ':' );
+        String name = colon == -1 ? generator : generator.substring( 0, colon );
+        String[] args = colon == -1 ? new String[0]
+                : generator.substring( colon + 1 ).split( ":" );
+        if ( "random".equals( name ) )
+        {
+            final DegreeDistribution degrees = DegreeDistribution.parse(
+                    colon == -1 ? "constant:1" : generator.substring( colon + 1 ) );
+            return new Topology( spec )
+            {
+                @Override
+                public int degree( long source, Random r )
+                {
+                    return degrees.sample( r );
+                }
+
+                @Override
+                protected long shapedTarget( long source, long nodeCount,
+                        Random r )
+                {
+                    return nextLong( r, nodeCount );
+                }
+            };
+        }
+        if ( "ba".equals( name ) )
+        {
+            final int m = args.length > 0 ? Integer.parseInt( args[0] ) : 2;
+            return new Topology( spec )
+            {
+                @Override
+                public int degree( long source, Random r )
+                {
+                    return source == 0 ? 0 : m;
+                }
+
+                @Override
+                protected long shapedTarget( long source, long nodeCount,
+                        Random r )
+                {
+                    // A node older than the source, as likely as its expected
+                    // degree by then, which grows as 1 / sqrt( index ). This
+                    // is what preferential attachment amounts to on average
+                    // and needs no shared state.
+                    double u = r.nextDouble();
+                    long older = Math.min( source, nodeCount );
+                    return older == 0 ? nextLong( r, nodeCount )
+                            : (long) ( older * u * u );
+                }
+            };
+        }
+        if ( "ws".equals( name ) )
+        {
+            final int k = args.length > 0 ? Integer.parseInt( args[0] ) : 4;
+            final double beta = args.length > 1 ? Double.parseDouble( args[1] )
+                    : 0.1;
+            return new Topology( spec )
+            {
+                @Override
+                public int degree( long source, Random r )
+                {
+                    return Math.max( k / 2, 1 );
+                }
+
+                @Override
+                protected long shapedTarget( long source, long nodeCount,
+                        Random r )
+                {
+                    if ( r.nextDouble() < beta )
+                    {
+                        return nextLong( r, nodeCount );
+                    }
+                    // One of the next k / 2 on the ring
+                    return ( source + 1 + r.nextInt( Math.max( k / 2, 1 ) ) )
+                           % nodeCount;
+                }
+            };
+        }
+        if ( "sbm".equals( name ) )
+        {
+            final int blocks = args.length > 0 ? Integer.parseInt( args[0] ) : 8;
+            final int degree = args.length > 1 ? Integer.parseInt( args[1] ) : 4;
+            final double inside = args.length > 2 ? Double.parseDouble( args[2] )
+                    : 0.9;
+            return new Topology( spec )
+            {
+                @Override
+                public int degree( long source, Random r )
+                {
+                    return degree;
+                }
+
+                @Override
+                protected long shapedTarget( long source, long nodeCount,
+                        Random r )
+                {
+                    if ( r.nextDouble() >= inside )
+                    {
+                        return nextLong( r, nodeCount );
+                    }
+                    long blockSize = Math.max( ( nodeCount + blocks - 1 ) / blocks, 1 );
+                    long blockStart = Math.min( source, nodeCount - 1 ) / blockSize
+                                      * blockSize;
+                    return blockStart
+                           + nextLong( r, Math.min( blockSize, nodeCount
+                                                               - blockStart ) );
+                }
+            };
+        }
+        throw new IllegalArgumentException( "Unknown topology " + spec );
+    }
+
+    private static long nextLong( Random r, long bound )
+    {
+        return (long) ( r.nextDouble() * bound );
+    }
+
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+}
@@ -25,8 +25,13 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -35,28 +40,47 @@ import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.ScalabilitySweep;
 import org.neo4j.bench.cases.mixedload.Stats;
+import org.neo4j.bench.metrics.RegressionDetector;
+import org.neo4j.bench.metrics.UniversalScalabilityLaw;
 
 public class GenerateOpsPerSecChart
 {
-    private static final int TESTS_TO_DRAW = 10;
+    public static final int TESTS_TO_DRAW = 10;
     public static final String OPS_PER_SECOND_FILE_ARG = "ops-per-sec-file";
     public static final String CHART_FILE_ARG = "chart-file";
+    public static final String SCALABILITY_CHART_FILE_ARG = "scalability-chart-file";
+    // The rates checked for regressions, in the order of values()
+    private static final String[] RATES = { "avg reads", "avg writes",
+            "sustained reads", "sustained writes" };
+    private static final double[] DETECTED_PERCENTILES = { 50, 99 };
 
-    private String inputFilename;
     private String outputFilename;
     private boolean alarm;
     private SortedSet<Stats> data;
     private Set<Stats> dataToDraw;
-    private double threshold;
+    private RegressionDetector detector;
 
     public GenerateOpsPerSecChart( String inputFilename, String outputFilename,
             double threshold )
     {
-        this.inputFilename = inputFilename;
+        this( loadOpsPerSecond( inputFilename ), outputFilename, threshold );
+    }
+
+    /**
+     * @param data The runs to chart and check, in the order of the set, the
+     *            latest last
+     */
+    public GenerateOpsPerSecChart( SortedSet<Stats> data,
+            String outputFilename, double threshold )
+    {
         this.outputFilename = outputFilename;
-        this.threshold = threshold;
-        data = loadOpsPerSecond( this.inputFilename );
+        this.detector = new RegressionDetector( threshold, 2, 5, 0.05 );
+        this.data = data;
     }
 
     public boolean process() throws Exception
@@ -76,26 +100,123 @@ public class GenerateOpsPerSecChart
         {
             dataToDraw = data;
         }
-        alarm = detectDegradation( threshold ) != null;
+        alarm = !detectDegradation().isEmpty();
         generateChart();
         return alarm;
     }
 
-    private Stats detectDegradation( double threshold )
+    /**
+     * Replaces the detector made of the threshold alone, with the default
+     * noise factor, history and significance.
+     */
+    public void setDetector( RegressionDetector detector )
+    {
+        this.detector = detector;
+    }
+
+    /**
+     * Checks every rate and latency percentile of the latest run, all its
+     * trials, against the runs before it.
+     *
+     * @return The regressed metrics, empty if there are none
+     */
+    private List<RegressionDetector.Verdict> detectDegradation()
+    {
+        // The trials of every run, runs in name order
+        Map<String, List<Stats>> runs = new LinkedHashMap<String, List<Stats>>();
+        for ( Stats stats : data )
+        {
+            List<Stats> trials = runs.get( stats.getRunName() );
+            if ( trials == null )
+            {
+                trials = new ArrayList<Stats>();
+                runs.put( stats.getRunName(), trials );
+            }
+            trials.add( stats );
+        }
+        List<List<Stats>> history = new ArrayList<List<Stats>>( runs.values() );
+        List<Stats> latestRun = history.remove( history.size() - 1 );
+        System.out.println( "Latest run test is "
+                            + latestRun.get( 0 ).getRunName() );
+
+        List<RegressionDetector.Verdict> result = new ArrayList<RegressionDetector.Verdict>();
+        for ( int metric = 0; metric < RATES.length; metric++ )
+        {
+            check( RATES[metric], true, metric, null, 0, history, latestRun,
+                    result );
+        }
+        for ( Operation operation : Operation.values() )
+        {
+            for ( double percentile : DETECTED_PERCENTILES )
+            {
+                check( String.format( "%s p%.0f latency",
+                        operation.name().toLowerCase(), percentile ), false, -1, operation, percentile,
+                        history, latestRun, result );
+            }
+        }
+        return result;
+    }
+
+    private void check( String name, boolean higherIsBetter, int rate,
+            Operation operation, double percentile, List<List<Stats>> history,
+            List<Stats> latestRun, List<RegressionDetector.Verdict> result )
+    {
+        List<double[]> samples = new ArrayList<double[]>();
+        for ( List<Stats> run : history )
+        {
+            samples.add( values( run, rate, operation, percentile ) );
+        }
+        double[] latest = values( latestRun, rate, operation, percentile );
+        if ( latest.length == 0 )
+        {
+            return;
+        }
+        RegressionDetector.Verdict verdict = detector.check( name,
+                higherIsBetter, samples, latest );
+        if ( verdict.isRegression() )
+        {
+            System.out.println( verdict );
+            result.add( verdict );
+        }
+    }
+
+    /**
+     * @return The rate, or latency if rate is negative, of every trial that
+     *         has it
+     */
+    private static double[] values( List<Stats> trials, int rate,
+            Operation operation, double percentile )
     {
-        Stats latestRun = data.last();
-        System.out.println( "Latest run test is " + latestRun );
-        for ( Stats previous : data.headSet( latestRun ) )
-        {
-            double previousReads = previous.getAvgReadsPerSec();
-            double previousWrites = previous.getAvgWritePerSec();
-            if ( previousReads * ( 1 + threshold ) > latestRun.getAvgReadsPerSec()
-                 || previousWrites * ( 1 + threshold ) > latestRun.getAvgWritePerSec() )
+        double[] values = new double[trials.size()];
+        int count = 0;
+        for ( Stats trial : trials )
+        {
+            double value;
+            switch ( rate )
+            {
+            case 0:
+                value = trial.getAvgReadsPerSec();
+                break;
+            case 1:
+                value = trial.getAvgWritePerSec();
+                break;
+            case 2:
+                value = trial.getSustainedReadsPerSec();
+                break;
+            case 3:
+                value = trial.getSustainedWritesPerSec();
+                break;
+            default:
+                value = trial.getLatency( operation, percentile );
+            }
+            if ( !Double.isNaN( value ) )
             {
-                return previous;
+                values[count++] = value;
             }
         }
-        return null;
+        double[] result = new double[count];
+        System.arraycopy( values, 0, result, 0, count );
+        return result;
     }
 
     private void generateChart() throws Exception
@@ -115,6 +236,71 @@ public class GenerateOpsPerSecChart
                 (int) dimensions.getWidth(), (int) dimensions.getHeight() );
     }
 
+    /**
+     * Plots throughput against concurrency as measured, as fitted by the
+     * Universal Scalability Law and as it would be with linear scaling.
+     */
+    public static void generateScalabilityChart( ScalabilitySweep sweep,
+            String outputFilename ) throws Exception
+    {
+        int[] concurrency = sweep.getConcurrency();
+        double[] throughput = sweep.getThroughput();
+        UniversalScalabilityLaw usl = sweep.fit();
+        XYSeries measured = new XYSeries( "measured" );
+        XYSeries fitted = new XYSeries( String.format(
+                "USL sigma=%.4f kappa=%.5f", usl.getSigma(), usl.getKappa() ) );
+        XYSeries linear = new XYSeries( "linear" );
+        for ( int i = 0; i < concurrency.length; i++ )
+        {
+            measured.add( concurrency[i], throughput[i] );
+            fitted.add( concurrency[i], usl.predict( concurrency[i] ) );
+            linear.add( concurrency[i], usl.predict( 1 ) * concurrency[i] );
+        }
+        XYSeriesCollection dataset = new XYSeriesCollection();
+        dataset.addSeries( measured );
+        dataset.addSeries( fitted );
+        dataset.addSeries( linear );
+        JFreeChart chart = ChartFactory.createXYLineChart( "Scalability",
+                "Concurrent workers", "Operations per sec", dataset,
+                PlotOrientation.VERTICAL, true, true, false );
+        ChartUtilities.saveChartAsPNG( new File( outputFilename ), chart,
+                1600, 900 );
+    }
+
+    /**
+     * Plots every metric of one case over its latest runs, whatever the
+     * case and its metrics are.
+     *
+     * @param runs Values by run, case and metric, as in a MetricsFile
+     */
+    public static void generateMetricsChart(
+            SortedMap<String, Map<String, Map<String, Double>>> runs,
+            String caseName, String outputFilename ) throws Exception
+    {
+        List<String> withCase = new ArrayList<String>();
+        for ( Map.Entry<String, Map<String, Map<String, Double>>> run : runs.entrySet() )
+        {
+            if ( run.getValue().containsKey( caseName ) )
+            {
+                withCase.add( run.getKey() );
+            }
+        }
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        for ( String run : withCase.subList(
+                Math.max( 0, withCase.size() - TESTS_TO_DRAW ), withCase.size() ) )
+        {
+            for ( Map.Entry<String, Double> metric : runs.get( run ).get(
+                    caseName ).entrySet() )
+            {
+                dataset.addValue( metric.getValue(), metric.getKey(), run );
+            }
+        }
+        JFreeChart chart = ChartFactory.createBarChart( caseName, "Run",
+                "Value", dataset, PlotOrientation.VERTICAL, true, true, false );
+        ChartUtilities.saveChartAsPNG( new File( outputFilename ), chart,
+                1600, 900 );
+    }
+
     private DefaultCategoryDataset generateDataset()
     {
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The relative change of the mean of a metric from a baseline sample to a
+ * candidate sample, with a bootstrapped confidence interval. Both samples are
+ * resampled with replacement and the change computed for every resample, so
+ * nothing is assumed of how the values are distributed.
+ */
+public class Comparison
+{
+    public static final int DEFAULT_RESAMPLES = 10000;
+
+    private final double baselineMean;
+    private final double candidateMean;
+    private final double change;
+    private final double low;
+    private final double high;
+    private final double confidence;
+
+    private Comparison( double baselineMean, double candidateMean,
+            double low, double high, double confidence )
+    {
+        this.baselineMean = baselineMean;
+        this.candidateMean = candidateMean;
+        this.change = relativeChange( baselineMean, candidateMean );
+        this.low = low;
+        this.high = high;
+        this.confidence = confidence;
+    }
+
+    /**
+     * @param confidence The confidence of the interval, e.g. 0.95
+     * @param r Drives the resampling, seed it for repeatable intervals
+     */
+    public static Comparison of( double[] baseline, double[] candidate,
+            int resamples, double confidence, Random r )
+    {
+        if ( baseline.length == 0 || candidate.length == 0 )
+        {
+            throw new IllegalArgumentException( "Need values of both" );
+        }
+        double[] changes = new double[resamples];
+        for ( int i = 0; i < resamples; i++ )
+        {
+            changes[i] = relativeChange( resampledMean( baseline, r ),
+                    resampledMean( candidate, r ) );
+        }
+        Arrays.sort( changes );
+        double tail = ( 1 - confidence ) / 2;
+        return new Comparison( mean( baseline ), mean( candidate ),
+                changes[(int) Math.floor( tail * ( resamples - 1 ) )],
+                changes[(int) Math.ceil( ( 1 - tail ) * ( resamples - 1 ) )],
+                confidence );
+    }
+
+    public double getBaselineMean()
+    {
+        return baselineMean;
+    }
+
+    public double getCandidateMean()
+    {
+        return candidateMean;
+    }
+
+    /**
+     * @return The change of the mean relative to the baseline, 0.03 for 3%
+     */
+    public double getChange()
+    {
+        return change;
+    }
+
+    public double getLow()
+    {
+        return low;
+    }
+
+    public double getHigh()
+    {
+        return high;
+    }
+
+    /**
+     * @return true if the interval does not include "no change"
+     */
+    public boolean isSignificant()
+    {
+        return low > 0 || high < 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "%.2f -> %.2f: %+.2f%% (%.0f%% CI %+.2f%% .. %+.2f%%)%s",
+                baselineMean, candidateMean, change * 100, confidence * 100,
+                low * 100, high * 100, isSignificant() ? " *" : "" );
+    }
+
+    public static double mean( double[] values )
+    {
+        double sum = 0;
+        for ( double value : values )
+        {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double resampledMean( double[] values, Random r )
+    {
+        double sum = 0;
+        for ( int i = 0; i < values.length; i++ )
+        {
+            sum += values[r.nextInt( values.length )];
+        }
+        return sum / values.length;
+    }
+
+    private static double relativeChange( double from, double to )
+    {
+        if ( from == 0 )
+        {
+            return to == 0 ? 0 : Double.POSITIVE_INFINITY * Math.signum( to );
+        }
+        return ( to - from ) / Math.abs( from );
+    }
+}
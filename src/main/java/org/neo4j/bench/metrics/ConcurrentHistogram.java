@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Histogram} that many threads can add to at the same time without
+ * locking. Meant for aggregation: workers record into their own plain
+ * histograms and add them here in one go when they are done.
+ */
+public class ConcurrentHistogram
+{
+    private final AtomicLongArray counts;
+    private final AtomicLong min;
+    private final AtomicLong max;
+    // The double bits of the sum of all values
+    private final AtomicLong sum;
+
+    public ConcurrentHistogram()
+    {
+        counts = new AtomicLongArray( Histogram.COUNTS_LENGTH );
+        min = new AtomicLong( Long.MAX_VALUE );
+        max = new AtomicLong( 0 );
+        sum = new AtomicLong( Double.doubleToLongBits( 0 ) );
+    }
+
+    public void record( long value )
+    {
+        if ( value < 0 )
+        {
+            value = 0;
+        }
+        counts.incrementAndGet( Histogram.indexFor( value ) );
+        updateMinMaxSum( value, value, value );
+    }
+
+    public void add( Histogram other )
+    {
+        if ( other.getTotalCount() == 0 )
+        {
+            return;
+        }
+        for ( int i = 0; i < Histogram.COUNTS_LENGTH; i++ )
+        {
+            long count = other.countAt( i );
+            if ( count != 0 )
+            {
+                counts.addAndGet( i, count );
+            }
+        }
+        updateMinMaxSum( other.getMin(), other.getMax(), other.getSum() );
+    }
+
+    private void updateMinMaxSum( long otherMin, long otherMax, double otherSum )
+    {
+        long current;
+        while ( otherMin < ( current = min.get() ) )
+        {
+            if ( min.compareAndSet( current, otherMin ) )
+            {
+                break;
+            }
+        }
+        while ( otherMax > ( current = max.get() ) )
+        {
+            if ( max.compareAndSet( current, otherMax ) )
+            {
+                break;
+            }
+        }
+        while ( true )
+        {
+            current = sum.get();
+            double updated = Double.longBitsToDouble( current ) + otherSum;
+            if ( sum.compareAndSet( current, Double.doubleToLongBits( updated ) ) )
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return A plain histogram with what was added so far. Additions racing
+     *         with this call may be partially visible.
+     */
+    public Histogram snapshot()
+    {
+        long[] copy = new long[Histogram.COUNTS_LENGTH];
+        for ( int i = 0; i < copy.length; i++ )
+        {
+            copy[i] = counts.get( i );
+        }
+        Histogram result = new Histogram();
+        result.addRaw( copy, min.get(), max.get(),
+                Double.longBitsToDouble( sum.get() ) );
+        return result;
+    }
+}
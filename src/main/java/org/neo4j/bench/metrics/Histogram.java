@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A histogram of non negative long values (typically latencies in
+ * nanoseconds) with log-linear buckets, in the spirit of HdrHistogram. Every
+ * power of two range is split in {@link #SUB_BUCKET_HALF_COUNT} linear sub
+ * buckets, so any recorded value is reported with a relative error of at
+ * most 1 / {@link #SUB_BUCKET_HALF_COUNT} (about 1.6%) over the whole range
+ * of a long.
+ *
+ * Recording never allocates. Instances are not thread safe, each worker is
+ * expected to record into its own and merge them with {@link #add(Histogram)}.
+ */
+public class Histogram
+{
+    static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    // Values up to Long.MAX_VALUE, whose highest bit is the 63rd
+    static final int BUCKET_COUNT = 64 - SUB_BUCKET_BITS + 1;
+    static final int COUNTS_LENGTH = ( BUCKET_COUNT + 1 ) * SUB_BUCKET_HALF_COUNT;
+
+    private final long[] counts;
+    private long totalCount;
+    private long min;
+    private long max;
+    private double sum;
+
+    public Histogram()
+    {
+        counts = new long[COUNTS_LENGTH];
+        reset();
+    }
+
+    public void record( long value )
+    {
+        recordCount( value, 1 );
+    }
+
+    public void recordCount( long value, long count )
+    {
+        if ( value < 0 )
+        {
+            value = 0;
+        }
+        counts[indexFor( value )] += count;
+        totalCount += count;
+        sum += (double) value * count;
+        if ( value < min )
+        {
+            min = value;
+        }
+        if ( value > max )
+        {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds all the values recorded in other to this histogram.
+     */
+    public void add( Histogram other )
+    {
+        if ( other.totalCount == 0 )
+        {
+            return;
+        }
+        for ( int i = 0; i < COUNTS_LENGTH; i++ )
+        {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min( min, other.min );
+        max = Math.max( max, other.max );
+    }
+
+    public void reset()
+    {
+        Arrays.fill( counts, 0 );
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public Histogram copy()
+    {
+        Histogram result = new Histogram();
+        result.add( this );
+        return result;
+    }
+
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    public long getMin()
+    {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return The highest value equivalent to the value at the given
+     *         percentile, never more than the maximum recorded value
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+        if ( totalCount == 0 )
+        {
+            return 0;
+        }
+        long countAtPercentile = (long) Math.ceil( Math.min( percentile, 100.0 )
+                                                   / 100.0 * totalCount );
+        countAtPercentile = Math.max( countAtPercentile, 1 );
+        long seen = 0;
+        for ( int i = 0; i < COUNTS_LENGTH; i++ )
+        {
+            seen += counts[i];
+            if ( seen >= countAtPercentile )
+            {
+                return Math.min( highestEquivalentValue( i ), max );
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Writes the non empty buckets only, a few hundred bytes for a typical
+     * latency distribution, so that one can be kept with every result.
+     */
+    public void write( DataOutput out ) throws IOException
+    {
+        int nonEmpty = 0;
+        for ( long count : counts )
+        {
+            if ( count != 0 )
+            {
+                nonEmpty++;
+            }
+        }
+        out.writeInt( nonEmpty );
+        for ( int i = 0; i < COUNTS_LENGTH; i++ )
+        {
+            if ( counts[i] != 0 )
+            {
+                out.writeShort( i );
+                out.writeLong( counts[i] );
+            }
+        }
+        out.writeLong( min );
+        out.writeLong( max );
+        out.writeDouble( sum );
+    }
+
+    /**
+     * @return A histogram equal to the one written with
+     *         {@link #write(DataOutput)}
+     */
+    public static Histogram read( DataInput in ) throws IOException
+    {
+        Histogram result = new Histogram();
+        int nonEmpty = in.readInt();
+        for ( int i = 0; i < nonEmpty; i++ )
+        {
+            int index = in.readShort();
+            long count = in.readLong();
+            result.counts[index] = count;
+            result.totalCount += count;
+        }
+        result.min = in.readLong();
+        result.max = in.readLong();
+        result.sum = in.readDouble();
+        return result;
+    }
+
+    long countAt( int index )
+    {
+        return counts[index];
+    }
+
+    double getSum()
+    {
+        return sum;
+    }
+
+    /**
+     * Adds counts kept elsewhere in the same bucket layout, used to take
+     * snapshots of {@link ConcurrentHistogram}s.
+     */
+    void addRaw( long[] otherCounts, long otherMin, long otherMax, double otherSum )
+    {
+        for ( int i = 0; i < COUNTS_LENGTH; i++ )
+        {
+            counts[i] += otherCounts[i];
+            totalCount += otherCounts[i];
+        }
+        sum += otherSum;
+        min = Math.min( min, otherMin );
+        max = Math.max( max, otherMax );
+    }
+
+    static int indexFor( long value )
+    {
+        // Bucket 0 holds [0, SUB_BUCKET_COUNT) with a resolution of 1, every
+        // next bucket doubles both the range and the resolution
+        int bucket = Math.max( 0, 64 - Long.numberOfLeadingZeros( value )
+                                  - SUB_BUCKET_BITS );
+        int subBucket = (int) ( value >>> bucket );
+        return bucket * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    static long highestEquivalentValue( int index )
+    {
+        if ( index < SUB_BUCKET_COUNT )
+        {
+            return index;
+        }
+        int bucket = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index - bucket * SUB_BUCKET_HALF_COUNT;
+        return ( ( subBucket + 1 ) << bucket ) - 1;
+    }
+}
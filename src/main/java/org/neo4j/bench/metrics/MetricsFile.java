@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Results of any bench case, as metrics by name, kept one per tab separated
+ * line of run, case, metric and value. New cases and metrics need no change
+ * of the format, they are just more lines.
+ */
+public class MetricsFile
+{
+    private MetricsFile()
+    {
+    }
+
+    public static void append( File file, String run, String caseName,
+            Map<String, Double> metrics ) throws IOException
+    {
+        PrintStream out = new PrintStream( new FileOutputStream( file, true ) );
+        try
+        {
+            for ( Map.Entry<String, Double> metric : metrics.entrySet() )
+            {
+                out.println( run + "\t" + caseName + "\t" + metric.getKey()
+                             + "\t" + metric.getValue() );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return The values by run, case and metric, runs in name order, empty
+     *         if there is no file yet
+     */
+    public static SortedMap<String, Map<String, Map<String, Double>>> load(
+            File file ) throws IOException
+    {
+        SortedMap<String, Map<String, Map<String, Double>>> result = new TreeMap<String, Map<String, Map<String, Double>>>();
+        if ( !file.exists() )
+        {
+            return result;
+        }
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                String[] tokens = line.split( "\t" );
+                if ( tokens.length != 4 )
+                {
+                    continue;
+                }
+                double value;
+                try
+                {
+                    value = Double.parseDouble( tokens[3] );
+                }
+                catch ( NumberFormatException e )
+                {
+                    continue;
+                }
+                Map<String, Map<String, Double>> cases = result.get( tokens[0] );
+                if ( cases == null )
+                {
+                    cases = new LinkedHashMap<String, Map<String, Double>>();
+                    result.put( tokens[0], cases );
+                }
+                Map<String, Double> metrics = cases.get( tokens[1] );
+                if ( metrics == null )
+                {
+                    metrics = new LinkedHashMap<String, Double>();
+                    cases.put( tokens[1], metrics );
+                }
+                metrics.put( tokens[2], value );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return result;
+    }
+}
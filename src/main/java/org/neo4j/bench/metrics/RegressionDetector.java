@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides whether the latest run of a metric is a regression against the
+ * runs before it. Every run may have several samples, its trials. The
+ * latest run is compared with the pooled samples of the last few runs, so
+ * no single lucky run sets the bar. A regression must pass two tests:
+ * <ul>
+ * <li>it is significant, by a one sided Mann-Whitney U test of the latest
+ * samples against the baseline ones, if both have at least two</li>
+ * <li>the mean got worse by more than the noise of the metric, a multiple
+ * of how much its run means varied over the history, and never less than
+ * the fixed minimum threshold</li>
+ * </ul>
+ */
+public class RegressionDetector
+{
+    private final double minThreshold;
+    private final double noiseFactor;
+    private final int historyRuns;
+    private final double alpha;
+
+    /**
+     * @param minThreshold The smallest relative change that counts, e.g. 0.05
+     * @param noiseFactor How many times the relative standard deviation of
+     *            the run means of the history a change has to exceed
+     * @param historyRuns How many of the latest earlier runs make the
+     *            baseline
+     * @param alpha The significance level of the rank test
+     */
+    public RegressionDetector( double minThreshold, double noiseFactor,
+            int historyRuns, double alpha )
+    {
+        this.minThreshold = minThreshold;
+        this.noiseFactor = noiseFactor;
+        this.historyRuns = historyRuns;
+        this.alpha = alpha;
+    }
+
+    /**
+     * @param higherIsBetter true for rates, false for latencies
+     * @param history The samples of the earlier runs, oldest first
+     * @param latest The samples of the latest run
+     */
+    public Verdict check( String metric, boolean higherIsBetter,
+            List<double[]> history, double[] latest )
+    {
+        List<double[]> runs = new ArrayList<double[]>();
+        for ( double[] run : history )
+        {
+            if ( run.length > 0 )
+            {
+                runs.add( run );
+            }
+        }
+        runs = runs.subList( Math.max( 0, runs.size() - historyRuns ),
+                runs.size() );
+        if ( runs.isEmpty() || latest.length == 0 )
+        {
+            return new Verdict( metric, Double.NaN, Comparison.mean( latest ),
+                    0, minThreshold, 1, false );
+        }
+
+        double[] runMeans = new double[runs.size()];
+        int pooledCount = 0;
+        for ( int i = 0; i < runMeans.length; i++ )
+        {
+            runMeans[i] = Comparison.mean( runs.get( i ) );
+            pooledCount += runs.get( i ).length;
+        }
+        double[] baseline = new double[pooledCount];
+        int at = 0;
+        for ( double[] run : runs )
+        {
+            System.arraycopy( run, 0, baseline, at, run.length );
+            at += run.length;
+        }
+
+        double baselineMean = Comparison.mean( baseline );
+        double latestMean = Comparison.mean( latest );
+        double change = baselineMean == 0 ? 0 : ( latestMean - baselineMean )
+                                                / Math.abs( baselineMean );
+        double worse = higherIsBetter ? -change : change;
+        double threshold = Math.max( minThreshold, noiseFactor
+                                                   * relativeStdDev( runMeans ) );
+        double pValue = 1;
+        if ( baseline.length >= 2 && latest.length >= 2 )
+        {
+            pValue = higherIsBetter ? pValueSmaller( latest, baseline )
+                    : pValueSmaller( baseline, latest );
+        }
+        boolean significant = baseline.length < 2 || latest.length < 2
+                              || pValue < alpha;
+        return new Verdict( metric, baselineMean, latestMean, change,
+                threshold, pValue, significant && worse > threshold );
+    }
+
+    /**
+     * @return The one sided p-value of the Mann-Whitney U test that the
+     *         values of a tend to be smaller than those of b, by the normal
+     *         approximation with tie and continuity corrections
+     */
+    public static double pValueSmaller( double[] a, double[] b )
+    {
+        int n = a.length + b.length;
+        double[] all = new double[n];
+        System.arraycopy( a, 0, all, 0, a.length );
+        System.arraycopy( b, 0, all, a.length, b.length );
+        Arrays.sort( all );
+
+        // Ranks of a, ties getting the average of their ranks
+        double rankSum = 0;
+        double tieTerm = 0;
+        for ( int i = 0; i < n; )
+        {
+            int j = i;
+            while ( j < n && all[j] == all[i] )
+            {
+                j++;
+            }
+            double rank = ( i + 1 + j ) / 2.0;
+            int inA = 0;
+            for ( double value : a )
+            {
+                if ( value == all[i] )
+                {
+                    inA++;
+                }
+            }
+            rankSum += rank * inA;
+            double ties = j - i;
+            tieTerm += ties * ties * ties - ties;
+            i = j;
+        }
+
+        double u = rankSum - a.length * ( a.length + 1 ) / 2.0;
+        double mean = a.length * (double) b.length / 2;
+        double variance = a.length * (double) b.length / 12
+                          * ( n + 1 - tieTerm / ( n * ( n - 1.0 ) ) );
+        if ( variance <= 0 )
+        {
+            return 1;
+        }
+        return normalCdf( ( u - mean + 0.5 ) / Math.sqrt( variance ) );
+    }
+
+    private static double relativeStdDev( double[] values )
+    {
+        if ( values.length < 2 )
+        {
+            return 0;
+        }
+        double mean = Comparison.mean( values );
+        if ( mean == 0 )
+        {
+            return 0;
+        }
+        double squares = 0;
+        for ( double value : values )
+        {
+            squares += ( value - mean ) * ( value - mean );
+        }
+        return Math.sqrt( squares / ( values.length - 1 ) ) / Math.abs( mean );
+    }
+
+    static double normalCdf( double z )
+    {
+        // The complementary error function to a relative error of 1.2e-7
+        double x = Math.abs( z ) / Math.sqrt( 2 );
+        double t = 1 / ( 1 + 0.5 * x );
+        double erfc = t
+                      * Math.exp( -x * x - 1.26551223 + t
+                                  * ( 1.00002368 + t
+                                      * ( 0.37409196 + t
+                                          * ( 0.09678418 + t
+                                              * ( -0.18628806 + t
+                                                  * ( 0.27886807 + t
+                                                      * ( -1.13520398 + t
+                                                          * ( 1.48851587 + t
+                                                              * ( -0.82215223 + t * 0.17087277 ) ) ) ) ) ) ) ) );
+        return z >= 0 ? 1 - erfc / 2 : erfc / 2;
+    }
+
+    public static class Verdict
+    {
+        private final String metric;
+        private final double baselineMean;
+        private final double latestMean;
+        private final double change;
+        private final double threshold;
+        private final double pValue;
+        private final boolean regression;
+
+        Verdict( String metric, double baselineMean, double latestMean,
+                double change, double threshold, double pValue,
+                boolean regression )
+        {
+            this.metric = metric;
+            this.baselineMean = baselineMean;
+            this.latestMean = latestMean;
+            this.change = change;
+            this.threshold = threshold;
+            this.pValue = pValue;
+            this.regression = regression;
+        }
+
+        public String getMetric()
+        {
+            return metric;
+        }
+
+        /**
+         * @return The relative change of the mean from the baseline
+         */
+        public double getChange()
+        {
+            return change;
+        }
+
+        public double getThreshold()
+        {
+            return threshold;
+        }
+
+        public double getPValue()
+        {
+            return pValue;
+        }
+
+        public boolean isRegression()
+        {
+            return regression;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                    "%s: %.2f -> %.2f (%+.2f%%, threshold %.2f%%, p=%.4f)%s",
+                    metric, baselineMean, latestMean, change * 100,
+                    threshold * 100, pValue, regression ? " REGRESSION" : "" );
+        }
+    }
+}
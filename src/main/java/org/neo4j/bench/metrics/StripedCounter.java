@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter many threads can add to at a high rate, in the spirit of
+ * LongAdder: every thread adds to one of several cells, each on its own
+ * cache line, and reading sums them up.
+ */
+public class StripedCounter
+{
+    // Longs per cache line, so that cells do not share one
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter()
+    {
+        this( Runtime.getRuntime().availableProcessors() * 2 );
+    }
+
+    /**
+     * @param concurrency The expected number of concurrent writers, rounded
+     *            up to the next power of two to get the number of cells
+     */
+    public StripedCounter( int concurrency )
+    {
+        int cellCount = 1;
+        while ( cellCount < concurrency )
+        {
+            cellCount <<= 1;
+        }
+        cells = new AtomicLongArray( cellCount * PADDING );
+        mask = cellCount - 1;
+    }
+
+    public void add( long delta )
+    {
+        cells.addAndGet( cellFor( Thread.currentThread().getId() ) * PADDING,
+                delta );
+    }
+
+    public void increment()
+    {
+        add( 1 );
+    }
+
+    /**
+     * @return The sum of everything added so far, concurrent additions may or
+     *         may not be included
+     */
+    public long sum()
+    {
+        long result = 0;
+        for ( int i = 0; i < cells.length(); i += PADDING )
+        {
+            result += cells.get( i );
+        }
+        return result;
+    }
+
+    private int cellFor( long threadId )
+    {
+        // Fibonacci hashing, consecutive thread ids land on different cells
+        return (int) ( ( threadId * 0x9E3779B97F4A7C15L ) >>> 32 ) & mask;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary file of evenly spaced samples, each a fixed number of
+ * int columns. The header holds the start time, the interval and the
+ * column count, so a sample is only 4 bytes per column. Every sample is
+ * flushed as it is written, a run that dies leaves a readable file.
+ */
+public class TimeSeriesFile
+{
+    private static final int MAGIC = 0x4E545331; // "NTS1"
+
+    private final DataOutputStream out;
+    private final int columns;
+
+    /**
+     * Creates the file, overwriting any previous one, and writes the header.
+     */
+    public TimeSeriesFile( File file, long startMillis, int intervalMillis,
+            int columns ) throws IOException
+    {
+        this.columns = columns;
+        out = new DataOutputStream( new BufferedOutputStream(
+                new FileOutputStream( file ) ) );
+        out.writeInt( MAGIC );
+        out.writeLong( startMillis );
+        out.writeInt( intervalMillis );
+        out.writeInt( columns );
+        out.flush();
+    }
+
+    public void append( long[] sample ) throws IOException
+    {
+        for ( int i = 0; i < columns; i++ )
+        {
+            out.writeInt( (int) Math.min( sample[i], Integer.MAX_VALUE ) );
+        }
+        out.flush();
+    }
+
+    public void close() throws IOException
+    {
+        out.close();
+    }
+
+    /**
+     * @return The samples in the file, one row per sample. The start time
+     *         and interval are in {@link #readHeader(File)}.
+     */
+    public static long[][] read( File file ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new FileInputStream( file ) ) );
+        try
+        {
+            long[] header = readHeader( in );
+            int columns = (int) header[2];
+            List<long[]> rows = new ArrayList<long[]>();
+            while ( true )
+            {
+                long[] row = new long[columns];
+                try
+                {
+                    for ( int i = 0; i < columns; i++ )
+                    {
+                        row[i] = in.readInt();
+                    }
+                }
+                catch ( EOFException e )
+                {
+                    // A partially written last sample is dropped
+                    break;
+                }
+                rows.add( row );
+            }
+            return rows.toArray( new long[rows.size()][] );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @return The start time in millis, the interval in millis and the
+     *         number of columns
+     */
+    public static long[] readHeader( File file ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new FileInputStream( file ) );
+        try
+        {
+            return readHeader( in );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static long[] readHeader( DataInputStream in ) throws IOException
+    {
+        if ( in.readInt() != MAGIC )
+        {
+            throw new IOException( "Not a time series file" );
+        }
+        return new long[] { in.readLong(), in.readInt(), in.readInt() };
+    }
+}
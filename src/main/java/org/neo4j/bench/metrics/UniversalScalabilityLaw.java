@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.metrics;
+
+/**
+ * Gunther's Universal Scalability Law, fitted to throughput measured at
+ * several concurrency levels:
+ *
+ * <pre>
+ * X(N) = X(1) * N / ( 1 + sigma * ( N - 1 ) + kappa * N * ( N - 1 ) )
+ * </pre>
+ *
+ * sigma is the contention (serialization) coefficient, kappa the coherency
+ * (crosstalk) one. A new lock shows up as a higher sigma, more shared state
+ * bouncing between cores as a higher kappa.
+ */
+public class UniversalScalabilityLaw
+{
+    private final double singleThroughput;
+    private final double sigma;
+    private final double kappa;
+
+    public UniversalScalabilityLaw( double singleThroughput, double sigma,
+            double kappa )
+    {
+        this.singleThroughput = singleThroughput;
+        this.sigma = sigma;
+        this.kappa = kappa;
+    }
+
+    /**
+     * Fits the law by least squares on its linearized form,
+     * N / C(N) - 1 = sigma * ( N - 1 ) + kappa * N * ( N - 1 ), where C(N) is
+     * the speedup over the single threaded throughput.
+     *
+     * @param concurrency The concurrency levels, one of them must be 1
+     * @param throughput The throughput measured at each level
+     */
+    public static UniversalScalabilityLaw fit( int[] concurrency,
+            double[] throughput )
+    {
+        double single = 0;
+        for ( int i = 0; i < concurrency.length; i++ )
+        {
+            if ( concurrency[i] == 1 )
+            {
+                single = throughput[i];
+            }
+        }
+        if ( single <= 0 )
+        {
+            throw new IllegalArgumentException(
+                    "Need a positive throughput at concurrency 1" );
+        }
+        // Normal equations of y = sigma * a + kappa * b, no intercept
+        double aa = 0, ab = 0, bb = 0, ay = 0, by = 0;
+        for ( int i = 0; i < concurrency.length; i++ )
+        {
+            int n = concurrency[i];
+            if ( n <= 1 || throughput[i] <= 0 )
+            {
+                continue;
+            }
+            double speedup = throughput[i] / single;
+            double y = n / speedup - 1;
+            double a = n - 1;
+            double b = (double) n * ( n - 1 );
+            aa += a * a;
+            ab += a * b;
+            bb += b * b;
+            ay += a * y;
+            by += b * y;
+        }
+        double sigma = 0, kappa = 0;
+        double determinant = aa * bb - ab * ab;
+        if ( Math.abs( determinant ) > 1e-12 )
+        {
+            sigma = ( ay * bb - by * ab ) / determinant;
+            kappa = ( aa * by - ab * ay ) / determinant;
+        }
+        else if ( aa > 0 )
+        {
+            // A single level above 1, only contention can be told
+            sigma = ay / aa;
+        }
+        // Negative coefficients are noise, refit without them
+        if ( kappa < 0 )
+        {
+            kappa = 0;
+            sigma = aa > 0 ? ay / aa : 0;
+        }
+        if ( sigma < 0 )
+        {
+            sigma = 0;
+            kappa = bb > 0 ? Math.max( 0, by / bb ) : 0;
+        }
+        return new UniversalScalabilityLaw( single, sigma, kappa );
+    }
+
+    public double getSigma()
+    {
+        return sigma;
+    }
+
+    public double getKappa()
+    {
+        return kappa;
+    }
+
+    public double predict( double concurrency )
+    {
+        return singleThroughput * concurrency
+               / ( 1 + sigma * ( concurrency - 1 ) + kappa * concurrency
+                                                      * ( concurrency - 1 ) );
+    }
+
+    /**
+     * @return The concurrency at which throughput peaks, infinite if there is
+     *         no coherency penalty
+     */
+    public double getPeakConcurrency()
+    {
+        if ( kappa <= 0 )
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.sqrt( ( 1 - sigma ) / kappa );
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.neo4j.bench.cases.mixedload.ResultRecord;
+import org.neo4j.bench.metrics.Comparison;
+import org.neo4j.bench.metrics.MetricsFile;
+import org.neo4j.helpers.Args;
+
+/**
+ * Compares two kernel versions in one sitting. The bench cases of -suite
+ * run alternately on either version (ABAB...), each run in a JVM of its own
+ * whose class path has the kernel jar of the version from the local Maven
+ * repository in place of ours. Drift of the machine over the session hits
+ * both versions alike, so the change of every metric from the first
+ * version to the second is reported with a bootstrapped confidence
+ * interval, one tab separated line per metric. Every run gets the same
+ * -seed, {@value #DEFAULT_SEED} unless given, so that both versions
+ * populate and run the same workload.
+ */
+public class ABComparisonMain
+{
+    private static final String KERNEL_ARTIFACT = "neo4j-kernel";
+    private static final long DEFAULT_SEED = 42;
+
+    public static void main( String[] args ) throws Exception
+    {
+        Args argz = new Args( args );
+        String[] versions = argz.get( "ab-versions", "" ).split( "," );
+        if ( versions.length != 2 )
+        {
+            throw new IllegalArgumentException(
+                    "Give the two versions to compare as -ab-versions=A,B" );
+        }
+        int rounds = Integer.parseInt( argz.get( "ab-rounds", "5" ) );
+        double confidence = Double.parseDouble( argz.get( "ab-confidence",
+                "0.95" ) );
+        String suite = argz.get( "suite", "" );
+        if ( suite == null || suite.trim().length() == 0 )
+        {
+            suite = "mixed-load";
+        }
+        File repository = new File( argz.get( "maven-repo",
+                System.getProperty( "user.home" ) + File.separator + ".m2"
+                        + File.separator + "repository" ) );
+        File resultsFile = new File( argz.get( "ab-results-file", "ab-results" ) );
+        String reportFilename = argz.get( "ab-report-file", "ab-comparison" );
+        String seed = argz.get( "seed", "" );
+        if ( seed == null || seed.trim().length() == 0 )
+        {
+            seed = String.valueOf( DEFAULT_SEED );
+            System.out.println( "No -seed given, running every version with "
+                                + seed );
+        }
+        seed = String.valueOf( Long.parseLong( seed.trim() ) );
+
+        String[] classPaths = new String[2];
+        for ( int i = 0; i < 2; i++ )
+        {
+            versions[i] = versions[i].trim();
+            classPaths[i] = classPathWith( kernelJar( repository, versions[i] ) );
+        }
+
+        String session = ResultRecord.runName( new Date() );
+        // Run name to the index of its version
+        Map<String, Integer> runs = new LinkedHashMap<String, Integer>();
+        for ( int round = 0; round < rounds; round++ )
+        {
+            for ( int i = 0; i < 2; i++ )
+            {
+                String run = session + "-" + round + "-" + versions[i];
+                System.out.println( "Round " + ( round + 1 ) + " of " + rounds
+                                    + " on " + versions[i] );
+                for ( String name : suite.split( "," ) )
+                {
+                    // Neither version gets to start on the store of the other
+                    deleteRecursively( new File( "db/" + name.trim() ) );
+                }
+                List<String> mainArgs = SuiteRunner.withoutSuiteArgs( args );
+                for ( Iterator<String> arg = mainArgs.iterator(); arg.hasNext(); )
+                {
+                    if ( arg.next().startsWith( "-seed=" ) )
+                    {
+                        arg.remove();
+                    }
+                }
+                mainArgs.add( "-seed=" + seed );
+                mainArgs.add( "-suite=" + suite );
+                mainArgs.add( "-fork=false" );
+                mainArgs.add( "-suite-run=" + run );
+                mainArgs.add( "-suite-results-file=" + resultsFile.getPath() );
+                SuiteRunner.fork( classPaths[i], mainArgs, "Version "
+                                                           + versions[i] );
+                runs.put( run, i );
+            }
+        }
+
+        report( MetricsFile.load( resultsFile ), runs, versions, confidence,
+                session, reportFilename );
+    }
+
+    private static void report(
+            Map<String, Map<String, Map<String, Double>>> results,
+            Map<String, Integer> runs, String[] versions, double confidence,
+            String session, String reportFilename ) throws Exception
+    {
+        // Case and metric, to the values of either version
+        Map<String, List<List<Double>>> values = new LinkedHashMap<String, List<List<Double>>>();
+        for ( Map.Entry<String, Integer> run : runs.entrySet() )
+        {
+            Map<String, Map<String, Double>> cases = results.get( run.getKey() );
+            if ( cases == null )
+            {
+                continue;
+            }
+            for ( Map.Entry<String, Map<String, Double>> benchCase : cases.entrySet() )
+            {
+                for ( Map.Entry<String, Double> metric : benchCase.getValue().entrySet() )
+                {
+                    String key = benchCase.getKey() + "\t" + metric.getKey();
+                    List<List<Double>> both = values.get( key );
+                    if ( both == null )
+                    {
+                        both = new ArrayList<List<Double>>();
+                        both.add( new ArrayList<Double>() );
+                        both.add( new ArrayList<Double>() );
+                        values.put( key, both );
+                    }
+                    both.get( run.getValue() ).add( metric.getValue() );
+                }
+            }
+        }
+
+        PrintStream out = new PrintStream( new FileOutputStream(
+                reportFilename, true ) );
+        try
+        {
+            System.out.println( "Changes from " + versions[0] + " to "
+                                + versions[1] + ", * where significant:" );
+            Random r = new Random( 0 );
+            for ( Map.Entry<String, List<List<Double>>> metric : values.entrySet() )
+            {
+                double[] baseline = toArray( metric.getValue().get( 0 ) );
+                double[] candidate = toArray( metric.getValue().get( 1 ) );
+                if ( baseline.length == 0 || candidate.length == 0 )
+                {
+                    continue;
+                }
+                Comparison comparison = Comparison.of( baseline, candidate,
+                        Comparison.DEFAULT_RESAMPLES, confidence, r );
+                System.out.println( metric.getKey() + "\t" + comparison );
+                out.println( String.format(
+                        "%s\t%s\t%s\t%s\t%.4f\t%.4f\t%.4f\t%.4f\t%.4f\t%b",
+                        session, versions[0], versions[1], metric.getKey(),
+                        comparison.getBaselineMean(),
+                        comparison.getCandidateMean(), comparison.getChange(),
+                        comparison.getLow(), comparison.getHigh(),
+                        comparison.isSignificant() ) );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return The kernel jar of the version in the local repository
+     * @throws IllegalArgumentException If it is not there
+     */
+    static File kernelJar( File repository, String version )
+    {
+        File jar = new File( repository, "org" + File.separator + "neo4j"
+                                         + File.separator + KERNEL_ARTIFACT
+                                         + File.separator + version
+                                         + File.separator + KERNEL_ARTIFACT
+                                         + "-" + version + ".jar" );
+        if ( !jar.isFile() )
+        {
+            throw new IllegalArgumentException( "No " + jar
+                                                + ", resolve it with mvn -Dneo-version="
+                                                + version + " compile first" );
+        }
+        return jar;
+    }
+
+    /**
+     * @return Our class path with the kernel jar in place of the one on it
+     */
+    static String classPathWith( File kernelJar )
+    {
+        StringBuilder result = new StringBuilder();
+        Set<String> seen = new TreeSet<String>();
+        for ( String entry : System.getProperty( "java.class.path" ).split(
+                File.pathSeparator ) )
+        {
+            if ( new File( entry ).getName().startsWith( KERNEL_ARTIFACT + "-" )
+                 || !seen.add( entry ) )
+            {
+                continue;
+            }
+            result.append( entry ).append( File.pathSeparator );
+        }
+        return result.append( kernelJar.getPath() ).toString();
+    }
+
+    private static double[] toArray( List<Double> values )
+    {
+        double[] result = new double[values.size()];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = values.get( i );
+        }
+        return result;
+    }
+
+    private static void deleteRecursively( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                deleteRecursively( child );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.neo4j.bench.cases.BenchCase;
+import org.neo4j.bench.cases.bulkimport.ImportResult;
+import org.neo4j.bench.cases.bulkimport.ParallelImporter;
+import org.neo4j.bench.cases.topology.Topology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+
+/**
+ * The parallel bulk import as a bench case. The import is what is
+ * measured, so there is nothing to set up or warm up but the importer.
+ */
+public class BulkImportCase implements BenchCase
+{
+    private ParallelImporter importer;
+    private File storeDir;
+    private int nodeCount;
+
+    @Override
+    public String getName()
+    {
+        return "bulk-import";
+    }
+
+    @Override
+    public void setUp( GraphDatabaseService graphDb, File storeDir, Args args )
+    {
+        int threads = Integer.parseInt( args.get( "import-threads", "0" ) );
+        if ( threads <= 0 )
+        {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        Topology topology = Main.parseTopology( args );
+        if ( topology == null )
+        {
+            topology = Topology.parse( "random:"
+                                       + args.get( "import-degrees",
+                                               "power-law:4:2.5" ) );
+        }
+        importer = new ParallelImporter( graphDb, threads, Integer.parseInt(
+                args.get( "import-tx-size", "10000" ) ), topology );
+        this.storeDir = storeDir;
+        nodeCount = Integer.parseInt( args.get( "import-nodes", "10000000" ) );
+    }
+
+    @Override
+    public void warmUp()
+    {
+    }
+
+    @Override
+    public Map<String, Double> measure() throws Exception
+    {
+        ImportResult result = importer.run( nodeCount, null, storeDir );
+        System.out.println( result );
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        metrics.put( "nodes-per-sec", result.getNodesPerSecond() );
+        metrics.put( "relationships-per-sec",
+                result.getRelationshipsPerSecond() );
+        metrics.put( "store-bytes-per-sec", result.getStoreBytesPerSecond() );
+        return metrics;
+    }
+
+    @Override
+    public void tearDown()
+    {
+        importer = null;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+
+import org.neo4j.bench.cases.bulkimport.ImportResult;
+import org.neo4j.bench.cases.bulkimport.ParallelImporter;
+import org.neo4j.bench.cases.mixedload.ResultRecord;
+import org.neo4j.bench.cases.topology.Topology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Runs the parallel bulk import on its own, as a throughput benchmark, and
+ * appends its rates to a results file, one tab separated line per run.
+ */
+public class BulkImportMain
+{
+    public static void main( String[] args ) throws Exception
+    {
+        Args argz = new Args( args );
+        int nodeCount = Integer.parseInt( argz.get( "import-nodes", "10000000" ) );
+        int threads = Integer.parseInt( argz.get( "import-threads", "0" ) );
+        if ( threads <= 0 )
+        {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        int txSize = Integer.parseInt( argz.get( "import-tx-size", "10000" ) );
+        Topology topology = Main.parseTopology( argz );
+        if ( topology == null )
+        {
+            topology = Topology.parse( "random:"
+                                       + argz.get( "import-degrees",
+                                               "power-law:4:2.5" ) );
+        }
+        String resultsFilename = argz.get( "import-results-file",
+                "bulk-import" );
+
+        File storeDir = new File( "db/import" );
+        GraphDatabaseService db = new EmbeddedGraphDatabase(
+                storeDir.getPath() );
+        System.out.println( String.format(
+                "Importing %d nodes of %s topology on %d threads, %d per transaction",
+                nodeCount, topology, threads, txSize ) );
+        ImportResult result;
+        try
+        {
+            result = new ParallelImporter( db, threads, txSize, topology ).run(
+                    nodeCount, null, storeDir );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+        System.out.println( result );
+
+        PrintStream out = new PrintStream( new FileOutputStream(
+                resultsFilename, true ) );
+        try
+        {
+            out.println( String.format( "%s\t%s\t%d\t%d\t%.2f\t%.2f\t%.2f",
+                    ResultRecord.runName( new Date() ),
+                    topology.getName(),
+                    result.getNodes(), result.getRelationships(),
+                    result.getNodesPerSecond(),
+                    result.getRelationshipsPerSecond(),
+                    result.getStoreBytesPerSecond() ) );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.neo4j.bench.cases.BenchCase;
+import org.neo4j.bench.cases.contention.ContentionBenchCase;
+import org.neo4j.bench.cases.contention.ContentionResult;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+
+/**
+ * The hot node contention benchmark as a bench case, with the same
+ * arguments as ContentionMain and its metrics named by ratio.
+ */
+public class ContentionCase implements BenchCase
+{
+    private ContentionBenchCase contention;
+    private String[] ratios;
+    private long millis;
+
+    @Override
+    public String getName()
+    {
+        return "contention";
+    }
+
+    @Override
+    public void setUp( GraphDatabaseService graphDb, File storeDir, Args args )
+    {
+        int threads = Integer.parseInt( args.get( "contention-threads", "0" ) );
+        if ( threads <= 0 )
+        {
+            threads = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        contention = new ContentionBenchCase( graphDb, threads,
+                Integer.parseInt( args.get( "contention-tx-size", "10" ) ) );
+        contention.setUp( Integer.parseInt( args.get( "contention-hot-nodes",
+                "4" ) ), Integer.parseInt( args.get( "contention-cold-nodes",
+                "100000" ) ) );
+        ratios = args.get( "contention-ratios", "0,0.1,0.25,0.5,0.75,1" ).split(
+                "," );
+        millis = Long.parseLong( args.get( "contention-seconds", "30" ) ) * 1000;
+    }
+
+    @Override
+    public void warmUp() throws Exception
+    {
+        // Uncontended, to get the code compiled and the cold nodes cached
+        contention.run( 0, millis );
+    }
+
+    @Override
+    public Map<String, Double> measure() throws Exception
+    {
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        for ( String ratio : ratios )
+        {
+            ContentionResult result = contention.run(
+                    Double.parseDouble( ratio.trim() ), millis );
+            System.out.println( result );
+            String prefix = "ratio-" + ratio.trim() + "-";
+            metrics.put( prefix + "commits-per-sec",
+                    result.getCommitsPerSecond() );
+            metrics.put( prefix + "lock-wait-p99-us",
+                    result.getLockWaits().getValueAtPercentile( 99 ) / 1000.0 );
+            metrics.put( prefix + "deadlocks-per-sec",
+                    result.getDeadlocksPerSecond() );
+        }
+        return metrics;
+    }
+
+    @Override
+    public void tearDown()
+    {
+        contention = null;
+    }
+}
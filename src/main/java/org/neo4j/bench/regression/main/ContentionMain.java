@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+
+import org.neo4j.bench.cases.contention.ContentionBenchCase;
+import org.neo4j.bench.cases.contention.ContentionResult;
+import org.neo4j.bench.cases.mixedload.ResultRecord;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Runs concurrent writers on a few hot nodes at a range of contention
+ * ratios, from all writes on cold nodes to all on the hot ones. The rates
+ * are appended to a results file, one tab separated line per ratio.
+ */
+public class ContentionMain
+{
+    public static void main( String[] args ) throws Exception
+    {
+        Args argz = new Args( args );
+        int hotNodes = Integer.parseInt( argz.get( "contention-hot-nodes", "4" ) );
+        int coldNodes = Integer.parseInt( argz.get( "contention-cold-nodes",
+                "100000" ) );
+        int threads = Integer.parseInt( argz.get( "contention-threads", "0" ) );
+        if ( threads <= 0 )
+        {
+            threads = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        int txSize = Integer.parseInt( argz.get( "contention-tx-size", "10" ) );
+        long millis = Long.parseLong( argz.get( "contention-seconds", "30" ) ) * 1000;
+        String[] ratios = argz.get( "contention-ratios", "0,0.1,0.25,0.5,0.75,1" ).split(
+                "," );
+        String resultsFilename = argz.get( "contention-results-file",
+                "contention" );
+
+        GraphDatabaseService db = new EmbeddedGraphDatabase( "db/contention" );
+        PrintStream out = new PrintStream( new FileOutputStream(
+                resultsFilename, true ) );
+        String date = ResultRecord.runName( new Date() );
+        try
+        {
+            ContentionBenchCase contention = new ContentionBenchCase( db,
+                    threads, txSize );
+            contention.setUp( hotNodes, coldNodes );
+            for ( String ratio : ratios )
+            {
+                ContentionResult result = contention.run(
+                        Double.parseDouble( ratio.trim() ), millis );
+                System.out.println( result );
+                out.println( String.format(
+                        "%s\t%d\t%d\t%d\t%.2f\t%.2f\t%.2f\t%.1f\t%.1f\t%.2f\t%.2f\t%d",
+                        date, hotNodes, threads, txSize, result.getRatio(),
+                        result.getCommitsPerSecond(),
+                        result.getOperationsPerSecond(),
+                        result.getLockWaits().getValueAtPercentile( 50 ) / 1000.0,
+                        result.getLockWaits().getValueAtPercentile( 99 ) / 1000.0,
+                        result.getDeadlocksPerSecond(),
+                        result.getRetriesPerSecond(), result.getGaveUp() ) );
+            }
+        }
+        finally
+        {
+            out.close();
+            db.shutdown();
+        }
+    }
+}
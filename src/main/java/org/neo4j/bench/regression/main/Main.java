@@ -19,14 +19,34 @@
  */
 package org.neo4j.bench.regression.main;
 
-import java.io.FileOutputStream;
-import java.io.PrintStream;
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
 
+import org.neo4j.bench.cases.mixedload.ExecutorStrategy;
+import org.neo4j.bench.cases.mixedload.KeyDistribution;
 import org.neo4j.bench.cases.mixedload.MixedLoadBenchCase;
+import org.neo4j.bench.cases.mixedload.OpenLoopDriver;
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.PropertyShape;
+import org.neo4j.bench.cases.mixedload.ResultRecord;
+import org.neo4j.bench.cases.mixedload.ResultsStore;
 import org.neo4j.bench.cases.mixedload.Stats;
+import org.neo4j.bench.cases.mixedload.WorkloadProfile;
+import org.neo4j.bench.cases.mixedload.workers.WorkerKind;
+import org.neo4j.bench.cases.topology.Topology;
 import org.neo4j.bench.chart.GenerateOpsPerSecChart;
+import org.neo4j.bench.metrics.Histogram;
+import org.neo4j.bench.metrics.RegressionDetector;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.helpers.Args;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
@@ -37,38 +57,312 @@ public class Main
     public static void main( String[] args ) throws Exception
     {
         Args argz = new Args( args );
+        String suite = argz.get( "suite", "" );
+        if ( suite != null && suite.trim().length() > 0 )
+        {
+            new SuiteRunner( args ).run();
+            return;
+        }
         long timeToRun = Long.parseLong( argz.get( "time-to-run", "120" ) ); // Time
                                                                            // in
                                                                            // minutes
-        final GraphDatabaseService db = new EmbeddedGraphDatabase( "db" );
-        final MixedLoadBenchCase myCase = new MixedLoadBenchCase( timeToRun );
+        for ( WorkloadProfile profile : loadProfiles( argz ) )
+        {
+            System.out.println( "Running workload " + profile );
+            runProfile( argz, timeToRun, profile );
+        }
+    }
+
+    /**
+     * @return The profiles selected with -profiles from -workload-file, the
+     *         default profile without a workload file
+     */
+    static List<WorkloadProfile> loadProfiles( Args argz ) throws IOException
+    {
+        String workloadFile = argz.get( "workload-file", "" );
+        if ( workloadFile == null || workloadFile.length() == 0 )
+        {
+            return Collections.singletonList( WorkloadProfile.defaultProfile() );
+        }
+        return WorkloadProfile.load( new File( workloadFile ), argz.get(
+                "profiles", "" ) );
+    }
 
-        myCase.run( db );
+    /**
+     * Runs one workload on a database of its own. Every profile but the
+     * default one gets its name in the names of the files it writes, so that
+     * its history is only ever compared with its own.
+     */
+    private static void runProfile( Args argz, long timeToRun,
+            WorkloadProfile profile ) throws Exception
+    {
+        File storeDir = new File( "db/" + profile.getName() );
+        final GraphDatabaseService db = new EmbeddedGraphDatabase(
+                storeDir.getPath() );
+        final MixedLoadBenchCase myCase = configure( argz, timeToRun, profile,
+                storeDir );
+        Topology topology = parseTopology( argz );
+
+        // Sweeps are their own repetitions, trials are for the regular runs
+        int trials = myCase.isSweep() ? 1 : Math.max( 1, Integer.parseInt( argz.get( "trials", "1" ) ) );
+        Date start = new Date();
+        String date = ResultRecord.runName( start );
+        List<ResultRecord> newRecords = new ArrayList<ResultRecord>();
+        myCase.setUp( db );
+        try
+        {
+            myCase.warmUp();
+            for ( int trial = 1; trial <= trials; trial++ )
+            {
+                if ( trial > 1 )
+                {
+                    myCase.nextTrial();
+                }
+                myCase.measure();
+                // A single trial is named as runs always were
+                newRecords.add( toRecord( argz, myCase, start.getTime(),
+                        trials == 1 ? date : date + "#" + trial ) );
+            }
+        }
+        finally
+        {
+            myCase.tearDown();
+        }
         db.shutdown();
-        double[] results = myCase.getResults();
-        Stats newStats = new Stats(
-                new SimpleDateFormat( "MM-dd-HH-mm" ).format( new Date() ) );
-        newStats.setAvgReadsPerSec( results[0] );
-        newStats.setAvgWritePerSec( results[1] );
-        newStats.setPeakReadsPerSec( results[2] );
-        newStats.setPeakWritesPerSec( results[3] );
-        newStats.setSustainedReadsPerSec( results[4] );
-        newStats.setSustainedWritesPerSec( results[5] );
-
-        String statsFilename = argz.get(
+        if ( myCase.getScalabilitySweep() != null )
+        {
+            // A sweep is not comparable to the regular runs, chart it alone
+            GenerateOpsPerSecChart.generateScalabilityChart(
+                    myCase.getScalabilitySweep(), tagged( argz.get(
+                            GenerateOpsPerSecChart.SCALABILITY_CHART_FILE_ARG,
+                            "scalability.png" ), profile, topology ) );
+            return;
+        }
+        if ( myCase.getBatchSizeSweep() != null )
+        {
+            // Printed out already, not comparable to the regular runs either
+            return;
+        }
+
+        String statsFilename = tagged( argz.get(
                 GenerateOpsPerSecChart.OPS_PER_SECOND_FILE_ARG,
-                "ops-per-second" );
-        String chartFilename = argz.get( GenerateOpsPerSecChart.CHART_FILE_ARG,
-                "chart.png" );
+                "ops-per-second" ), profile, topology );
+        String chartFilename = tagged( argz.get(
+                GenerateOpsPerSecChart.CHART_FILE_ARG, "chart.png" ), profile,
+                topology );
         double threshold = Double.parseDouble( argz.get( "threshold", "0.05" ) );
 
-        PrintStream opsPerSecOutFile = new PrintStream( new FileOutputStream(
-                statsFilename, true ) );
-
-        newStats.write( opsPerSecOutFile, true );
+        ResultsStore store = new ResultsStore( new File( statsFilename ) );
+        store.importLegacy( new File( statsFilename ) );
+        for ( ResultRecord record : newRecords )
+        {
+            store.append( record );
+        }
+        int historyRuns = Integer.parseInt( argz.get( "history-runs", "5" ) );
+        SortedSet<Stats> recent = store.lastStats( Math.max(
+                GenerateOpsPerSecChart.TESTS_TO_DRAW, historyRuns + 1 ) );
 
         GenerateOpsPerSecChart aggreegator = new GenerateOpsPerSecChart(
-                statsFilename, chartFilename, threshold );
+                recent, chartFilename, threshold );
+        aggreegator.setDetector( new RegressionDetector( threshold,
+                Double.parseDouble( argz.get( "noise-factor", "2" ) ),
+                historyRuns,
+                Double.parseDouble( argz.get( "significance", "0.05" ) ) ) );
         aggreegator.process();
     }
+
+    /**
+     * @return The results of the trial just measured, with its latency
+     *         histograms and throughput samples
+     */
+    private static ResultRecord toRecord( Args argz, MixedLoadBenchCase myCase,
+            long timestamp, String name )
+    {
+        double[] results = myCase.getResults();
+        Stats stats = new Stats( name );
+        stats.setAvgReadsPerSec( results[0] );
+        stats.setAvgWritePerSec( results[1] );
+        stats.setPeakReadsPerSec( results[2] );
+        stats.setPeakWritesPerSec( results[3] );
+        stats.setSustainedReadsPerSec( results[4] );
+        stats.setSustainedWritesPerSec( results[5] );
+        for ( Operation operation : Operation.values() )
+        {
+            Histogram histogram = myCase.getAggregator().getLatencies( operation );
+            if ( histogram.getTotalCount() > 0 )
+            {
+                stats.setLatencies( operation, histogram );
+            }
+        }
+        ResultRecord record = new ResultRecord( timestamp, nonNull( argz.get(
+                "neo-version", "" ) ), nonNull( argz.get( "commit", "" ) ),
+                hostName(), stats );
+        for ( Operation operation : Operation.values() )
+        {
+            Histogram histogram = myCase.getAggregator().getLatencies( operation );
+            if ( histogram.getTotalCount() > 0 )
+            {
+                record.setHistogram( operation, histogram.copy() );
+            }
+        }
+        if ( myCase.getSampler() != null )
+        {
+            record.setTimeSeries( myCase.getSampler().getIntervalMillis(),
+                    myCase.getSampler().getSamples() );
+        }
+        return record;
+    }
+
+    private static String nonNull( String value )
+    {
+        return value == null ? "" : value;
+    }
+
+    private static String hostName()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch ( UnknownHostException e )
+        {
+            return "unknown";
+        }
+    }
+
+    /**
+     * @return The mixed load case for the profile, set up from the arguments
+     */
+    static MixedLoadBenchCase configure( Args argz, long timeToRun,
+            WorkloadProfile profile, File storeDir )
+    {
+        MixedLoadBenchCase myCase = new MixedLoadBenchCase( timeToRun );
+        myCase.setWorkload( profile );
+        myCase.setTraversal( Integer.parseInt( argz.get( "traversal-depth",
+                "3" ) ), Direction.valueOf( argz.get( "traversal-direction",
+                "OUTGOING" ).toUpperCase() ) );
+        myCase.setKeyDistribution( KeyDistribution.parse( argz.get(
+                "lookup-distribution", "uniform" ) ) );
+        myCase.setPropertyShape( new PropertyShape( argz.get(
+                "properties-per-entity", "constant:1" ), argz.get(
+                "property-size", "uniform:25" ), argz.get( "property-types",
+                "INT,LONG,BOOLEAN,STRING" ), Double.parseDouble( argz.get(
+                "property-relationship-share", "0" ) ),
+                Double.parseDouble( argz.get( "property-update-share", "0" ) ) ) );
+        Topology topology = parseTopology( argz );
+        if ( topology != null )
+        {
+            myCase.setTopology( topology );
+        }
+        int populateThreads = Integer.parseInt( argz.get( "populate-threads", "0" ) );
+        if ( populateThreads > 0 )
+        {
+            myCase.setParallelPopulate( populateThreads, Integer.parseInt(
+                    argz.get( "import-tx-size", "10000" ) ),
+                    topology != null ? topology : Topology.parse( "random:"
+                            + argz.get( "import-degrees", "power-law:4:2.5" ) ) );
+        }
+        int concurrency = Integer.parseInt( argz.get( "concurrency", "0" ) );
+        if ( concurrency <= 0 )
+        {
+            concurrency = Runtime.getRuntime().availableProcessors();
+        }
+        myCase.setExecutor( ExecutorStrategy.parse( argz.get( "executor",
+                "fixed" ) ), concurrency );
+        myCase.setWarmup( Long.parseLong( argz.get( "warmup-max-minutes", "10" ) ) * 60 * 1000,
+                Long.parseLong( argz.get( "warmup-sample-seconds", "5" ) ) * 1000,
+                Integer.parseInt( argz.get( "warmup-window", "6" ) ),
+                Double.parseDouble( argz.get( "warmup-max-variation", "0.05" ) ) );
+        myCase.setSampling( Long.parseLong( argz.get( "sample-interval-millis",
+                "1000" ) ), new File( tagged( argz.get( "time-series-file",
+                "time-series" ), profile, topology ) ) );
+        myCase.setMetricsPort( Integer.parseInt( argz.get( "metrics-port",
+                "0" ) ) );
+        String seed = argz.get( "seed", "" );
+        if ( seed != null && seed.trim().length() > 0 )
+        {
+            myCase.setSeed( Long.parseLong( seed.trim() ) );
+        }
+        String traceFile = argz.get( "trace-file", "" );
+        if ( traceFile != null && traceFile.trim().length() > 0 )
+        {
+            myCase.setTraceFile( new File( tagged( traceFile.trim(), profile,
+                    topology ) ) );
+        }
+        myCase.setStoreDir( storeDir,
+                Long.parseLong( argz.get( "store-size-interval-seconds", "60" ) ) * 1000,
+                new File( tagged( argz.get( "store-size-file", "store-sizes" ),
+                        profile, topology ) ) );
+        int sweepMaxConcurrency = Integer.parseInt( argz.get(
+                "scalability-sweep", "0" ) );
+        myCase.setScalabilitySweep( sweepMaxConcurrency );
+        myCase.setBatchSizeSweep( Integer.parseInt( argz.get( "tx-size-sweep",
+                "0" ) ) );
+        if ( "open".equals( argz.get( "load-mode", "closed" ) ) )
+        {
+            Map<WorkerKind, Double> rates = profile.getRates();
+            if ( rates.isEmpty() )
+            {
+                rates = parseRates( argz.get( "open-loop-rates",
+                        "CREATE:100,DELETE:20,PROPERTY_ADD:50" ) );
+            }
+            myCase.setOpenLoop( rates,
+                    OpenLoopDriver.Arrivals.valueOf( argz.get( "arrivals",
+                            "POISSON" ).toUpperCase() ),
+                    Integer.parseInt( argz.get( "ramp-steps", "0" ) ),
+                    Double.parseDouble( argz.get( "ramp-factor", "1.5" ) ) );
+        }
+        return myCase;
+    }
+
+    /**
+     * @return The topology given with -topology, null if none was
+     */
+    static Topology parseTopology( Args argz )
+    {
+        String spec = argz.get( "topology", "" );
+        return spec == null || spec.trim().length() == 0 ? null
+                : Topology.parse( spec );
+    }
+
+    /**
+     * @return The file name with the name of the profile and the topology
+     *         added before its extension, unchanged for the default profile
+     *         with no topology
+     */
+    private static String tagged( String filename, WorkloadProfile profile,
+            Topology topology )
+    {
+        String tag = "";
+        if ( !WorkloadProfile.DEFAULT_NAME.equals( profile.getName() ) )
+        {
+            tag += "-" + profile.getName();
+        }
+        if ( topology != null )
+        {
+            tag += "-" + topology.getName();
+        }
+        int dot = filename.lastIndexOf( '.' );
+        if ( dot <= filename.lastIndexOf( File.separatorChar ) )
+        {
+            return filename + tag;
+        }
+        return filename.substring( 0, dot ) + tag + filename.substring( dot );
+    }
+
+    /**
+     * Parses rates like "CREATE:100,DELETE:20", in arrivals per second.
+     */
+    private static Map<WorkerKind, Double> parseRates( String rates )
+    {
+        Map<WorkerKind, Double> result = new EnumMap<WorkerKind, Double>(
+                WorkerKind.class );
+        for ( String rate : rates.split( "," ) )
+        {
+            String[] parts = rate.split( ":" );
+            result.put( WorkerKind.valueOf( parts[0].trim().toUpperCase() ),
+                    Double.parseDouble( parts[1].trim() ) );
+        }
+        return result;
+    }
 }
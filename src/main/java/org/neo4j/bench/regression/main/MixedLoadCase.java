@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.util.Map;
+
+import org.neo4j.bench.cases.BenchCase;
+import org.neo4j.bench.cases.mixedload.MixedLoadBenchCase;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+
+/**
+ * The mixed load as a bench case, configured as Main does it, running the
+ * first of the selected workload profiles.
+ */
+public class MixedLoadCase implements BenchCase
+{
+    private MixedLoadBenchCase myCase;
+
+    @Override
+    public String getName()
+    {
+        return "mixed-load";
+    }
+
+    @Override
+    public void setUp( GraphDatabaseService graphDb, File storeDir, Args args )
+            throws Exception
+    {
+        myCase = Main.configure( args, Long.parseLong( args.get(
+                "time-to-run", "120" ) ), Main.loadProfiles( args ).get( 0 ),
+                storeDir );
+        myCase.setUp( graphDb );
+    }
+
+    @Override
+    public void warmUp()
+    {
+        myCase.warmUp();
+    }
+
+    @Override
+    public Map<String, Double> measure()
+    {
+        myCase.measure();
+        return myCase.getMetrics();
+    }
+
+    @Override
+    public void tearDown()
+    {
+        myCase.tearDown();
+        myCase = null;
+    }
+}
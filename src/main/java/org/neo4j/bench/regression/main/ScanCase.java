@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.neo4j.bench.cases.BenchCase;
+import org.neo4j.bench.cases.bulkimport.ParallelImporter;
+import org.neo4j.bench.cases.mixedload.ExecutorStrategy;
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.scan.ParallelScan;
+import org.neo4j.bench.cases.scan.ScanResult;
+import org.neo4j.bench.cases.topology.Topology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+
+/**
+ * The full graph scan as a bench case. The warm-up scan fills the caches,
+ * so what is measured is the warm scan at the most threads; ScanMain is
+ * the one for the cold scans and the scaling over threads.
+ */
+public class ScanCase implements BenchCase
+{
+    private ParallelScan scan;
+    private int threads;
+
+    @Override
+    public String getName()
+    {
+        return "scan";
+    }
+
+    @Override
+    public void setUp( GraphDatabaseService graphDb, File storeDir, Args args )
+            throws Exception
+    {
+        threads = Integer.parseInt( args.get( "scan-max-threads", "0" ) );
+        if ( threads <= 0 )
+        {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        int importThreads = Integer.parseInt( args.get( "import-threads", "0" ) );
+        if ( importThreads <= 0 )
+        {
+            importThreads = Runtime.getRuntime().availableProcessors();
+        }
+        Topology topology = Main.parseTopology( args );
+        if ( topology == null )
+        {
+            topology = Topology.parse( "random:"
+                                       + args.get( "import-degrees",
+                                               "power-law:4:2.5" ) );
+        }
+        NodePool pool = new NodePool();
+        new ParallelImporter( graphDb, importThreads, Integer.parseInt(
+                args.get( "import-tx-size", "10000" ) ), topology ).run(
+                Integer.parseInt( args.get( "scan-nodes", "1000000" ) ), pool,
+                storeDir );
+        scan = new ParallelScan( graphDb, pool.highestId(),
+                ExecutorStrategy.parse( args.get( "scan-executor",
+                        "work_stealing" ) ) );
+    }
+
+    @Override
+    public void warmUp() throws Exception
+    {
+        scan.scan( threads );
+    }
+
+    @Override
+    public Map<String, Double> measure() throws Exception
+    {
+        ScanResult result = scan.scan( threads );
+        System.out.println( result );
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        metrics.put( "nodes-per-sec", result.getNodesPerSecond() );
+        metrics.put( "relationships-per-sec",
+                result.getRelationshipsPerSecond() );
+        return metrics;
+    }
+
+    @Override
+    public void tearDown()
+    {
+        scan = null;
+    }
+}
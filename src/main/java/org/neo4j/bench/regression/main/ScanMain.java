@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+
+import org.neo4j.bench.cases.bulkimport.ParallelImporter;
+import org.neo4j.bench.cases.mixedload.ExecutorStrategy;
+import org.neo4j.bench.cases.mixedload.NodePool;
+import org.neo4j.bench.cases.mixedload.ResultRecord;
+import org.neo4j.bench.cases.mixedload.ScalabilitySweep;
+import org.neo4j.bench.cases.scan.ParallelScan;
+import org.neo4j.bench.cases.scan.ScanResult;
+import org.neo4j.bench.cases.topology.Topology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Imports a graph and scans all of it at 1, 2, 4, ... threads. At every
+ * level the database is started anew, so the first scan runs on an empty
+ * object cache and the second on the cache the first one filled. The rates
+ * are appended to a results file, one tab separated line per level.
+ */
+public class ScanMain
+{
+    public static void main( String[] args ) throws Exception
+    {
+        Args argz = new Args( args );
+        int nodeCount = Integer.parseInt( argz.get( "scan-nodes", "1000000" ) );
+        int maxThreads = Integer.parseInt( argz.get( "scan-max-threads", "0" ) );
+        if ( maxThreads <= 0 )
+        {
+            maxThreads = Runtime.getRuntime().availableProcessors();
+        }
+        ExecutorStrategy executorStrategy = ExecutorStrategy.parse( argz.get(
+                "scan-executor", "work_stealing" ) );
+        int importThreads = Integer.parseInt( argz.get( "import-threads", "0" ) );
+        if ( importThreads <= 0 )
+        {
+            importThreads = Runtime.getRuntime().availableProcessors();
+        }
+        Topology topology = Main.parseTopology( argz );
+        if ( topology == null )
+        {
+            topology = Topology.parse( "random:"
+                                       + argz.get( "import-degrees",
+                                               "power-law:4:2.5" ) );
+        }
+        String resultsFilename = argz.get( "scan-results-file", "scan" );
+
+        String storeDir = "db/scan";
+        GraphDatabaseService db = new EmbeddedGraphDatabase( storeDir );
+        NodePool pool = new NodePool();
+        try
+        {
+            System.out.println( "Imported "
+                                + new ParallelImporter( db, importThreads,
+                                        Integer.parseInt( argz.get(
+                                                "import-tx-size", "10000" ) ),
+                                        topology ).run( nodeCount, pool,
+                                        new File( storeDir ) ) );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        PrintStream out = new PrintStream( new FileOutputStream(
+                resultsFilename, true ) );
+        String date = ResultRecord.runName( new Date() );
+        try
+        {
+            System.out.println( "Threads\tCold nodes/sec\tWarm nodes/sec\tWarm relationships/sec" );
+            for ( int threads : ScalabilitySweep.levels( maxThreads ) )
+            {
+                ScanResult cold;
+                ScanResult warm;
+                db = new EmbeddedGraphDatabase( storeDir );
+                try
+                {
+                    ParallelScan scan = new ParallelScan( db, pool.highestId(),
+                            executorStrategy );
+                    cold = scan.scan( threads );
+                    warm = scan.scan( threads );
+                }
+                finally
+                {
+                    db.shutdown();
+                }
+                System.out.println( String.format( "%d\t%.0f\t%.0f\t%.0f",
+                        threads, cold.getNodesPerSecond(),
+                        warm.getNodesPerSecond(),
+                        warm.getRelationshipsPerSecond() ) );
+                out.println( String.format( "%s\t%s\t%d\t%.2f\t%.2f",
+                        date, topology.getName(), threads,
+                        cold.getNodesPerSecond(), warm.getNodesPerSecond() ) );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
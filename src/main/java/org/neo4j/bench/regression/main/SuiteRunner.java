@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.bench.cases.BenchCase;
+import org.neo4j.bench.cases.BenchCaseRegistry;
+import org.neo4j.bench.cases.mixedload.ResultRecord;
+import org.neo4j.bench.chart.GenerateOpsPerSecChart;
+import org.neo4j.bench.metrics.MetricsFile;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Runs the bench cases named with -suite one after the other, each on a
+ * database of its own, and appends their metrics to one results file. With
+ * -fork every case runs in a JVM of its own, started with the same JVM
+ * arguments, so that no case runs on the heap, caches or compiled code
+ * another one left behind.
+ */
+public class SuiteRunner
+{
+    private final Args args;
+    private final String[] argv;
+    private final BenchCaseRegistry registry = new BenchCaseRegistry();
+
+    public SuiteRunner( String[] argv )
+    {
+        this.argv = argv;
+        this.args = new Args( argv );
+    }
+
+    public void run() throws Exception
+    {
+        boolean fork = Boolean.parseBoolean( args.get( "fork", "false" ) );
+        String run = args.get( "suite-run", "" );
+        if ( run == null || run.length() == 0 )
+        {
+            run = ResultRecord.runName( new Date() );
+        }
+        for ( String name : args.get( "suite", "" ).split( "," ) )
+        {
+            name = name.trim();
+            if ( name.length() == 0 )
+            {
+                continue;
+            }
+            // Fail on a misspelled case before running any of them
+            registry.create( name );
+        }
+        for ( String name : args.get( "suite", "" ).split( "," ) )
+        {
+            name = name.trim();
+            if ( name.length() == 0 )
+            {
+                continue;
+            }
+            System.out.println( "Running bench case " + name );
+            if ( fork )
+            {
+                runForked( name, run );
+            }
+            else
+            {
+                runInProcess( name, run );
+            }
+        }
+    }
+
+    private void runInProcess( String name, String run ) throws Exception
+    {
+        BenchCase benchCase = registry.create( name );
+        File storeDir = new File( "db/" + name );
+        GraphDatabaseService db = new EmbeddedGraphDatabase(
+                storeDir.getPath() );
+        Map<String, Double> metrics;
+        try
+        {
+            benchCase.setUp( db, storeDir, args );
+            try
+            {
+                benchCase.warmUp();
+                metrics = benchCase.measure();
+            }
+            finally
+            {
+                benchCase.tearDown();
+            }
+        }
+        finally
+        {
+            db.shutdown();
+        }
+        System.out.println( name + ": " + metrics );
+
+        File resultsFile = new File( args.get( "suite-results-file",
+                "suite-results" ) );
+        MetricsFile.append( resultsFile, run, name, metrics );
+        GenerateOpsPerSecChart.generateMetricsChart(
+                MetricsFile.load( resultsFile ), name, "chart-" + name + ".png" );
+    }
+
+    /**
+     * Runs the case with this same main class in a new JVM, which appends
+     * the results under the same run name.
+     */
+    private void runForked( String name, String run ) throws Exception
+    {
+        List<String> mainArgs = withoutSuiteArgs( argv );
+        mainArgs.add( "-suite=" + name );
+        mainArgs.add( "-fork=false" );
+        mainArgs.add( "-suite-run=" + run );
+        fork( System.getProperty( "java.class.path" ), mainArgs, "Bench case "
+                                                                + name );
+    }
+
+    /**
+     * @return The arguments but those selecting the cases and the run
+     */
+    static List<String> withoutSuiteArgs( String[] argv )
+    {
+        List<String> result = new ArrayList<String>();
+        for ( String arg : argv )
+        {
+            if ( !arg.startsWith( "-suite=" ) && !arg.startsWith( "-fork=" )
+                 && !arg.startsWith( "-suite-run=" ) )
+            {
+                result.add( arg );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs Main in a new JVM with the JVM arguments of this one and the
+     * given class path, its output going to ours, and waits for it.
+     *
+     * @param what What is run, for the error if it fails
+     */
+    static void fork( String classPath, List<String> mainArgs, String what )
+            throws Exception
+    {
+        List<String> command = new ArrayList<String>();
+        command.add( System.getProperty( "java.home" ) + File.separator
+                     + "bin" + File.separator + "java" );
+        command.addAll( ManagementFactory.getRuntimeMXBean().getInputArguments() );
+        command.add( "-cp" );
+        command.add( classPath );
+        command.add( Main.class.getName() );
+        command.addAll( mainArgs );
+
+        ProcessBuilder builder = new ProcessBuilder( command );
+        builder.redirectErrorStream( true );
+        Process process = builder.start();
+        pump( process.getInputStream() );
+        int exitCode = process.waitFor();
+        if ( exitCode != 0 )
+        {
+            throw new IllegalStateException( what + " exited with " + exitCode );
+        }
+    }
+
+    private static void pump( InputStream in ) throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        try
+        {
+            int read;
+            while ( ( read = in.read( buffer ) ) != -1 )
+            {
+                System.out.write( buffer, 0, read );
+            }
+            System.out.flush();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.bench.regression.main;
+
+import java.io.File;
+
+import org.neo4j.bench.cases.mixedload.Operation;
+import org.neo4j.bench.cases.mixedload.ResultAggregator;
+import org.neo4j.bench.cases.mixedload.trace.TraceReplayer;
+import org.neo4j.bench.metrics.Histogram;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.helpers.Args;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Replays a trace recorded by the mixed load case with -trace-file on a
+ * store of its own, which should start out as the traced one did. With
+ * -replay-mode=timed every event keeps its time in the trace, with fast
+ * all of them go as fast as -replay-threads threads can. Prints the
+ * latencies of every operation and how often the replay diverged from the
+ * trace.
+ */
+public class TraceReplayMain
+{
+    public static void main( String[] args ) throws Exception
+    {
+        Args argz = new Args( args );
+        String trace = argz.get( "replay-trace", "" );
+        if ( trace == null || trace.trim().length() == 0 )
+        {
+            throw new IllegalArgumentException(
+                    "Give the trace to replay with -replay-trace=file" );
+        }
+        String mode = argz.get( "replay-mode", "timed" );
+        if ( !"timed".equals( mode ) && !"fast".equals( mode ) )
+        {
+            throw new IllegalArgumentException( "Unknown replay mode " + mode
+                                                + ", timed or fast" );
+        }
+        int threads = Integer.parseInt( argz.get( "replay-threads", "0" ) );
+        if ( threads <= 0 )
+        {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        GraphDatabaseService db = new EmbeddedGraphDatabase( "db/replay" );
+        ResultAggregator result;
+        long time = System.currentTimeMillis();
+        try
+        {
+            result = new TraceReplayer( db, "timed".equals( mode ),
+                    threads ).replay( new File( trace ) );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+        time = System.currentTimeMillis() - time;
+
+        System.out.println( "Replayed " + trace + " " + mode + " in " + time
+                            + " ms" );
+        System.out.println( "Commits " + result.getCommits() + ", rollbacks "
+                            + result.getRollbacks() + ", divergences "
+                            + result.getFailures() );
+        System.out.println( "Operation\tCount\tp50 us\tp99 us\tOps/sec" );
+        for ( Operation operation : Operation.values() )
+        {
+            Histogram latencies = result.getLatencies( operation );
+            if ( latencies.getTotalCount() == 0 )
+            {
+                continue;
+            }
+            System.out.println( String.format( "%s\t%d\t%.1f\t%.1f\t%.0f",
+                    operation, latencies.getTotalCount(),
+                    latencies.getValueAtPercentile( 50 ) / 1000.0,
+                    latencies.getValueAtPercentile( 99 ) / 1000.0,
+                    latencies.getTotalCount() * 1000.0 / Math.max( time, 1 ) ) );
+        }
+    }
+}